@@ -0,0 +1,84 @@
+import benchmarks.BenchmarkData;
+import benchmarks.ServerFixture;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import java.util.ArrayList;
+import java.util.List;
+import models.Constants;
+import models.RobotPart;
+import org.glassfish.jersey.server.ResourceConfig;
+
+/**
+ * {@link ServerFixture} backed by a {@link DbService} on an in-memory
+ * HSQLDB.
+ */
+public class RobotsServerFixture implements ServerFixture {
+    private ConnectionPool connectionPool;
+    private DbService dbService;
+
+    @Override
+    public void open(final String name, final int tableSize)
+            throws Exception {
+        connectionPool = new ConnectionPool(
+                "jdbc:hsqldb:mem:" + name + ";sql.syntax_mys=true",
+                ConnectionPoolConfig.defaults());
+        dbService = new DbService(connectionPool);
+        final List<RobotPart> robotParts = new ArrayList<>(tableSize);
+        for (int index = 0; index < tableSize; index++) {
+            robotParts.add(BenchmarkData.robotPart(index, tableSize));
+        }
+        dbService.addAll(robotParts);
+        // "list-compatible" only uses the compatibility table once it is.
+        while (!dbService.isCompatibilityIndexReady()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    public RobotPart read(final String serialNumber) throws Exception {
+        return dbService.read(serialNumber);
+    }
+
+    @Override
+    public RobotPart[] listCompatible(
+            final String serialNumber, final int number) throws Exception {
+        return dbService.listCompatible(serialNumber, number);
+    }
+
+    @Override
+    public RobotPart[] listAll() throws Exception {
+        return dbService.listAll();
+    }
+
+    @Override
+    public void updateWeight(final String serialNumber, final int weight)
+            throws Exception {
+        dbService.update(serialNumber, Constants.WEIGHT, weight);
+    }
+
+    @Override
+    public void add(final RobotPart robotPart) throws Exception {
+        dbService.add(robotPart);
+    }
+
+    @Override
+    public void delete(final String serialNumber) throws Exception {
+        dbService.delete(serialNumber);
+    }
+
+    @Override
+    public ResourceConfig resourceConfig(final boolean streamListAll) {
+        final ResourceConfig resourceConfig = new ResourceConfig();
+        resourceConfig.register(JacksonSmileProvider.class);
+        resourceConfig.register(new RobotsResource(
+                dbService, new ObjectMapper(), streamListAll));
+        return resourceConfig;
+    }
+
+    @Override
+    public void close() {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+}
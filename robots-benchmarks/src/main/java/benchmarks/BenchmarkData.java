@@ -0,0 +1,37 @@
+package benchmarks;
+
+import models.RobotPart;
+
+/**
+ * Robot parts stored in the databases of the benchmarks.
+ */
+public final class BenchmarkData {
+    // Each robot part is compatible with the next ones.
+    private static final int COMPATIBILITIES_PER_PART = 5;
+
+    private BenchmarkData() {
+    }
+
+    public static String serialNumber(final int index) {
+        return String.format("part-%08d", index);
+    }
+
+    /**
+     * @param index Index of the robot part, its compatibilities point to
+     *              the next indexes, modulo {@code tableSize}
+     */
+    public static RobotPart robotPart(final int index, final int tableSize) {
+        final String[] compatibilities
+                = new String[Math.min(COMPATIBILITIES_PER_PART, tableSize)];
+        for (int offset = 0; offset < compatibilities.length; offset++) {
+            compatibilities[offset]
+                    = serialNumber((index + offset + 1) % tableSize);
+        }
+        return new RobotPart(
+                "Part " + index,
+                serialNumber(index),
+                "Manu",
+                1000 + index,
+                compatibilities);
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import models.RobotPart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DbService operations against an embedded HSQLDB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbServiceBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int tableSize;
+
+    private ServerFixture server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = ServerFixture.create();
+        server.open("db" + tableSize, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public RobotPart read() throws Exception {
+        return server.read(randomSerialNumber());
+    }
+
+    @Benchmark
+    public RobotPart[] listCompatible() throws Exception {
+        return server.listCompatible(randomSerialNumber(), 100);
+    }
+
+    @Benchmark
+    public RobotPart[] listAll() throws Exception {
+        return server.listAll();
+    }
+
+    @Benchmark
+    public void update() throws Exception {
+        server.updateWeight(
+                randomSerialNumber(),
+                ThreadLocalRandom.current().nextInt(10000));
+    }
+
+    @Benchmark
+    public void addAndDelete() throws Exception {
+        final RobotPart robotPart = BenchmarkData.robotPart(
+                tableSize + ThreadLocalRandom.current().nextInt(1000000),
+                tableSize);
+        server.add(robotPart);
+        server.delete(robotPart.getSerialNumber());
+    }
+
+    private String randomSerialNumber() {
+        return BenchmarkData.serialNumber(
+                ThreadLocalRandom.current().nextInt(tableSize));
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.concurrent.TimeUnit;
+import models.RobotPart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * (De)serialization of arrays of robot parts, as in the "list-all"
+ * responses, in JSON and in Smile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RobotPartJsonBenchmark {
+    @Param({"1", "1000"})
+    private int robotPartCount;
+
+    private RobotPart[] robotParts;
+    private ObjectWriter jsonWriter;
+    private ObjectReader jsonReader;
+    private ObjectWriter smileWriter;
+    private ObjectReader smileReader;
+    private byte[] json;
+    private byte[] smile;
+
+    @Setup
+    public void setUp() throws Exception {
+        robotParts = new RobotPart[robotPartCount];
+        for (int index = 0; index < robotPartCount; index++) {
+            robotParts[index] = BenchmarkData.robotPart(index, robotPartCount);
+        }
+        final ObjectMapper jsonMapper = new ObjectMapper();
+        jsonWriter = jsonMapper.writerFor(RobotPart[].class);
+        jsonReader = jsonMapper.readerFor(RobotPart[].class);
+        final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        smileWriter = smileMapper.writerFor(RobotPart[].class);
+        smileReader = smileMapper.readerFor(RobotPart[].class);
+        json = jsonWriter.writeValueAsBytes(robotParts);
+        smile = smileWriter.writeValueAsBytes(robotParts);
+    }
+
+    @Benchmark
+    public byte[] writeJson() throws Exception {
+        return jsonWriter.writeValueAsBytes(robotParts);
+    }
+
+    @Benchmark
+    public RobotPart[] readJson() throws Exception {
+        return jsonReader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] writeSmile() throws Exception {
+        return smileWriter.writeValueAsBytes(robotParts);
+    }
+
+    @Benchmark
+    public RobotPart[] readSmile() throws Exception {
+        return smileReader.readValue(smile);
+    }
+}
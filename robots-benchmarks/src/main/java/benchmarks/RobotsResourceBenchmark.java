@@ -0,0 +1,155 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requests handled by Jersey in process, without HTTP: routing, filters,
+ * RobotsResource and the writing of the response body, against an
+ * embedded HSQLDB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RobotsResourceBenchmark {
+    private static final URI BASE_URI = URI.create("http://localhost/");
+
+    @Param({"100", "10000"})
+    private int tableSize;
+
+    @Param({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    private String mediaType;
+
+    private ServerFixture server;
+    private ApplicationHandler applicationHandler;
+    private ApplicationHandler streamingApplicationHandler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = ServerFixture.create();
+        server.open("resource" + tableSize, tableSize);
+        applicationHandler
+                = new ApplicationHandler(server.resourceConfig(false));
+        streamingApplicationHandler
+                = new ApplicationHandler(server.resourceConfig(true));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public long getRobotPart() throws Exception {
+        return handle(
+                applicationHandler,
+                "GET",
+                "robot-parts/" + randomSerialNumber(),
+                null);
+    }
+
+    @Benchmark
+    public long postRead() throws Exception {
+        return handle(
+                applicationHandler,
+                "POST",
+                "read",
+                "{\"serialNumber\":\"" + randomSerialNumber() + "\"}");
+    }
+
+    @Benchmark
+    public long getCompatibleRobotParts() throws Exception {
+        return handle(
+                applicationHandler,
+                "GET",
+                "robot-parts/" + randomSerialNumber() + "/compatible",
+                null);
+    }
+
+    @Benchmark
+    public long listAll() throws Exception {
+        return handle(applicationHandler, "GET", "list-all", null);
+    }
+
+    @Benchmark
+    public long listAllStreaming() throws Exception {
+        return handle(streamingApplicationHandler, "GET", "list-all", null);
+    }
+
+    /**
+     * @param jsonBody JSON body of the request, null for none
+     * @return Number of bytes of the response body
+     */
+    private long handle(
+            final ApplicationHandler handler,
+            final String method,
+            final String path,
+            final String jsonBody) throws Exception {
+        final ContainerRequest request = new ContainerRequest(
+                BASE_URI,
+                BASE_URI.resolve(path),
+                method,
+                null,
+                new MapPropertiesDelegate());
+        request.header(HttpHeaders.ACCEPT, mediaType);
+        if (jsonBody != null) {
+            request.header(
+                    HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            request.setEntityStream(new ByteArrayInputStream(
+                    jsonBody.getBytes(StandardCharsets.UTF_8)));
+        }
+        final CountingOutputStream output = new CountingOutputStream();
+        final ContainerResponse response
+                = handler.apply(request, output).get();
+        if (response.getStatus() != 200) {
+            throw new IllegalStateException(
+                    method + " " + path + ": " + response.getStatus());
+        }
+        return output.count;
+    }
+
+    private String randomSerialNumber() {
+        return BenchmarkData.serialNumber(
+                ThreadLocalRandom.current().nextInt(tableSize));
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
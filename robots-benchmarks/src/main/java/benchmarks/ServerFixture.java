@@ -0,0 +1,47 @@
+package benchmarks;
+
+import models.RobotPart;
+import org.glassfish.jersey.server.ResourceConfig;
+
+/**
+ * Access to the server classes, which are in the default package: JMH
+ * needs the benchmarks in a named package, and those cannot refer to the
+ * default package. Implemented by RobotsServerFixture, created once per
+ * trial with {@link #create()}, so the benchmarks only pay for an
+ * interface call.
+ */
+public interface ServerFixture extends AutoCloseable {
+    /**
+     * Fill an in-memory HSQLDB with {@code tableSize} robot parts from
+     * {@link BenchmarkData}.
+     * @param name Name of the database
+     */
+    void open(String name, int tableSize) throws Exception;
+
+    RobotPart read(String serialNumber) throws Exception;
+
+    RobotPart[] listCompatible(String serialNumber, int number)
+            throws Exception;
+
+    RobotPart[] listAll() throws Exception;
+
+    void updateWeight(String serialNumber, int weight) throws Exception;
+
+    void add(RobotPart robotPart) throws Exception;
+
+    void delete(String serialNumber) throws Exception;
+
+    /**
+     * @return Configuration of a Jersey application serving the database
+     * like the server does
+     */
+    ResourceConfig resourceConfig(boolean streamListAll);
+
+    @Override
+    void close();
+
+    static ServerFixture create() throws ReflectiveOperationException {
+        return (ServerFixture) Class.forName("RobotsServerFixture")
+                .newInstance();
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Settings of a {@link PooledHttpTransport}. Start from {@link #defaults()}
+ * and override what is needed, e.g.
+ * {@code HttpTransportConfig.defaults().withMaxConnectionsPerRoute(50)}.
+ *
+ * <p>The settings are only checked together, by {@link #validate()} when
+ * the transport is created, so that overrides can be applied in any order.
+ */
+public class HttpTransportConfig {
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int connectionRequestTimeoutMillis;
+    private final long keepAliveMillis;
+    private final long idleTimeoutMillis;
+    private final long evictionIntervalMillis;
+
+    private HttpTransportConfig(
+            final int maxConnections,
+            final int maxConnectionsPerRoute,
+            final int connectTimeoutMillis,
+            final int readTimeoutMillis,
+            final int connectionRequestTimeoutMillis,
+            final long keepAliveMillis,
+            final long idleTimeoutMillis,
+            final long evictionIntervalMillis) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    /**
+     * @throws IllegalArgumentException If a setting is out of range, or the
+     * limit per server is above the total limit
+     */
+    public void validate() {
+        if (maxConnections < 1 || maxConnectionsPerRoute < 1
+                || maxConnectionsPerRoute > maxConnections) {
+            throw new IllegalArgumentException(
+                    "Invalid connection limits: max=" + maxConnections
+                            + ", maxPerRoute=" + maxConnectionsPerRoute);
+        }
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0
+                || connectionRequestTimeoutMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Timeouts must be positive, or 0 for no limit.");
+        }
+        if (keepAliveMillis < 1 || idleTimeoutMillis < 1
+                || evictionIntervalMillis < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid keep-alive or idle timeout: keepAlive="
+                            + keepAliveMillis + ", idleTimeout="
+                            + idleTimeoutMillis + ", evictionInterval="
+                            + evictionIntervalMillis);
+        }
+    }
+
+    /**
+     * Up to 200 connections, 100 to the same server, 2s connect timeout,
+     * 30s read timeout, 5s wait for a free connection, connections kept
+     * alive for at most 20s, less than the 30s after which Jetty closes
+     * them, and closed after 10s without a request.
+     */
+    public static HttpTransportConfig defaults() {
+        return new HttpTransportConfig(
+                200, 100, 2000, 30000, 5000, 20000, 10000, 5000);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public int getConnectionRequestTimeoutMillis() {
+        return connectionRequestTimeoutMillis;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public HttpTransportConfig withMaxConnections(final int maxConnections) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withMaxConnectionsPerRoute(
+            final int maxConnectionsPerRoute) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withConnectTimeoutMillis(
+            final int connectTimeoutMillis) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withReadTimeoutMillis(
+            final int readTimeoutMillis) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withConnectionRequestTimeoutMillis(
+            final int connectionRequestTimeoutMillis) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withKeepAliveMillis(final long keepAliveMillis) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withIdleTimeoutMillis(
+            final long idleTimeoutMillis) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+
+    public HttpTransportConfig withEvictionIntervalMillis(
+            final long evictionIntervalMillis) {
+        return new HttpTransportConfig(
+                maxConnections,
+                maxConnectionsPerRoute,
+                connectTimeoutMillis,
+                readTimeoutMillis,
+                connectionRequestTimeoutMillis,
+                keepAliveMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis);
+    }
+}
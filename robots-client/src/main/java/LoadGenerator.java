@@ -0,0 +1,352 @@
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.UriBuilder;
+import models.RobotPart;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Load generator running a mix of operations against a robots server
+ * through {@link RobotsClient}, and reporting the throughput and the
+ * latency percentiles of each operation.
+ *
+ * <p>The load is open-loop: operations are scheduled at a fixed rate, and
+ * the latency of an operation is measured from the time it was scheduled,
+ * not from the time a thread was free to send it. A server that stalls
+ * therefore gets the latency its users would see, instead of fewer
+ * requests (coordinated omission).
+ *
+ * <p>Options (Java system properties, e.g. -Drobots.load.rate=500):
+ * <pre>
+ *   robots.load.uri             Server URI (default http://localhost:8080)
+ *   robots.load.threads         Max number of operations in flight
+ *                               (default 16)
+ *   robots.load.rate            Operations per second (default 100)
+ *   robots.load.durationSeconds Duration of the measurement (default 60)
+ *   robots.load.datasetSize     Robot parts added before the measurement
+ *                               (default 10000)
+ *   robots.load.mix             Weight of each operation (default
+ *                               read=60,update=10,add=10,delete=5,
+ *                               listCompatible=14,listAll=1)
+ *   robots.load.smile           Talk Smile instead of JSON (default false)
+ *   robots.load.pooled          Send the requests through a
+ *                               {@link PooledHttpTransport}, and print its
+ *                               statistics at the end (default false)
+ * </pre>
+ */
+public class LoadGenerator {
+    private static final String DATASET_PREFIX = "load-";
+    private static final String ADDED_PREFIX = "load-added-";
+    private static final int BULK_ADD_SIZE = 1000;
+    private static final int COMPATIBILITIES_PER_PART = 5;
+    private static final int LIST_COMPATIBLE_NUMBER = 100;
+    // Latencies are recorded in microseconds, up to one hour.
+    private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private enum Operation {
+        read, update, add, delete, listCompatible, listAll
+    }
+
+    private final RobotsClient robotsClient;
+    private final int threads;
+    private final int rate;
+    private final int durationSeconds;
+    private final int datasetSize;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, Recorder> recorders;
+    private final Map<Operation, AtomicLong> errorCounts;
+    private final ConcurrentLinkedQueue<String> addedSerialNumbers;
+    private final AtomicLong nextOperation;
+    private final AtomicLong nextAddedSerialNumber;
+
+    private LoadGenerator(
+            final RobotsClient robotsClient,
+            final int threads,
+            final int rate,
+            final int durationSeconds,
+            final int datasetSize,
+            final Map<Operation, Integer> mix) {
+        this.robotsClient = robotsClient;
+        this.threads = threads;
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.datasetSize = datasetSize;
+        this.operations = new Operation[mix.size()];
+        this.cumulativeWeights = new int[mix.size()];
+        int totalWeight = 0;
+        int index = 0;
+        for (final Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            totalWeight += entry.getValue();
+            operations[index] = entry.getKey();
+            cumulativeWeights[index] = totalWeight;
+            index++;
+        }
+        this.recorders = new EnumMap<>(Operation.class);
+        this.errorCounts = new EnumMap<>(Operation.class);
+        for (final Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(MAX_LATENCY_MICROS, 3));
+            errorCounts.put(operation, new AtomicLong());
+        }
+        this.addedSerialNumbers = new ConcurrentLinkedQueue<>();
+        this.nextOperation = new AtomicLong();
+        this.nextAddedSerialNumber = new AtomicLong();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final URI serverUri = UriBuilder.fromUri(System.getProperty(
+                "robots.load.uri", "http://localhost:8080")).build();
+        final int threads = Integer.getInteger("robots.load.threads", 16);
+        final PooledHttpTransport transport
+                = Boolean.getBoolean("robots.load.pooled")
+                        ? new PooledHttpTransport(HttpTransportConfig.defaults()
+                                .withMaxConnections(threads)
+                                .withMaxConnectionsPerRoute(threads))
+                        : null;
+        final Client client = transport == null
+                ? ClientBuilder.newClient()
+                : transport.newClient();
+        final RobotsClient robotsClient = new RobotsClient(
+                client,
+                serverUri,
+                Boolean.getBoolean("robots.load.smile"));
+        final LoadGenerator loadGenerator = new LoadGenerator(
+                robotsClient,
+                threads,
+                Integer.getInteger("robots.load.rate", 100),
+                Integer.getInteger("robots.load.durationSeconds", 60),
+                Integer.getInteger("robots.load.datasetSize", 10000),
+                parseMix(System.getProperty(
+                        "robots.load.mix",
+                        "read=60,update=10,add=10,delete=5,"
+                                + "listCompatible=14,listAll=1")));
+        loadGenerator.addDataset();
+        loadGenerator.run();
+        client.close();
+        if (transport != null) {
+            System.out.println("HTTP transport: " + transport.getStats());
+            transport.close();
+        }
+    }
+
+    /**
+     * Add the robot parts the operations work on, unless they already
+     * exist.
+     */
+    public void addDataset() throws RobotsClient.RobotsClientException {
+        for (int first = 0; first < datasetSize; first += BULK_ADD_SIZE) {
+            final int count = Math.min(BULK_ADD_SIZE, datasetSize - first);
+            final RobotPart[] robotParts = new RobotPart[count];
+            for (int index = 0; index < count; index++) {
+                robotParts[index] = datasetRobotPart(first + index);
+            }
+            robotsClient.bulkAdd(robotParts);
+        }
+        System.out.println(
+                "Dataset of " + datasetSize + " robot parts ready.");
+    }
+
+    /**
+     * Run the operations for the configured duration, then print the
+     * report.
+     */
+    public void run() throws InterruptedException {
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long totalOperations = (long) rate * durationSeconds;
+        final long startNanos = System.nanoTime();
+        final List<Thread> workers = new ArrayList<>(threads);
+        for (int index = 0; index < threads; index++) {
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runOperations(startNanos, intervalNanos, totalOperations);
+                }
+            }, "load-" + index);
+            worker.start();
+            workers.add(worker);
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        report(System.nanoTime() - startNanos);
+    }
+
+    private void runOperations(
+            final long startNanos,
+            final long intervalNanos,
+            final long totalOperations) {
+        long sequence;
+        while ((sequence = nextOperation.getAndIncrement())
+                < totalOperations) {
+            final long scheduledNanos = startNanos + sequence * intervalNanos;
+            long waitNanos;
+            while ((waitNanos = scheduledNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            final Operation operation = pickOperation();
+            try {
+                execute(operation);
+            } catch (final RobotsClient.RobotsClientException
+                    | RuntimeException e) {
+                errorCounts.get(operation).incrementAndGet();
+            }
+            final long latencyMicros = TimeUnit.NANOSECONDS.toMicros(
+                    System.nanoTime() - scheduledNanos);
+            recorders.get(operation).recordValue(
+                    Math.min(latencyMicros, MAX_LATENCY_MICROS));
+        }
+    }
+
+    private void execute(final Operation operation)
+            throws RobotsClient.RobotsClientException {
+        switch (operation) {
+            case read:
+                robotsClient.read(randomDatasetSerialNumber());
+                break;
+            case update:
+                robotsClient.updateWeight(
+                        randomDatasetSerialNumber(),
+                        ThreadLocalRandom.current().nextInt(10000));
+                break;
+            case add:
+                final String serialNumber = ADDED_PREFIX
+                        + nextAddedSerialNumber.getAndIncrement();
+                robotsClient.add(
+                        "Added part",
+                        serialNumber,
+                        "Manu",
+                        1000,
+                        new String[] {randomDatasetSerialNumber()});
+                addedSerialNumbers.add(serialNumber);
+                break;
+            case delete:
+                // Only deletes what the load added, so that the dataset
+                // stays the same.
+                final String addedSerialNumber = addedSerialNumbers.poll();
+                robotsClient.delete(addedSerialNumber == null
+                        ? ADDED_PREFIX + "none" : addedSerialNumber);
+                break;
+            case listCompatible:
+                robotsClient.listCompatible(
+                        randomDatasetSerialNumber(), LIST_COMPATIBLE_NUMBER);
+                break;
+            case listAll:
+                robotsClient.listAll();
+                break;
+            default:
+                throw new IllegalStateException(operation.name());
+        }
+    }
+
+    private Operation pickOperation() {
+        final int value = ThreadLocalRandom.current()
+                .nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int index = 0; index < cumulativeWeights.length; index++) {
+            if (value < cumulativeWeights[index]) {
+                return operations[index];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void report(final long elapsedNanos) {
+        final double elapsedSeconds = elapsedNanos / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "%.1f s at %d operations/s scheduled, %d threads",
+                elapsedSeconds,
+                rate,
+                threads));
+        System.out.println(String.format(Locale.ROOT,
+                "%-15s %8s %8s %10s %10s %10s %10s %10s",
+                "operation", "count", "errors", "ops/s",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        final Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        long totalErrors = 0;
+        for (final Operation operation : Operation.values()) {
+            final Histogram histogram
+                    = recorders.get(operation).getIntervalHistogram();
+            final long errors = errorCounts.get(operation).get();
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            total.add(histogram);
+            totalErrors += errors;
+            printLine(operation.name(), histogram, errors, elapsedSeconds);
+        }
+        printLine("total", total, totalErrors, elapsedSeconds);
+    }
+
+    private static void printLine(
+            final String name,
+            final Histogram histogram,
+            final long errors,
+            final double elapsedSeconds) {
+        System.out.println(String.format(Locale.ROOT,
+                "%-15s %8d %8d %10.1f %10.2f %10.2f %10.2f %10.2f",
+                name,
+                histogram.getTotalCount(),
+                errors,
+                histogram.getTotalCount() / elapsedSeconds,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+    }
+
+    private String randomDatasetSerialNumber() {
+        return datasetSerialNumber(
+                ThreadLocalRandom.current().nextInt(datasetSize));
+    }
+
+    private static String datasetSerialNumber(final int index) {
+        return String.format(Locale.ROOT, DATASET_PREFIX + "%08d", index);
+    }
+
+    private RobotPart datasetRobotPart(final int index) {
+        final String[] compatibilities
+                = new String[Math.min(COMPATIBILITIES_PER_PART, datasetSize)];
+        for (int offset = 0; offset < compatibilities.length; offset++) {
+            compatibilities[offset]
+                    = datasetSerialNumber((index + offset + 1) % datasetSize);
+        }
+        return new RobotPart(
+                "Part " + index,
+                datasetSerialNumber(index),
+                "Manu",
+                1000 + index,
+                compatibilities);
+    }
+
+    /**
+     * @param mix Comma separated operation=weight pairs
+     */
+    private static Map<Operation, Integer> parseMix(final String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (final String pair : mix.split(",")) {
+            final String[] parts = pair.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(
+                        "Malformed operation mix: " + mix);
+            }
+            final int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.valueOf(parts[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Empty operation mix: " + mix);
+        }
+        return weights;
+    }
+}
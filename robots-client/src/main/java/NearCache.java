@@ -0,0 +1,254 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of GET responses by URI, kept by {@link RobotsClient} with
+ * their entity tag.
+ *
+ * <p>An entry is fresh for a time-to-live after it was received or
+ * revalidated, and is then served without asking the server. Once stale,
+ * it is revalidated with its entity tag, so that the server only sends the
+ * body again if it changed. The least recently used entry is evicted once
+ * the cache is full.
+ *
+ * <p>Writers call {@link #invalidate} once their write is done, which
+ * makes the entry stale rather than removing it. A read that started
+ * before an invalidation stores a stale entry, see
+ * {@link #currentVersion()}.
+ */
+public class NearCache {
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder revalidations;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private long version;
+
+    /**
+     * @param maxSize Maximum number of cached responses
+     * @param timeToLiveMillis Time a response is served without asking the
+     *                         server, 0 to revalidate it on every read
+     */
+    public NearCache(final int maxSize, final long timeToLiveMillis) {
+        if (maxSize < 1 || timeToLiveMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid near cache: maxSize=" + maxSize
+                            + ", timeToLiveMillis=" + timeToLiveMillis);
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveNanos
+                = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.hits = new LongAdder();
+        this.revalidations = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Entry> eldest) {
+                if (size() > NearCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return The cached entry, fresh or stale, or null if the URI is not
+     * cached. A fresh entry counts as a hit.
+     */
+    public Entry get(final String key) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.isFresh()) {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Version to capture before sending the request and to pass to
+     * {@link #put} or {@link #revalidated} afterwards.
+     */
+    public synchronized long currentVersion() {
+        return version;
+    }
+
+    /**
+     * Cache a response received in full. It is stale from the start if an
+     * invalidation happened since {@code readVersion} was captured.
+     */
+    public void put(
+            final String key,
+            final String entityTag,
+            final Object entity,
+            final long readVersion) {
+        misses.increment();
+        store(key, entityTag, entity, readVersion);
+    }
+
+    /**
+     * Make the entry fresh again after the server answered that it did not
+     * change, unless an invalidation happened since {@code readVersion} was
+     * captured.
+     */
+    public void revalidated(
+            final String key,
+            final Entry entry,
+            final long readVersion) {
+        revalidations.increment();
+        store(key, entry.entityTag, entry.entity, readVersion);
+    }
+
+    public synchronized void remove(final String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Make the entry stale, so that it is revalidated on its next read.
+     */
+    public synchronized void invalidate(final String key) {
+        version++;
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            entries.put(key, entry.stale());
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        entries.replaceAll((key, entry) -> entry.stale());
+    }
+
+    public Stats getStats() {
+        final int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new Stats(
+                size,
+                maxSize,
+                hits.sum(),
+                revalidations.sum(),
+                misses.sum(),
+                evictions.sum());
+    }
+
+    private synchronized void store(
+            final String key,
+            final String entityTag,
+            final Object entity,
+            final long readVersion) {
+        final long nowNanos = System.nanoTime();
+        final long freshUntilNanos = readVersion == version
+                ? nowNanos + timeToLiveNanos
+                : nowNanos;
+        entries.put(key, new Entry(entityTag, entity, freshUntilNanos));
+    }
+
+    public static class Entry {
+        private final String entityTag;
+        private final Object entity;
+        private final long freshUntilNanos;
+
+        private Entry(
+                final String entityTag,
+                final Object entity,
+                final long freshUntilNanos) {
+            this.entityTag = entityTag;
+            this.entity = entity;
+            this.freshUntilNanos = freshUntilNanos;
+        }
+
+        public String getEntityTag() {
+            return entityTag;
+        }
+
+        public Object getEntity() {
+            return entity;
+        }
+
+        public boolean isFresh() {
+            return freshUntilNanos - System.nanoTime() > 0;
+        }
+
+        private Entry stale() {
+            return new Entry(entityTag, entity, System.nanoTime());
+        }
+    }
+
+    public static class Stats {
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long revalidations;
+        private final long misses;
+        private final long evictions;
+
+        public Stats(
+                final int size,
+                final int maxSize,
+                final long hits,
+                final long revalidations,
+                final long misses,
+                final long evictions) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.revalidations = revalidations;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Reads served from the cache without asking the server
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Reads the server answered with 304 Not Modified
+         */
+        public long getRevalidations() {
+            return revalidations;
+        }
+
+        /**
+         * Reads the server answered with the full response
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size
+                    + ", maxSize=" + maxSize
+                    + ", hits=" + hits
+                    + ", revalidations=" + revalidations
+                    + ", misses=" + misses
+                    + ", evictions=" + evictions;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.HttpHeaders;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+
+/**
+ * HTTP transport keeping connections to the server alive and reusing them
+ * across requests, for callers sending many requests per second. Without
+ * it, every request may open a new TCP connection, which costs a round
+ * trip and leaves a socket in TIME_WAIT that holds an ephemeral port.
+ *
+ * <p>The connections are pooled by Apache HttpClient, within a total limit
+ * and a limit per server. A background thread closes the connections that
+ * stayed idle for too long, or that the server no longer keeps alive.
+ *
+ * <p>Clients built by {@link #newClient()} share the pool, and can be
+ * given to {@link RobotsClient}. Closing them leaves the pool open, close
+ * the transport once they are all closed.
+ *
+ * <p>I/O is blocking: an asynchronous request holds a thread of the async
+ * executor of the JAX-RS client until its response headers arrive. That
+ * executor is unbounded unless {@link ClientProperties#ASYNC_THREADPOOL_SIZE}
+ * is set on the client.
+ */
+public class PooledHttpTransport implements Closeable {
+    /**
+     * Request property holding a {@link CompletableFuture}: if it completes
+     * exceptionally, e.g. when it is cancelled or times out, the exchange is
+     * aborted and its connection closed.
+     */
+    public static final String CANCELLATION_PROPERTY
+            = "robots.http.cancellation";
+    // Connections idle for longer are checked before being reused, in case
+    // the server closed them in the meantime.
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private final HttpTransportConfig config;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService reaper;
+    private final LongAdder requestCount;
+    private final LongAdder openedConnectionCount;
+
+    public PooledHttpTransport() {
+        this(HttpTransportConfig.defaults());
+    }
+
+    /**
+     * @throws IllegalArgumentException If the configuration is invalid
+     */
+    public PooledHttpTransport(final HttpTransportConfig config) {
+        config.validate();
+        this.config = config;
+        this.requestCount = new LongAdder();
+        this.openedConnectionCount = new LongAdder();
+        final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection>
+                connectionFactory = (route, connectionConfig) -> {
+                    openedConnectionCount.increment();
+                    return ManagedHttpClientConnectionFactory.INSTANCE.create(
+                            route, connectionConfig);
+                };
+        this.connectionManager
+                = new PoolingHttpClientConnectionManager(connectionFactory);
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(
+                config.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(
+                VALIDATE_AFTER_INACTIVITY_MILLIS);
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    final long serverKeepAliveMillis
+                            = DefaultConnectionKeepAliveStrategy.INSTANCE
+                                    .getKeepAliveDuration(response, context);
+                    return serverKeepAliveMillis > 0
+                            ? Math.min(
+                                    serverKeepAliveMillis,
+                                    config.getKeepAliveMillis())
+                            : config.getKeepAliveMillis();
+                })
+                .disableCookieManagement()
+                .build();
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "robots-http-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(
+                this::closeIdleConnections,
+                config.getEvictionIntervalMillis(),
+                config.getEvictionIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return A new JAX-RS client sending its requests through the pool
+     */
+    public Client newClient() {
+        return ClientBuilder.newClient(new ClientConfig().connectorProvider(
+                (client, runtimeConfig) -> new PooledConnector()));
+    }
+
+    public HttpTransportConfig getConfig() {
+        return config;
+    }
+
+    public Stats getStats() {
+        final PoolStats poolStats = connectionManager.getTotalStats();
+        return new Stats(
+                poolStats.getLeased(),
+                poolStats.getAvailable(),
+                poolStats.getPending(),
+                poolStats.getMax(),
+                connectionManager.getRoutes().size(),
+                requestCount.sum(),
+                openedConnectionCount.sum());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reaper.shutdownNow();
+        httpClient.close();
+    }
+
+    private void closeIdleConnections() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(
+                config.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Point-in-time view of the pool occupancy, and counts of the requests
+     * sent and of the connections opened for them since the transport was
+     * created. The fewer connections per request, the better they are
+     * reused.
+     */
+    public static class Stats {
+        private final int leasedConnections;
+        private final int idleConnections;
+        private final int waitingRequests;
+        private final int maxConnections;
+        private final int routes;
+        private final long requestCount;
+        private final long openedConnectionCount;
+
+        public Stats(
+                final int leasedConnections,
+                final int idleConnections,
+                final int waitingRequests,
+                final int maxConnections,
+                final int routes,
+                final long requestCount,
+                final long openedConnectionCount) {
+            this.leasedConnections = leasedConnections;
+            this.idleConnections = idleConnections;
+            this.waitingRequests = waitingRequests;
+            this.maxConnections = maxConnections;
+            this.routes = routes;
+            this.requestCount = requestCount;
+            this.openedConnectionCount = openedConnectionCount;
+        }
+
+        public int getLeasedConnections() {
+            return leasedConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        public int getWaitingRequests() {
+            return waitingRequests;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public int getRoutes() {
+            return routes;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getOpenedConnectionCount() {
+            return openedConnectionCount;
+        }
+
+        @Override
+        public String toString() {
+            return "leased=" + leasedConnections
+                    + ", idle=" + idleConnections
+                    + ", waiting=" + waitingRequests
+                    + ", max=" + maxConnections
+                    + ", routes=" + routes
+                    + ", requests=" + requestCount
+                    + ", openedConnections=" + openedConnectionCount;
+        }
+    }
+
+    /**
+     * Jersey connector sending the requests through the pooled HttpClient.
+     * The connect and read timeouts of the configuration can be overridden
+     * per request with the Jersey client properties.
+     */
+    private class PooledConnector implements Connector {
+        @Override
+        public ClientResponse apply(final ClientRequest request) {
+            final HttpUriRequest httpRequest = toHttpRequest(request);
+            final Object cancellation
+                    = request.getProperty(CANCELLATION_PROPERTY);
+            if (cancellation instanceof CompletableFuture) {
+                ((CompletableFuture<?>) cancellation).whenComplete(
+                        (value, failure) -> {
+                            if (failure != null) {
+                                httpRequest.abort();
+                            }
+                        });
+            }
+            requestCount.increment();
+            final CloseableHttpResponse httpResponse;
+            try {
+                httpResponse = httpClient.execute(httpRequest);
+            } catch (final IOException e) {
+                throw new ProcessingException(e);
+            }
+            final ClientResponse response = new ClientResponse(
+                    Statuses.from(
+                            httpResponse.getStatusLine().getStatusCode(),
+                            httpResponse.getStatusLine().getReasonPhrase()),
+                    request);
+            for (final Header header : httpResponse.getAllHeaders()) {
+                response.getHeaders().add(header.getName(), header.getValue());
+            }
+            // Closing the content reads what is left of it and hands the
+            // connection back to the pool, while closing the response would
+            // close the connection.
+            final HttpEntity entity = httpResponse.getEntity();
+            try {
+                response.setEntityStream(entity == null
+                        ? new ByteArrayInputStream(new byte[0])
+                        : entity.getContent());
+            } catch (final IOException e) {
+                closeQuietly(httpResponse);
+                throw new ProcessingException(e);
+            }
+            return response;
+        }
+
+        /**
+         * Sends the request synchronously: Jersey calls this from its async
+         * executor, whose thread is then held until the response headers
+         * arrive, as with the default connector. The returned future is
+         * already done and cancelling it does nothing; the exchange is
+         * aborted through {@link #CANCELLATION_PROPERTY} instead.
+         */
+        @Override
+        public Future<?> apply(
+                final ClientRequest request,
+                final AsyncConnectorCallback callback) {
+            try {
+                callback.response(apply(request));
+            } catch (final ProcessingException e) {
+                callback.failure(e);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public String getName() {
+            return "Apache HttpClient, pooled";
+        }
+
+        @Override
+        public void close() {
+            // The pool is shared by the clients, and closed with the
+            // transport.
+        }
+
+        private HttpUriRequest toHttpRequest(final ClientRequest request) {
+            final RequestBuilder builder = RequestBuilder
+                    .create(request.getMethod())
+                    .setUri(request.getUri())
+                    .setConfig(RequestConfig.custom()
+                            .setConnectTimeout(request.resolveProperty(
+                                    ClientProperties.CONNECT_TIMEOUT,
+                                    config.getConnectTimeoutMillis()))
+                            .setSocketTimeout(request.resolveProperty(
+                                    ClientProperties.READ_TIMEOUT,
+                                    config.getReadTimeoutMillis()))
+                            .setConnectionRequestTimeout(
+                                    config.getConnectionRequestTimeoutMillis())
+                            .build());
+            if (request.hasEntity()) {
+                // Bodies are small, so they are buffered to be sent with
+                // their length rather than chunked.
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                request.setStreamProvider(contentLength -> body);
+                try {
+                    request.writeEntity();
+                } catch (final IOException e) {
+                    throw new ProcessingException(e);
+                }
+                builder.setEntity(new ByteArrayEntity(body.toByteArray()));
+            }
+            // Headers are complete once the entity is written.
+            for (final Map.Entry<String, List<String>> header
+                    : request.getStringHeaders().entrySet()) {
+                if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(
+                        header.getKey())) {
+                    continue;
+                }
+                for (final String value : header.getValue()) {
+                    builder.addHeader(header.getKey(), value);
+                }
+            }
+            return builder.build();
+        }
+
+        private void closeQuietly(final CloseableHttpResponse httpResponse) {
+            try {
+                httpResponse.close();
+            } catch (final IOException e) {
+                // The exchange failed already.
+            }
+        }
+    }
+}
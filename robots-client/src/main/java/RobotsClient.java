@@ -1,34 +1,176 @@
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
+import javax.ws.rs.HttpMethod;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import models.BulkAddResult;
 import models.Constants;
 import models.DeleteRequest;
 import models.JsonMessage;
 import models.ListCompatibleRequest;
-import models.ReadRequest;
+import models.PatchRequest;
+import models.ReachableRequest;
+import models.ReadManyRequest;
+import models.ReadManyResponse;
 import models.RobotPart;
+import models.RobotPartPage;
+import models.ShortestPathRequest;
 import models.UpdateRequest;
+import org.glassfish.jersey.client.ClientProperties;
 
 public class RobotsClient {
     private static final String PATH_ADD = "add";
-    private static final String PATH_READ = "read";
     private static final String PATH_UPDATE = "update";
+    private static final String PATH_PATCH = "patch";
     private static final String PATH_DELETE = "delete";
     private static final String PATH_LIST_ALL = "list-all";
-    private static final String PATH_LIST_COMPATIBLE = "list-compatible";
+    private static final String PATH_LIST_PAGE = "list-page";
+    private static final String PATH_BULK_ADD = "bulk-add";
+    private static final String PATH_READ_MANY = "read-many";
+    private static final String PATH_LIST_REVERSE_COMPATIBLE
+            = "list-reverse-compatible";
+    private static final String PATH_LIST_REACHABLE = "list-reachable";
+    private static final String PATH_SHORTEST_PATH = "shortest-path";
+    private static final String PATH_ROBOT_PART = "robot-parts/{serialNumber}";
+    private static final String PATH_ROBOT_PART_COMPATIBLE
+            = "robot-parts/{serialNumber}/compatible";
 
-    private final Client client;
-    private final URI robotsServerUri;
+    private static final MediaType SMILE_TYPE
+            = MediaType.valueOf(SmileMediaTypes.APPLICATION_JACKSON_SMILE);
+    // Error messages are always sent as JSON.
+    private static final MediaType JSON_FALLBACK_TYPE = new MediaType(
+            "application", "json", Collections.singletonMap("q", "0.5"));
+    // Shared by all the clients, only to fail asynchronous requests that
+    // take too long.
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER
+            = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread
+                        = new Thread(runnable, "robots-client-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final WebTarget serverTarget;
+    private final MediaType requestMediaType;
+    private final MediaType[] acceptedMediaTypes;
     private final ObjectMapper mapper;
+    private final NearCache robotPartCache;
+    private final NearCache compatibleCache;
+    private final long asyncTimeoutMillis;
 
     public RobotsClient(final Client client, final URI robotsServerUri) {
-        this.client = client;
-        this.robotsServerUri = robotsServerUri;
+        this(client, robotsServerUri, false);
+    }
+
+    public RobotsClient(
+            final Client client,
+            final URI robotsServerUri,
+            final boolean preferSmile) {
+        this(client, robotsServerUri, preferSmile, 0);
+    }
+
+    public RobotsClient(
+            final Client client,
+            final URI robotsServerUri,
+            final boolean preferSmile,
+            final long asyncTimeoutMillis) {
+        this(client,
+                robotsServerUri,
+                preferSmile,
+                asyncTimeoutMillis,
+                0,
+                0);
+    }
+
+    /**
+     * @param preferSmile If true, requests and responses are sent in Smile,
+     *                    a binary equivalent of JSON that is smaller and
+     *                    faster to read and write, instead of JSON
+     * @param asyncTimeoutMillis Max duration of the asynchronous requests,
+     *                           0 for no limit. They fail with a
+     *                           {@link TimeoutException} after it, and the
+     *                           connection gives up reading the response.
+     * @param nearCacheMaxSize Max number of robot parts, and of compatible
+     *                         lists, kept to be served again by
+     *                         {@link #read} and {@link #listCompatible},
+     *                         0 to disable the near cache
+     * @param nearCacheTtlMillis Time a kept robot part or list is served
+     *                           without asking the server. After it, it is
+     *                           revalidated with its ETag. 0 to revalidate
+     *                           it on every read.
+     */
+    public RobotsClient(
+            final Client client,
+            final URI robotsServerUri,
+            final boolean preferSmile,
+            final long asyncTimeoutMillis,
+            final int nearCacheMaxSize,
+            final long nearCacheTtlMillis) {
+        if (asyncTimeoutMillis < 0 || asyncTimeoutMillis > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "asyncTimeoutMillis must be between 0 and "
+                            + Integer.MAX_VALUE + ".");
+        }
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+        this.serverTarget = client.target(robotsServerUri)
+                .register(JacksonSmileProvider.class);
+        if (preferSmile) {
+            this.requestMediaType = SMILE_TYPE;
+            this.acceptedMediaTypes
+                    = new MediaType[] {SMILE_TYPE, JSON_FALLBACK_TYPE};
+        } else {
+            this.requestMediaType = MediaType.APPLICATION_JSON_TYPE;
+            this.acceptedMediaTypes
+                    = new MediaType[] {MediaType.APPLICATION_JSON_TYPE};
+        }
         this.mapper = new ObjectMapper();
+        if (nearCacheMaxSize == 0) {
+            this.robotPartCache = null;
+            this.compatibleCache = null;
+        } else {
+            this.robotPartCache
+                    = new NearCache(nearCacheMaxSize, nearCacheTtlMillis);
+            this.compatibleCache
+                    = new NearCache(nearCacheMaxSize, nearCacheTtlMillis);
+        }
+    }
+
+    /**
+     * @return Statistics of the near cache of {@link #read}, null if the
+     * near cache is disabled
+     */
+    public NearCache.Stats getRobotPartCacheStats() {
+        return robotPartCache == null ? null : robotPartCache.getStats();
+    }
+
+    /**
+     * @return Statistics of the near cache of {@link #listCompatible}, null
+     * if the near cache is disabled
+     */
+    public NearCache.Stats getCompatibleCacheStats() {
+        return compatibleCache == null ? null : compatibleCache.getStats();
     }
 
     /**
@@ -57,11 +199,43 @@ public class RobotsClient {
                         compatibilities);
         final Response response
                 = sendPostRequest(PATH_ADD, robotPart);
+        invalidate(serialNumber);
+        checkHttpResponseAndClose(response);
+    }
+
+    /**
+     * Add many robot parts in one request. Each robot part is added,
+     * or not, on its own.
+     * @param robotParts Robot parts to add, up to 10000
+     * @return One result per robot part, in the same order,
+     * telling whether it was created, a duplicate, invalid, or not stored
+     * because of a server-side failure, in which case it can be retried
+     * @throws RobotsClientException If the request failed as a whole
+     */
+    public BulkAddResult[] bulkAdd(
+            final RobotPart[] robotParts) throws RobotsClientException {
+        final Response response
+                = sendPostRequest(PATH_BULK_ADD, robotParts);
+        final String[] serialNumbers = new String[robotParts.length];
+        for (int i = 0; i < robotParts.length; i++) {
+            serialNumbers[i] = robotParts[i].getSerialNumber();
+        }
+        invalidate(serialNumbers);
         checkHttpResponse(response);
+        try {
+            return response.readEntity(BulkAddResult[].class);
+        } catch (ProcessingException | IllegalStateException e) {
+            throw new RobotsClientException(
+                    "Malformed response from server on \"bulkAdd\" request.",
+                    e);
+        }
     }
 
     /**
-     * Retrieve the RobotPart corresponding to the serial number
+     * Retrieve the RobotPart corresponding to the serial number.
+     * If the near cache is enabled, see the constructor, a robot part read
+     * before is served again without asking the server while it is fresh,
+     * and is only downloaded again if it changed.
      * @param serialNumber Serial number of the robot part
      * @return RobotPart corresponding to the serial number
      * @throws RobotsClientException If the robot part was not found
@@ -69,16 +243,37 @@ public class RobotsClient {
      */
     public RobotPart read(
             final String serialNumber) throws RobotsClientException {
-        final ReadRequest readRequest
-                = new ReadRequest(serialNumber);
+        final WebTarget target = robotPartTarget(serialNumber);
+        try {
+            return copyOf(sendConditionalGetRequest(
+                    robotPartCache, target, RobotPart.class));
+        } catch (ProcessingException | IllegalStateException e) {
+            throw new RobotsClientException(
+                    "Malformed response from server on \"read\" request.", e);
+        }
+    }
+
+    /**
+     * Retrieve many robot parts in one request
+     * @param serialNumbers Serial numbers of the robot parts, up to 10000
+     * @return The robot parts found, in the order of the serial numbers,
+     * and the serial numbers that do not exist
+     * @throws RobotsClientException If the robot parts could not be read
+     */
+    public ReadManyResponse readMany(
+            final String[] serialNumbers) throws RobotsClientException {
+        final ReadManyRequest readManyRequest
+                = new ReadManyRequest(serialNumbers);
         final Response response
-                = sendPostRequest(PATH_READ, readRequest);
+                = sendPostRequest(PATH_READ_MANY, readManyRequest);
         checkHttpResponse(response);
         try {
-            return response.readEntity(RobotPart.class);
+            return response.readEntity(ReadManyResponse.class);
         } catch (ProcessingException | IllegalStateException e) {
             throw new RobotsClientException(
-                    "Malformed response from server on \"read\" request.", e);
+                    "Malformed response from server on"
+                            + " \"readMany\" request.",
+                    e);
         }
     }
 
@@ -134,6 +329,38 @@ public class RobotsClient {
         update(serialNumber, Constants.WEIGHT, weight);
     }
 
+    /**
+     * Update one field of the robot part, only if nobody updated it since
+     * it was read
+     * @param robotPart Robot part as read from the server
+     * @param fieldName Name of the field to update, see {@link Constants}
+     * @param value Updated value of the field
+     * @throws VersionConflictException If the robot part was updated since
+     * it was read
+     * @throws RobotsClientException If the robot part did not get updated
+     */
+    public void updateIfUnchanged(
+            final RobotPart robotPart,
+            final String fieldName,
+            final Object value)
+            throws RobotsClientException {
+        update(robotPart.getSerialNumber(),
+                fieldName,
+                value,
+                robotPart.getVersion());
+    }
+
+    /**
+     * Start an update of several fields of the robot part, sent as a single
+     * request by {@link Patch#apply()}, e.g.
+     * {@code client.patch("1").name("Head").weight(900).apply()}
+     * @param serialNumber Serial number of the robot part
+     * @return Patch without any field to update yet
+     */
+    public Patch patch(final String serialNumber) {
+        return new Patch(serialNumber);
+    }
+
     /**
      * Update the compatibilities of the robot part
      * @param serialNumber Serial number of the robot part
@@ -157,7 +384,8 @@ public class RobotsClient {
         final DeleteRequest deleteRequest = new DeleteRequest(serialNumber);
         final Response response
                 = sendPostRequest(PATH_DELETE, deleteRequest);
-        checkHttpResponse(response);
+        invalidate(serialNumber);
+        checkHttpResponseAndClose(response);
     }
 
     /**
@@ -167,9 +395,9 @@ public class RobotsClient {
      */
     public RobotPart[] listAll() throws RobotsClientException {
         final Response response
-                = client.target(robotsServerUri)
+                = serverTarget
                 .path(PATH_LIST_ALL)
-                .request(MediaType.APPLICATION_JSON_TYPE)
+                .request(acceptedMediaTypes)
                 .get();
         checkHttpResponse(response);
         try {
@@ -181,6 +409,55 @@ public class RobotsClient {
         }
     }
 
+    /**
+     * List one page of robot parts, ordered by serial number
+     * @param continuationToken Token of the previous page,
+     *                          null to get the first page
+     * @param pageSize Max number of robot parts in the page (up to 1000)
+     * @return The page, its continuation token is null on the last page
+     * @throws RobotsClientException If the page could not be retrieved
+     */
+    public RobotPartPage listPage(
+            final String continuationToken,
+            final Integer pageSize)
+            throws RobotsClientException {
+        WebTarget target = serverTarget
+                .path(PATH_LIST_PAGE)
+                .queryParam(Constants.LIMIT, pageSize);
+        if (continuationToken != null) {
+            target = target.queryParam(
+                    Constants.CONTINUATION_TOKEN, continuationToken);
+        }
+        final Response response
+                = target.request(acceptedMediaTypes).get();
+        checkHttpResponse(response);
+        try {
+            return response.readEntity(RobotPartPage.class);
+        } catch (ProcessingException | IllegalStateException e) {
+            throw new RobotsClientException(
+                    "Malformed response from server on \"listPage\" request.",
+                    e);
+        }
+    }
+
+    /**
+     * Iterate over all the robot parts in the DB, ordered by serial number.
+     * Pages are fetched lazily, one at a time, as the iteration goes.
+     * @param pageSize Number of robot parts fetched per request
+     * @return An Iterable that can be iterated several times, each time
+     * starting from the first page
+     * @throws UncheckedRobotsClientException While iterating, if a page
+     * could not be retrieved
+     */
+    public Iterable<RobotPart> iterateAll(final Integer pageSize) {
+        return new Iterable<RobotPart>() {
+            @Override
+            public Iterator<RobotPart> iterator() {
+                return new PageIterator(pageSize);
+            }
+        };
+    }
+
     /**
      * List all robot parts compatible with the robot part
      * corresponding to the given serial number
@@ -193,43 +470,578 @@ public class RobotsClient {
             final String serialNumber,
             final Integer number)
             throws RobotsClientException {
+        final WebTarget target = serverTarget
+                .path(PATH_ROBOT_PART_COMPATIBLE)
+                .resolveTemplate(Constants.SERIAL_NUMBER, serialNumber)
+                .queryParam(Constants.NUMBER, number);
+        try {
+            return copyOf(sendConditionalGetRequest(
+                    compatibleCache, target, RobotPart[].class));
+        } catch (ProcessingException | IllegalStateException e) {
+            throw new RobotsClientException(
+                    "Malformed response from server on"
+                            + " \"listCompatible\" request.",
+                    e);
+        }
+    }
+
+    /**
+     * List all robot parts that have the given serial number
+     * among their compatibilities
+     * @param serialNumber Serial number of the robot part
+     * @param number Max number of results
+     * @return Robot parts ordered by serial number
+     * @throws RobotsClientException If the list could not be retrieved,
+     * e.g. while the server is still building its compatibility index
+     */
+    public RobotPart[] listReverseCompatible(
+            final String serialNumber,
+            final Integer number)
+            throws RobotsClientException {
         final ListCompatibleRequest listCompatibleRequest
                 = new ListCompatibleRequest(serialNumber, number);
+        final Response response = sendPostRequest(
+                PATH_LIST_REVERSE_COMPATIBLE, listCompatibleRequest);
+        checkHttpResponse(response);
+        try {
+            return response.readEntity(RobotPart[].class);
+        } catch (ProcessingException | IllegalStateException e) {
+            throw new RobotsClientException(
+                    "Malformed response from server on"
+                            + " \"listReverseCompatible\" request.",
+                    e);
+        }
+    }
+
+    /**
+     * List the robot parts reachable from the given robot part by following
+     * compatibilities, closest first
+     * @param serialNumber Serial number of the robot part to start from
+     * @param maxDepth Max number of hops, at most 10
+     * @param number Max number of results
+     * @return Reachable robot parts, the starting one excluded
+     * @throws RobotsClientException
+     */
+    public RobotPart[] listReachable(
+            final String serialNumber,
+            final Integer maxDepth,
+            final Integer number)
+            throws RobotsClientException {
+        final ReachableRequest reachableRequest
+                = new ReachableRequest(serialNumber, maxDepth, number);
         final Response response
-                = sendPostRequest(PATH_LIST_COMPATIBLE, listCompatibleRequest);
+                = sendPostRequest(PATH_LIST_REACHABLE, reachableRequest);
         checkHttpResponse(response);
         try {
             return response.readEntity(RobotPart[].class);
         } catch (ProcessingException | IllegalStateException e) {
             throw new RobotsClientException(
                     "Malformed response from server on"
-                            + " \"listCompatible\" request.",
+                            + " \"listReachable\" request.",
+                    e);
+        }
+    }
+
+    /**
+     * Find a shortest chain of compatible robot parts between two robot parts
+     * @param fromSerialNumber Serial number of the first robot part
+     * @param toSerialNumber Serial number of the last robot part
+     * @param maxDepth Max number of hops, at most 10
+     * @return Robot parts of the chain, both ends included, empty if there
+     * is none within {@code maxDepth} hops
+     * @throws RobotsClientException
+     */
+    public RobotPart[] shortestPath(
+            final String fromSerialNumber,
+            final String toSerialNumber,
+            final Integer maxDepth)
+            throws RobotsClientException {
+        final ShortestPathRequest shortestPathRequest = new ShortestPathRequest(
+                fromSerialNumber, toSerialNumber, maxDepth);
+        final Response response
+                = sendPostRequest(PATH_SHORTEST_PATH, shortestPathRequest);
+        checkHttpResponse(response);
+        try {
+            return response.readEntity(RobotPart[].class);
+        } catch (ProcessingException | IllegalStateException e) {
+            throw new RobotsClientException(
+                    "Malformed response from server on"
+                            + " \"shortestPath\" request.",
                     e);
         }
     }
 
+    /**
+     * Asynchronous {@link #add}. The asynchronous methods complete their
+     * future exceptionally with a {@link RobotsClientException} when the
+     * synchronous method would throw one, and with a
+     * {@link TimeoutException} after the timeout given to the constructor.
+     * Cancelling the future completes it right away, and its response is
+     * closed whenever it arrives. Only a client built by
+     * {@link PooledHttpTransport} aborts the exchange itself; with other
+     * connectors the request goes on until the server answers or the
+     * timeout given to the constructor expires. Callbacks chained with the
+     * non-async methods of the future run on the threads of the JAX-RS
+     * client, keep them short.
+     */
+    public CompletableFuture<Void> addAsync(
+            final String name,
+            final String serialNumber,
+            final String manufacturer,
+            final Integer weight,
+            final String[] compatibilities) {
+        final RobotPart robotPart
+                = new RobotPart(
+                        name,
+                        serialNumber,
+                        manufacturer,
+                        weight,
+                        compatibilities);
+        return sendPostRequestAsync("add", PATH_ADD, robotPart, serialNumber);
+    }
+
+    /**
+     * Asynchronous {@link #read}, see {@link #addAsync}.
+     */
+    public CompletableFuture<RobotPart> readAsync(final String serialNumber) {
+        return sendConditionalGetRequestAsync(
+                "read",
+                robotPartCache,
+                robotPartTarget(serialNumber),
+                RobotPart.class,
+                RobotsClient::copyOf);
+    }
+
+    /**
+     * Asynchronous {@link #updateName}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> updateNameAsync(
+            final String serialNumber,
+            final String name) {
+        return updateAsync(serialNumber, Constants.NAME, name, null);
+    }
+
+    /**
+     * Asynchronous {@link #updateSerialNumber}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> updateSerialNumberAsync(
+            final String formerSerialNumber,
+            final String updatedSerialNumber) {
+        return updateAsync(
+                formerSerialNumber,
+                Constants.SERIAL_NUMBER,
+                updatedSerialNumber,
+                null);
+    }
+
+    /**
+     * Asynchronous {@link #updateManufacturer}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> updateManufacturerAsync(
+            final String serialNumber,
+            final String manufacturer) {
+        return updateAsync(
+                serialNumber, Constants.MANUFACTURER, manufacturer, null);
+    }
+
+    /**
+     * Asynchronous {@link #updateWeight}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> updateWeightAsync(
+            final String serialNumber,
+            final Integer weight) {
+        return updateAsync(serialNumber, Constants.WEIGHT, weight, null);
+    }
+
+    /**
+     * Asynchronous {@link #updateCompatibilities}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> updateCompatibilitiesAsync(
+            final String serialNumber,
+            final String[] compatibilities) {
+        return updateAsync(
+                serialNumber, Constants.COMPATIBILITIES, compatibilities, null);
+    }
+
+    /**
+     * Asynchronous {@link #updateIfUnchanged}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> updateIfUnchangedAsync(
+            final RobotPart robotPart,
+            final String fieldName,
+            final Object value) {
+        return updateAsync(
+                robotPart.getSerialNumber(),
+                fieldName,
+                value,
+                robotPart.getVersion());
+    }
+
+    /**
+     * Asynchronous {@link #delete}, see {@link #addAsync}.
+     */
+    public CompletableFuture<Void> deleteAsync(final String serialNumber) {
+        final DeleteRequest deleteRequest = new DeleteRequest(serialNumber);
+        return sendPostRequestAsync(
+                "delete", PATH_DELETE, deleteRequest, serialNumber);
+    }
+
+    /**
+     * Asynchronous {@link #listAll}, see {@link #addAsync}.
+     */
+    public CompletableFuture<RobotPart[]> listAllAsync() {
+        return sendAsync(
+                "listAll",
+                serverTarget.path(PATH_LIST_ALL).request(acceptedMediaTypes),
+                HttpMethod.GET,
+                null,
+                response -> {
+                    checkHttpResponse(response);
+                    return response.readEntity(RobotPart[].class);
+                });
+    }
+
+    /**
+     * Asynchronous {@link #listCompatible}, see {@link #addAsync}.
+     */
+    public CompletableFuture<RobotPart[]> listCompatibleAsync(
+            final String serialNumber,
+            final Integer number) {
+        final WebTarget target = serverTarget
+                .path(PATH_ROBOT_PART_COMPATIBLE)
+                .resolveTemplate(Constants.SERIAL_NUMBER, serialNumber)
+                .queryParam(Constants.NUMBER, number);
+        return sendConditionalGetRequestAsync(
+                "listCompatible",
+                compatibleCache,
+                target,
+                RobotPart[].class,
+                RobotsClient::copyOf);
+    }
+
     private void update(
             final String oldSerialNumber,
             final String fieldName,
             final Object value)
             throws RobotsClientException {
+        update(oldSerialNumber, fieldName, value, null);
+    }
+
+    private void update(
+            final String oldSerialNumber,
+            final String fieldName,
+            final Object value,
+            final Long expectedVersion)
+            throws RobotsClientException {
         final UpdateRequest updateRequest
                 = new UpdateRequest(
                 oldSerialNumber,
                 fieldName,
-                value);
+                value,
+                expectedVersion);
         final Response response
                 = sendPostRequest(PATH_UPDATE, updateRequest);
+        invalidate(oldSerialNumber, newSerialNumber(fieldName, value));
+        checkHttpResponseAndClose(response);
+    }
+
+    private CompletableFuture<Void> updateAsync(
+            final String oldSerialNumber,
+            final String fieldName,
+            final Object value,
+            final Long expectedVersion) {
+        final UpdateRequest updateRequest
+                = new UpdateRequest(
+                oldSerialNumber,
+                fieldName,
+                value,
+                expectedVersion);
+        return sendPostRequestAsync(
+                "update",
+                PATH_UPDATE,
+                updateRequest,
+                oldSerialNumber,
+                newSerialNumber(fieldName, value));
+    }
+
+    private WebTarget robotPartTarget(final String serialNumber) {
+        return serverTarget
+                .path(PATH_ROBOT_PART)
+                .resolveTemplate(Constants.SERIAL_NUMBER, serialNumber);
+    }
+
+    private static String newSerialNumber(
+            final String fieldName, final Object value) {
+        return Constants.SERIAL_NUMBER.equals(fieldName)
+                && value instanceof String
+                ? (String) value
+                : null;
+    }
+
+    /**
+     * Copy of a robot part of the near cache, so that a caller changing it
+     * or its compatibilities does not change what other callers read.
+     */
+    private static RobotPart copyOf(final RobotPart robotPart) {
+        return new RobotPart(
+                robotPart.getName(),
+                robotPart.getSerialNumber(),
+                robotPart.getManufacturer(),
+                robotPart.getWeight(),
+                robotPart.getCompatibilities() == null
+                        ? null
+                        : robotPart.getCompatibilities().clone(),
+                robotPart.getVersion());
+    }
+
+    private static RobotPart[] copyOf(final RobotPart[] robotParts) {
+        final RobotPart[] copy = new RobotPart[robotParts.length];
+        for (int count = 0; count < robotParts.length; count++) {
+            copy[count] = copyOf(robotParts[count]);
+        }
+        return copy;
+    }
+
+    /**
+     * Make the near cache revalidate what a write through this client may
+     * have changed: the robot parts written, and the compatible lists. Any
+     * list may hold a written robot part, but the lists it does not change
+     * are revalidated with a 304.
+     */
+    private void invalidate(final String... serialNumbers) {
+        if (robotPartCache == null) {
+            return;
+        }
+        for (final String serialNumber : serialNumbers) {
+            if (serialNumber != null) {
+                robotPartCache.invalidate(
+                        robotPartTarget(serialNumber).getUri().toString());
+            }
+        }
+        compatibleCache.invalidateAll();
+    }
+
+    /**
+     * GET a resource through the near cache: a fresh copy is served as is,
+     * a stale one is revalidated, and the server answers 304 without a body
+     * if it did not change. The entity returned is the one cached, and must
+     * be copied before it is handed out.
+     * @param cache The near cache, null to send a plain GET
+     */
+    private <T> T sendConditionalGetRequest(
+            final NearCache cache,
+            final WebTarget target,
+            final Class<T> entityType)
+            throws RobotsClientException {
+        if (cache == null) {
+            final Response response
+                    = target.request(acceptedMediaTypes).get();
+            checkHttpResponse(response);
+            return response.readEntity(entityType);
+        }
+        final String key = target.getUri().toString();
+        final long readVersion = cache.currentVersion();
+        final NearCache.Entry entry = cache.get(key);
+        if (entry != null && entry.isFresh()) {
+            return entityType.cast(entry.getEntity());
+        }
+        final Response response = conditionalGetRequest(target, entry).get();
+        return readConditionalResponse(
+                cache, key, entry, readVersion, response, entityType);
+    }
+
+    /**
+     * @param cache The near cache, null to send a plain GET
+     * @param copy Applied to the entity before completing the future, which
+     *             is not done with thenApply so that cancelling the returned
+     *             future still cancels the request
+     */
+    private <T> CompletableFuture<T> sendConditionalGetRequestAsync(
+            final String requestName,
+            final NearCache cache,
+            final WebTarget target,
+            final Class<T> entityType,
+            final UnaryOperator<T> copy) {
+        if (cache == null) {
+            return sendAsync(
+                    requestName,
+                    target.request(acceptedMediaTypes),
+                    HttpMethod.GET,
+                    null,
+                    response -> {
+                        checkHttpResponse(response);
+                        return response.readEntity(entityType);
+                    });
+        }
+        final String key = target.getUri().toString();
+        final long readVersion = cache.currentVersion();
+        final NearCache.Entry entry = cache.get(key);
+        if (entry != null && entry.isFresh()) {
+            return CompletableFuture.completedFuture(
+                    copy.apply(entityType.cast(entry.getEntity())));
+        }
+        return sendAsync(
+                requestName,
+                conditionalGetRequest(target, entry),
+                HttpMethod.GET,
+                null,
+                response -> copy.apply(readConditionalResponse(
+                        cache, key, entry, readVersion, response, entityType)));
+    }
+
+    private Invocation.Builder conditionalGetRequest(
+            final WebTarget target,
+            final NearCache.Entry entry) {
+        Invocation.Builder request
+                = target.request(acceptedMediaTypes);
+        if (entry != null) {
+            request = request.header(
+                    HttpHeaders.IF_NONE_MATCH, entry.getEntityTag());
+        }
+        return request;
+    }
+
+    private <T> T readConditionalResponse(
+            final NearCache cache,
+            final String key,
+            final NearCache.Entry entry,
+            final long readVersion,
+            final Response response,
+            final Class<T> entityType)
+            throws RobotsClientException {
+        if (entry != null
+                && response.getStatus()
+                        == Response.Status.NOT_MODIFIED.getStatusCode()) {
+            response.close();
+            cache.revalidated(key, entry, readVersion);
+            return entityType.cast(entry.getEntity());
+        }
+        if (!Response.Status.Family.SUCCESSFUL
+                .equals(response.getStatusInfo().getFamily())) {
+            cache.remove(key);
+        }
         checkHttpResponse(response);
+        final T entity = response.readEntity(entityType);
+        final String entityTag = response.getHeaderString(HttpHeaders.ETAG);
+        if (entityTag != null) {
+            cache.put(key, entityTag, entity, readVersion);
+        }
+        return entity;
     }
 
     private Response sendPostRequest(
             final String path, final Object requestEntity) {
-        return client.target(robotsServerUri)
+        return serverTarget
                 .path(path)
-                .request(MediaType.APPLICATION_JSON_TYPE)
-                .post(Entity.entity(
-                        requestEntity, MediaType.APPLICATION_JSON_TYPE));
+                .request(acceptedMediaTypes)
+                .post(Entity.entity(requestEntity, requestMediaType));
+    }
+
+    /**
+     * @param writtenSerialNumbers Robot parts invalidated in the near cache
+     *                             once the server answered
+     */
+    private CompletableFuture<Void> sendPostRequestAsync(
+            final String requestName,
+            final String path,
+            final Object requestEntity,
+            final String... writtenSerialNumbers) {
+        return sendAsync(
+                requestName,
+                serverTarget.path(path).request(acceptedMediaTypes),
+                HttpMethod.POST,
+                Entity.entity(requestEntity, requestMediaType),
+                response -> {
+                    invalidate(writtenSerialNumbers);
+                    checkHttpResponse(response);
+                    return null;
+                });
+    }
+
+    /**
+     * Send the request with the JAX-RS async invoker and complete the
+     * returned future with what the handler reads from the response.
+     *
+     * <p>With the default connector, the JAX-RS future cannot abort a
+     * request that is already being sent: cancelling it only discards the
+     * response. So the timeout is also given to the connection as read and
+     * connect timeouts, which make it give up the exchange and free its
+     * socket. Only a client built by {@link PooledHttpTransport} aborts the
+     * exchange as soon as the returned future is cancelled or times out.
+     */
+    private <T> CompletableFuture<T> sendAsync(
+            final String requestName,
+            final Invocation.Builder request,
+            final String method,
+            final Entity<?> entity,
+            final ResponseHandler<T> handler) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        request.property(PooledHttpTransport.CANCELLATION_PROPERTY, result);
+        if (asyncTimeoutMillis > 0) {
+            request.property(
+                    ClientProperties.CONNECT_TIMEOUT, (int) asyncTimeoutMillis);
+            request.property(
+                    ClientProperties.READ_TIMEOUT, (int) asyncTimeoutMillis);
+        }
+        final InvocationCallback<Response> callback
+                = new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(final Response response) {
+                        try {
+                            if (!result.isDone()) {
+                                result.complete(handler.handle(response));
+                            }
+                        } catch (final RobotsClientException e) {
+                            result.completeExceptionally(e);
+                        } catch (ProcessingException
+                                | IllegalStateException e) {
+                            result.completeExceptionally(
+                                    new RobotsClientException(
+                                            "Malformed response from server"
+                                                    + " on \"" + requestName
+                                                    + "\" request.",
+                                            e));
+                        } finally {
+                            response.close();
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Throwable throwable) {
+                        result.completeExceptionally(new RobotsClientException(
+                                "Could not send \"" + requestName
+                                        + "\" request.",
+                                throwable));
+                    }
+                };
+        final Future<Response> exchange = entity == null
+                ? request.async().method(method, callback)
+                : request.async().method(method, entity, callback);
+        result.whenComplete((value, failure) -> exchange.cancel(true));
+        if (asyncTimeoutMillis > 0) {
+            final ScheduledFuture<?> timeout = TIMEOUT_SCHEDULER.schedule(
+                    () -> result.completeExceptionally(new TimeoutException(
+                            "No response to \"" + requestName + "\" request"
+                                    + " after " + asyncTimeoutMillis
+                                    + " ms.")),
+                    asyncTimeoutMillis,
+                    TimeUnit.MILLISECONDS);
+            result.whenComplete((value, failure) -> timeout.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Check a response whose body is not needed, and close it so that its
+     * connection can be reused.
+     */
+    private void checkHttpResponseAndClose(
+            final Response response) throws RobotsClientException {
+        try {
+            checkHttpResponse(response);
+        } finally {
+            response.close();
+        }
     }
 
     private void checkHttpResponse(
@@ -243,10 +1055,117 @@ public class RobotsClient {
                 throw new RobotsClientException(
                         "Unexpected response from server.", e);
             }
+            if (response.getStatus() == 409) {
+                throw new VersionConflictException(jsonMessage.getMessage());
+            }
             throw new RobotsClientException(jsonMessage.getMessage());
         }
     }
 
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws RobotsClientException;
+    }
+
+    /**
+     * Fields to update in a robot part, all at once or not at all.
+     */
+    public class Patch {
+        private final String serialNumber;
+        private final Map<String, Object> fields;
+        private Long expectedVersion;
+
+        private Patch(final String serialNumber) {
+            this.serialNumber = serialNumber;
+            this.fields = new LinkedHashMap<>();
+        }
+
+        public Patch name(final String name) {
+            fields.put(Constants.NAME, name);
+            return this;
+        }
+
+        public Patch updatedSerialNumber(final String updatedSerialNumber) {
+            fields.put(Constants.SERIAL_NUMBER, updatedSerialNumber);
+            return this;
+        }
+
+        public Patch manufacturer(final String manufacturer) {
+            fields.put(Constants.MANUFACTURER, manufacturer);
+            return this;
+        }
+
+        public Patch weight(final Integer weight) {
+            fields.put(Constants.WEIGHT, weight);
+            return this;
+        }
+
+        public Patch compatibilities(final String[] compatibilities) {
+            fields.put(Constants.COMPATIBILITIES, compatibilities);
+            return this;
+        }
+
+        /**
+         * Only apply the patch if the robot part still has this version.
+         */
+        public Patch ifVersion(final Long expectedVersion) {
+            this.expectedVersion = expectedVersion;
+            return this;
+        }
+
+        /**
+         * @throws VersionConflictException If the robot part does not have
+         * the version given to {@link #ifVersion}
+         * @throws RobotsClientException If the robot part did not get updated
+         */
+        public void apply() throws RobotsClientException {
+            final PatchRequest patchRequest
+                    = new PatchRequest(serialNumber, fields, expectedVersion);
+            final Response response
+                    = sendPostRequest(PATH_PATCH, patchRequest);
+            invalidate(
+                    serialNumber, (String) fields.get(Constants.SERIAL_NUMBER));
+            checkHttpResponseAndClose(response);
+        }
+    }
+
+    private class PageIterator implements Iterator<RobotPart> {
+        private final Integer pageSize;
+        private RobotPart[] robotParts;
+        private int position;
+        private String continuationToken;
+
+        private PageIterator(final Integer pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Pages can only be empty at the end, but loop to be safe.
+            while (robotParts == null
+                    || (position == robotParts.length
+                            && continuationToken != null)) {
+                final RobotPartPage page;
+                try {
+                    page = listPage(continuationToken, pageSize);
+                } catch (final RobotsClientException e) {
+                    throw new UncheckedRobotsClientException(e);
+                }
+                robotParts = page.getRobotParts();
+                continuationToken = page.getContinuationToken();
+                position = 0;
+            }
+            return position < robotParts.length;
+        }
+
+        @Override
+        public RobotPart next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return robotParts[position++];
+        }
+    }
+
     public class RobotsClientException extends Exception {
         public RobotsClientException(String message) {
             super(message);
@@ -255,4 +1174,17 @@ public class RobotsClient {
             super(message, cause);
         }
     }
+
+    public class VersionConflictException extends RobotsClientException {
+        public VersionConflictException(String message) {
+            super(message);
+        }
+    }
+
+    public class UncheckedRobotsClientException extends RuntimeException {
+        public UncheckedRobotsClientException(
+                final RobotsClientException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
 }
@@ -0,0 +1,96 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearCacheTest {
+    private static final String KEY = "robot-parts/1";
+    private static final long TTL_MILLIS = 60000;
+
+    @Test
+    public void testPutIsFresh() {
+        final NearCache cache = new NearCache(10, TTL_MILLIS);
+        cache.put(KEY, "\"1\"", "part", cache.currentVersion());
+        final NearCache.Entry entry = cache.get(KEY);
+        assertTrue(entry.isFresh());
+        assertEquals("\"1\"", entry.getEntityTag());
+        assertEquals("part", entry.getEntity());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void testInvalidateDuringReadStoresStaleEntry() {
+        final NearCache cache = new NearCache(10, TTL_MILLIS);
+        final long readVersion = cache.currentVersion();
+        // A write through the client completes while the read is in flight.
+        cache.invalidate(KEY);
+        cache.put(KEY, "\"1\"", "part", readVersion);
+        assertFalse(cache.get(KEY).isFresh());
+        assertEquals(0, cache.getStats().getHits());
+    }
+
+    @Test
+    public void testRevalidatedAfterInvalidateStaysStale() {
+        final NearCache cache = new NearCache(10, TTL_MILLIS);
+        cache.put(KEY, "\"1\"", "part", cache.currentVersion());
+        cache.invalidate(KEY);
+        final NearCache.Entry entry = cache.get(KEY);
+        assertFalse(entry.isFresh());
+
+        final long readVersion = cache.currentVersion();
+        cache.invalidate(KEY);
+        cache.revalidated(KEY, entry, readVersion);
+        assertFalse(cache.get(KEY).isFresh());
+
+        cache.revalidated(KEY, entry, cache.currentVersion());
+        assertTrue(cache.get(KEY).isFresh());
+        assertEquals(2, cache.getStats().getRevalidations());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        final NearCache cache = new NearCache(10, TTL_MILLIS);
+        cache.put("a", "\"1\"", "a", cache.currentVersion());
+        cache.put("b", "\"1\"", "b", cache.currentVersion());
+        cache.invalidateAll();
+        assertFalse(cache.get("a").isFresh());
+        assertFalse(cache.get("b").isFresh());
+        assertEquals(2, cache.getStats().getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final NearCache cache = new NearCache(2, TTL_MILLIS);
+        cache.put("a", "\"1\"", "a", cache.currentVersion());
+        cache.put("b", "\"1\"", "b", cache.currentVersion());
+        cache.get("a");
+        cache.put("c", "\"1\"", "c", cache.currentVersion());
+        assertNull(cache.get("b"));
+        assertEquals("a", cache.get("a").getEntity());
+        assertEquals("c", cache.get("c").getEntity());
+
+        final NearCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.getSize());
+        assertEquals(2, stats.getMaxSize());
+        assertEquals(1, stats.getEvictions());
+    }
+
+    @Test
+    public void testZeroTimeToLiveAlwaysRevalidates() {
+        final NearCache cache = new NearCache(10, 0);
+        cache.put(KEY, "\"1\"", "part", cache.currentVersion());
+        final NearCache.Entry entry = cache.get(KEY);
+        assertFalse(entry.isFresh());
+        cache.revalidated(KEY, entry, cache.currentVersion());
+        assertFalse(cache.get(KEY).isFresh());
+        assertEquals(0, cache.getStats().getHits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyCache() {
+        new NearCache(0, TTL_MILLIS);
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledHttpTransportTest {
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        server.answer("/ping", 200, "{}");
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testReusesConnections() throws Exception {
+        try (PooledHttpTransport transport = new PooledHttpTransport()) {
+            final Client client = transport.newClient();
+            for (int count = 0; count < 10; count++) {
+                assertEquals("{}", client.target(server.getUri())
+                        .path("ping")
+                        .request()
+                        .get(String.class));
+            }
+            final PooledHttpTransport.Stats stats = transport.getStats();
+            assertEquals(10, stats.getRequestCount());
+            assertEquals(1, stats.getOpenedConnectionCount());
+            assertEquals(0, stats.getLeasedConnections());
+            assertEquals(1, stats.getIdleConnections());
+        }
+    }
+
+    @Test
+    public void testSendsBodyAndHeaders() throws Exception {
+        try (PooledHttpTransport transport = new PooledHttpTransport()) {
+            final String body = "{\"serialNumber\":\"1\"}";
+            final Response response = transport.newClient()
+                    .target(server.getUri())
+                    .path("ping")
+                    .request()
+                    .header("X-Request-Id", "42")
+                    .post(Entity.entity(body, MediaType.APPLICATION_JSON));
+            response.close();
+            assertEquals(200, response.getStatus());
+            assertEquals(body, server.getLastRequestBody());
+            assertEquals(
+                    Integer.toString(body.length()),
+                    server.getLastRequestHeader("Content-Length"));
+            assertEquals(
+                    MediaType.APPLICATION_JSON,
+                    server.getLastRequestHeader("Content-Type"));
+            assertEquals("42", server.getLastRequestHeader("X-Request-Id"));
+        }
+    }
+
+    @Test
+    public void testClampsServerKeepAlive() throws Exception {
+        server.answer("/ping", 200, "{}", "Keep-Alive", "timeout=60");
+        final HttpTransportConfig config = HttpTransportConfig.defaults()
+                .withKeepAliveMillis(100)
+                .withIdleTimeoutMillis(60000)
+                .withEvictionIntervalMillis(50);
+        try (PooledHttpTransport transport = new PooledHttpTransport(config)) {
+            transport.newClient()
+                    .target(server.getUri())
+                    .path("ping")
+                    .request()
+                    .get(String.class);
+            assertEquals(1, transport.getStats().getIdleConnections());
+            waitFor(() -> transport.getStats().getIdleConnections() == 0);
+        }
+    }
+
+    @Test
+    public void testClosesIdleConnections() throws Exception {
+        final HttpTransportConfig config = HttpTransportConfig.defaults()
+                .withIdleTimeoutMillis(100)
+                .withEvictionIntervalMillis(50);
+        try (PooledHttpTransport transport = new PooledHttpTransport(config)) {
+            transport.newClient()
+                    .target(server.getUri())
+                    .path("ping")
+                    .request()
+                    .get(String.class);
+            waitFor(() -> transport.getStats().getIdleConnections() == 0);
+        }
+    }
+
+    @Test
+    public void testAbortsCancelledExchange() throws Exception {
+        server.stall("/stall");
+        try (PooledHttpTransport transport = new PooledHttpTransport()) {
+            final CompletableFuture<Void> cancellation
+                    = new CompletableFuture<>();
+            final Future<Response> exchange = transport.newClient()
+                    .target(server.getUri())
+                    .path("stall")
+                    .request()
+                    .property(
+                            PooledHttpTransport.CANCELLATION_PROPERTY,
+                            cancellation)
+                    .async()
+                    .get();
+            waitFor(() -> transport.getStats().getLeasedConnections() == 1);
+            cancellation.cancel(true);
+            try {
+                exchange.get(5, TimeUnit.SECONDS);
+                fail("The exchange should have been aborted.");
+            } catch (final ExecutionException e) {
+                // Expected.
+            }
+            assertEquals(0, transport.getStats().getLeasedConnections());
+            assertEquals(0, transport.getStats().getIdleConnections());
+        }
+    }
+
+    @Test
+    public void testConfigOverridesApplyInAnyOrder() throws Exception {
+        new PooledHttpTransport(HttpTransportConfig.defaults()
+                .withMaxConnections(16)
+                .withMaxConnectionsPerRoute(16))
+                .close();
+        try {
+            new PooledHttpTransport(HttpTransportConfig.defaults()
+                    .withMaxConnectionsPerRoute(300));
+            fail("A limit per server above the total limit should fail.");
+        } catch (final IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    private static void waitFor(final BooleanSupplier condition)
+            throws InterruptedException {
+        final long deadlineNanos
+                = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                fail("Condition not met within 5 seconds.");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
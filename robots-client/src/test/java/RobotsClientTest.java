@@ -1,2 +1,245 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import models.RobotPart;
+import models.RobotPartPage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 public class RobotsClientTest {
+    private StubServer server;
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer();
+        client = ClientBuilder.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testAddAsync() throws Exception {
+        server.answer("/add", 200, "{\"message\":\"OK\"}");
+        final RobotsClient robotsClient
+                = new RobotsClient(client, server.getUri());
+        assertNull(robotsClient
+                .addAsync("BasicHead", "1", "Manu", 1000, new String[] {"2"})
+                .get(5, TimeUnit.SECONDS));
+        assertTrue(server.getLastRequestBody().contains("\"BasicHead\""));
+    }
+
+    @Test
+    public void testReadAsync() throws Exception {
+        server.answer(
+                "/robot-parts/1",
+                200,
+                new ObjectMapper().writeValueAsString(new RobotPart(
+                        "BasicHead", "1", "Manu", 1000, new String[] {"2"})));
+        final RobotsClient robotsClient
+                = new RobotsClient(client, server.getUri());
+        final RobotPart robotPart
+                = robotsClient.readAsync("1").get(5, TimeUnit.SECONDS);
+        assertEquals("BasicHead", robotPart.getName());
+        assertEquals("2", robotPart.getCompatibilities()[0]);
+    }
+
+    @Test
+    public void testPreferSmile() throws Exception {
+        final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        server.answer(
+                "/robot-parts/1",
+                200,
+                smileMapper.writeValueAsBytes(new RobotPart(
+                        "BasicHead", "1", "Manu", 1000, new String[] {"2"})),
+                SmileMediaTypes.APPLICATION_JACKSON_SMILE);
+        server.answer("/add", 200, "{\"message\":\"OK\"}");
+        final RobotsClient robotsClient
+                = new RobotsClient(client, server.getUri(), true);
+
+        final RobotPart robotPart
+                = robotsClient.readAsync("1").get(5, TimeUnit.SECONDS);
+        assertEquals("BasicHead", robotPart.getName());
+        assertEquals("2", robotPart.getCompatibilities()[0]);
+        assertTrue(server.getLastRequestHeader("Accept")
+                .startsWith(SmileMediaTypes.APPLICATION_JACKSON_SMILE));
+
+        assertNull(robotsClient
+                .addAsync("BasicHead", "3", "Manu", 1000, new String[] {"2"})
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(
+                SmileMediaTypes.APPLICATION_JACKSON_SMILE,
+                server.getLastRequestHeader("Content-Type"));
+        final RobotPart sent = smileMapper.readValue(
+                server.getLastRequestBytes(), RobotPart.class);
+        assertEquals("3", sent.getSerialNumber());
+        assertEquals("2", sent.getCompatibilities()[0]);
+    }
+
+    @Test
+    public void testNearCacheHandsOutCopies() throws Exception {
+        server.answer(
+                "/robot-parts/1",
+                200,
+                new ObjectMapper().writeValueAsString(new RobotPart(
+                        "BasicHead", "1", "Manu", 1000, new String[] {"2"})),
+                "ETag",
+                "\"1\"");
+        final RobotsClient uncachedClient
+                = new RobotsClient(client, server.getUri());
+        assertNull(uncachedClient.getRobotPartCacheStats());
+        final RobotsClient robotsClient = new RobotsClient(
+                client, server.getUri(), false, 0, 10, 60000);
+        robotsClient.read("1").getCompatibilities()[0] = "3";
+        final RobotPart robotPart
+                = robotsClient.readAsync("1").get(5, TimeUnit.SECONDS);
+        assertEquals("2", robotPart.getCompatibilities()[0]);
+        assertEquals("2", robotsClient.read("1").getCompatibilities()[0]);
+        assertEquals(2, robotsClient.getRobotPartCacheStats().getHits());
+        assertEquals(1, robotsClient.getRobotPartCacheStats().getMisses());
+    }
+
+    @Test
+    public void testIterateAllWalksPages() throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        server.answer(
+                "/list-page?limit=2",
+                200,
+                mapper.writeValueAsString(new RobotPartPage(
+                        new RobotPart[] {robotPart("a"), robotPart("b")},
+                        "b")));
+        server.answer(
+                "/list-page?limit=2&continuationToken=b",
+                200,
+                mapper.writeValueAsString(new RobotPartPage(
+                        new RobotPart[] {robotPart("c")}, "c")));
+        server.answer(
+                "/list-page?limit=2&continuationToken=c",
+                200,
+                mapper.writeValueAsString(
+                        new RobotPartPage(new RobotPart[0], null)));
+        final Iterable<RobotPart> robotParts
+                = new RobotsClient(client, server.getUri()).iterateAll(2);
+        // Each iteration starts again from the first page.
+        for (int count = 0; count < 2; count++) {
+            final Iterator<RobotPart> iterator = robotParts.iterator();
+            for (final String serialNumber : new String[] {"a", "b", "c"}) {
+                assertTrue(iterator.hasNext());
+                assertEquals(serialNumber, iterator.next().getSerialNumber());
+            }
+            assertFalse(iterator.hasNext());
+            try {
+                iterator.next();
+                fail("The iteration should be over.");
+            } catch (final NoSuchElementException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void testIterateAllFailsOnPageError() throws Exception {
+        final Iterator<RobotPart> iterator
+                = new RobotsClient(client, server.getUri())
+                        .iterateAll(2)
+                        .iterator();
+        try {
+            iterator.hasNext();
+            fail("Reading the first page should have failed.");
+        } catch (final RobotsClient.UncheckedRobotsClientException e) {
+            assertTrue(e.getCause()
+                    instanceof RobotsClient.RobotsClientException);
+        }
+    }
+
+    @Test
+    public void testAsyncErrors() throws Exception {
+        server.answer("/update", 409, "{\"message\":\"Conflict.\"}");
+        server.answer("/robot-parts/malformed", 200, "not json");
+        final RobotsClient robotsClient
+                = new RobotsClient(client, server.getUri());
+
+        final Throwable notFound = failureOf(robotsClient.readAsync("1"));
+        assertEquals(
+                RobotsClient.RobotsClientException.class, notFound.getClass());
+        assertEquals("Item not found.", notFound.getMessage());
+
+        final Throwable conflict
+                = failureOf(robotsClient.updateNameAsync("1", "FancyHead"));
+        assertEquals(
+                RobotsClient.VersionConflictException.class,
+                conflict.getClass());
+
+        final Throwable malformed
+                = failureOf(robotsClient.readAsync("malformed"));
+        assertEquals(
+                "Malformed response from server on \"read\" request.",
+                malformed.getMessage());
+
+        final URI closedServerUri = server.getUri();
+        server.close();
+        final Throwable notSent = failureOf(
+                new RobotsClient(client, closedServerUri).deleteAsync("1"));
+        assertEquals(
+                "Could not send \"delete\" request.", notSent.getMessage());
+    }
+
+    @Test
+    public void testAsyncTimeout() throws Exception {
+        server.stall("/robot-parts/1");
+        final RobotsClient robotsClient
+                = new RobotsClient(client, server.getUri(), false, 200);
+        final Throwable timeout = failureOf(robotsClient.readAsync("1"));
+        assertEquals(TimeoutException.class, timeout.getClass());
+    }
+
+    @Test
+    public void testCancelAsync() throws Exception {
+        server.stall("/robot-parts/1");
+        final RobotsClient robotsClient
+                = new RobotsClient(client, server.getUri());
+        final CompletableFuture<RobotPart> future
+                = robotsClient.readAsync("1");
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    /**
+     * @return What the future failed with
+     */
+    private static Throwable failureOf(final CompletableFuture<?> future)
+            throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
+        fail("The future should have failed.");
+        return null;
+    }
+
+    private static RobotPart robotPart(final String serialNumber) {
+        return new RobotPart(
+                "BasicHead", serialNumber, "Manu", 1000, new String[0]);
+    }
 }
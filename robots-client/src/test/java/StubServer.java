@@ -0,0 +1,192 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP server answering canned responses by path, for the client
+ * tests. An answer given for a path with its query, as in
+ * {@code /list-page?limit=2}, is preferred to the one for the path alone.
+ * Paths without an answer get a 404.
+ */
+public class StubServer implements Closeable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Answer> answers;
+    // Released on close, so that stalled exchanges end.
+    private final CountDownLatch closed;
+    private volatile HttpExchange lastExchange;
+    private volatile byte[] lastRequestBody;
+
+    public StubServer() throws IOException {
+        this.answers = new ConcurrentHashMap<>();
+        this.closed = new CountDownLatch(1);
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public URI getUri() {
+        return URI.create("http://localhost:"
+                + server.getAddress().getPort() + "/");
+    }
+
+    public void answer(final String path, final int status, final String body) {
+        answers.put(path, new Answer(status, body, null, false));
+    }
+
+    /**
+     * Answer with a binary body, such as Smile, of the given content type.
+     */
+    public void answer(
+            final String path,
+            final int status,
+            final byte[] body,
+            final String contentType) {
+        answers.put(path, new Answer(
+                status,
+                body,
+                new String[] {"Content-Type", contentType},
+                false));
+    }
+
+    public void answer(
+            final String path,
+            final int status,
+            final String body,
+            final String headerName,
+            final String headerValue) {
+        answers.put(path, new Answer(
+                status, body, new String[] {headerName, headerValue}, false));
+    }
+
+    /**
+     * Never answer requests to the path, until the server is closed.
+     */
+    public void stall(final String path) {
+        answers.put(path, new Answer(200, "{}", null, true));
+    }
+
+    /**
+     * @return Header of the last request received
+     */
+    public String getLastRequestHeader(final String name) {
+        return lastExchange.getRequestHeaders().getFirst(name);
+    }
+
+    public String getLastRequestBody() {
+        return new String(lastRequestBody, StandardCharsets.UTF_8);
+    }
+
+    public byte[] getLastRequestBytes() {
+        return lastRequestBody.clone();
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        lastRequestBody = readAll(exchange.getRequestBody());
+        lastExchange = exchange;
+        final URI requestUri = exchange.getRequestURI();
+        Answer answer = requestUri.getRawQuery() == null
+                ? null
+                : answers.get(
+                        requestUri.getPath() + "?" + requestUri.getRawQuery());
+        if (answer == null) {
+            answer = answers.get(requestUri.getPath());
+        }
+        if (answer == null) {
+            send(exchange, new Answer(
+                    404, "{\"message\":\"Item not found.\"}", null, false));
+            return;
+        }
+        if (answer.stalled) {
+            try {
+                closed.await(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+            return;
+        }
+        send(exchange, answer);
+    }
+
+    private static void send(final HttpExchange exchange, final Answer answer)
+            throws IOException {
+        final byte[] body = answer.body;
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (answer.header != null) {
+            exchange.getResponseHeaders().set(
+                    answer.header[0], answer.header[1]);
+        }
+        exchange.sendResponseHeaders(answer.status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static byte[] readAll(final InputStream inputStream)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        for (int count = inputStream.read(buffer);
+                count != -1;
+                count = inputStream.read(buffer)) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class Answer {
+        private final int status;
+        private final byte[] body;
+        private final String[] header;
+        private final boolean stalled;
+
+        private Answer(
+                final int status,
+                final String body,
+                final String[] header,
+                final boolean stalled) {
+            this(
+                    status,
+                    body.getBytes(StandardCharsets.UTF_8),
+                    header,
+                    stalled);
+        }
+
+        private Answer(
+                final int status,
+                final byte[] body,
+                final String[] header,
+                final boolean stalled) {
+            this.status = status;
+            this.body = body;
+            this.header = header;
+            this.stalled = stalled;
+        }
+    }
+}
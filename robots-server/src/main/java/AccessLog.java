@@ -0,0 +1,153 @@
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Structured access log, one line of key=value pairs per logged request,
+ * written through the "robots.access" logger.
+ *
+ * <p>Requests are split in categories by status. Each category has its
+ * own sample rate, so that the rare server errors can all be logged while
+ * successes are sampled, and its own limit of lines per second, so that a
+ * client probing unknown serial numbers cannot flood the log. Requests
+ * left out by the limit are counted, and the count is logged with the
+ * next line of the category.
+ */
+public class AccessLog {
+    private static final Logger LOGGER = Logger.getLogger("robots.access");
+
+    public enum Category {
+        success, notFound, clientError, serverError;
+
+        public static Category of(final int status) {
+            if (status >= 500) {
+                return serverError;
+            } else if (status == 404) {
+                return notFound;
+            } else if (status >= 400) {
+                return clientError;
+            }
+            return success;
+        }
+    }
+
+    private final Map<Category, CategoryLog> categoryLogs;
+
+    /**
+     * @param sampleRates Share of the requests logged per category, from 0
+     *                    to 1. Missing categories are not logged.
+     * @param maxPerSecond Max number of lines per second and per category
+     */
+    public AccessLog(
+            final Map<Category, Double> sampleRates,
+            final int maxPerSecond) {
+        this.categoryLogs = new EnumMap<>(Category.class);
+        for (final Category category : Category.values()) {
+            final Double sampleRate = sampleRates.get(category);
+            categoryLogs.put(category, new CategoryLog(
+                    sampleRate == null ? 0 : sampleRate, maxPerSecond));
+        }
+    }
+
+    /**
+     * @param sampling Comma separated category=sampleRate pairs, e.g.
+     *                 "success=0.01,serverError=1"
+     */
+    public static Map<Category, Double> parseSampleRates(
+            final String sampling) {
+        final Map<Category, Double> sampleRates
+                = new EnumMap<>(Category.class);
+        for (final String pair : sampling.split(",")) {
+            final String[] parts = pair.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(
+                        "Malformed access log sampling: " + sampling);
+            }
+            sampleRates.put(
+                    Category.valueOf(parts[0].trim()),
+                    Double.parseDouble(parts[1].trim()));
+        }
+        return sampleRates;
+    }
+
+    /**
+     * Log the request if its category samples it and is under its limit.
+     * Cheap for the requests that are not logged.
+     */
+    public void log(
+            final String endpoint,
+            final String method,
+            final String path,
+            final int status,
+            final long durationNanos) {
+        final CategoryLog categoryLog = categoryLogs.get(Category.of(status));
+        if (!categoryLog.isSampled() || !LOGGER.isLoggable(Level.INFO)) {
+            return;
+        }
+        final long suppressed = categoryLog.acquire(System.nanoTime());
+        if (suppressed < 0) {
+            return;
+        }
+        final StringBuilder line = new StringBuilder(128)
+                .append("endpoint=").append(endpoint)
+                .append(" method=").append(method)
+                .append(" path=\"").append(path.replace("\"", "\\\""))
+                .append('"')
+                .append(" status=").append(status)
+                .append(" durationMillis=").append(String.format(
+                        Locale.ROOT, "%.3f", durationNanos / 1e6));
+        if (suppressed > 0) {
+            line.append(" suppressed=").append(suppressed);
+        }
+        LOGGER.info(line.toString());
+    }
+
+    private static class CategoryLog {
+        private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final double sampleRate;
+        private final int maxPerWindow;
+        private final AtomicLong windowStartNanos;
+        private final AtomicInteger windowCount;
+        private final LongAdder suppressedCount;
+
+        private CategoryLog(final double sampleRate, final int maxPerWindow) {
+            this.sampleRate = sampleRate;
+            this.maxPerWindow = maxPerWindow;
+            this.windowStartNanos = new AtomicLong(System.nanoTime());
+            this.windowCount = new AtomicInteger();
+            this.suppressedCount = new LongAdder();
+        }
+
+        private boolean isSampled() {
+            return sampleRate >= 1
+                    || (sampleRate > 0
+                            && ThreadLocalRandom.current().nextDouble()
+                                    < sampleRate);
+        }
+
+        /**
+         * @return Number of lines suppressed since the previous line, or -1
+         * if this line is over the limit and must be suppressed
+         */
+        private long acquire(final long nowNanos) {
+            final long windowStart = windowStartNanos.get();
+            if (nowNanos - windowStart >= WINDOW_NANOS
+                    && windowStartNanos.compareAndSet(windowStart, nowNanos)) {
+                windowCount.set(0);
+            }
+            if (windowCount.incrementAndGet() > maxPerWindow) {
+                suppressedCount.increment();
+                return -1;
+            }
+            return suppressedCount.sumThenReset();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.lang.reflect.Method;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+
+/**
+ * Hand every request to the {@link AccessLog}, which decides whether to
+ * log it.
+ */
+@PreMatching
+public class AccessLogFilter
+        implements ContainerRequestFilter, ContainerResponseFilter {
+    // protected for unit tests
+    protected static final String START_NANOS_PROPERTY
+            = "robots.accessLog.startNanos";
+
+    private final AccessLog accessLog;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public AccessLogFilter(final AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_NANOS_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(
+            final ContainerRequestContext requestContext,
+            final ContainerResponseContext responseContext) {
+        final Object startNanos
+                = requestContext.getProperty(START_NANOS_PROPERTY);
+        if (startNanos == null) {
+            return;
+        }
+        final Method resourceMethod = resourceInfo.getResourceMethod();
+        accessLog.log(
+                resourceMethod == null
+                        ? Metrics.UNMATCHED_ENDPOINT
+                        : resourceMethod.getName(),
+                requestContext.getMethod(),
+                requestContext.getUriInfo().getPath(),
+                responseContext.getStatus(),
+                System.nanoTime() - (Long) startNanos);
+    }
+}
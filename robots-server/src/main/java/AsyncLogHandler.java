@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Log handler handing the records to other handlers on a background
+ * thread, so that request threads never wait for the console or a file.
+ *
+ * <p>Records wait in a queue of fixed capacity. When it is full, new
+ * records are dropped rather than blocking the caller, and the number of
+ * dropped records is logged once the queue drains.
+ */
+public class AsyncLogHandler extends Handler {
+    private static final long POLL_TIMEOUT_MILLIS = 1000;
+
+    private final Handler[] handlers;
+    private final BlockingQueue<LogRecord> queue;
+    private final LongAdder droppedCount;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param handlers Handlers the records are published to
+     * @param queueCapacity Max number of records waiting to be published
+     */
+    public AsyncLogHandler(final Handler[] handlers, final int queueCapacity) {
+        this.handlers = handlers.clone();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.droppedCount = new LongAdder();
+        this.writer = new Thread(this::publishQueued, "async-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Replace the handlers of the root logger by an {@link AsyncLogHandler}
+     * publishing to them.
+     */
+    public static void install(final int queueCapacity) {
+        final Logger rootLogger = Logger.getLogger("");
+        final Handler[] rootHandlers = rootLogger.getHandlers();
+        for (final Handler handler : rootHandlers) {
+            rootLogger.removeHandler(handler);
+        }
+        rootLogger.addHandler(new AsyncLogHandler(rootHandlers, queueCapacity));
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // The caller would otherwise be inferred from the stack of the
+        // writer thread. The server logs through loggers named after their
+        // class, so this saves walking the stack of the request thread.
+        record.setSourceClassName(record.getLoggerName());
+        record.setSourceMethodName(null);
+        if (!queue.offer(record)) {
+            droppedCount.increment();
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (final Handler handler : handlers) {
+            handler.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(POLL_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (final Handler handler : handlers) {
+            handler.close();
+        }
+    }
+
+    private void publishQueued() {
+        final List<LogRecord> records = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                final LogRecord record = queue.poll(
+                        POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    continue;
+                }
+                records.add(record);
+            } catch (final InterruptedException e) {
+                if (!closed) {
+                    continue;
+                }
+            }
+            queue.drainTo(records);
+            for (final LogRecord record : records) {
+                publishToHandlers(record);
+            }
+            records.clear();
+            final long dropped = droppedCount.sumThenReset();
+            if (dropped > 0) {
+                final LogRecord droppedRecord = new LogRecord(
+                        Level.WARNING,
+                        dropped + " log records dropped, the queue was full.");
+                droppedRecord.setLoggerName(
+                        AsyncLogHandler.class.getName());
+                droppedRecord.setSourceClassName(
+                        AsyncLogHandler.class.getName());
+                publishToHandlers(droppedRecord);
+            }
+            flush();
+        }
+    }
+
+    private void publishToHandlers(final LogRecord record) {
+        for (final Handler handler : handlers) {
+            handler.publish(record);
+        }
+    }
+}
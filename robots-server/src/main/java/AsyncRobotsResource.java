@@ -0,0 +1,336 @@
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import models.Constants;
+import models.JsonMessage;
+
+/**
+ * Asynchronous variant of {@link RobotsResource}, serving the same
+ * endpoints. The request body is read on the request thread, which is then
+ * released, and the DB work is done by a {@link DbExecutor}; when its queue
+ * is full the request is answered with 503 and a Retry-After header instead
+ * of waiting.
+ *
+ * <p>The response is written by the executor thread that resumes the
+ * request, so a slow client holds an executor thread while its response is
+ * written.
+ */
+@Path("/")
+public class AsyncRobotsResource {
+    private static final String PATH_EXECUTOR_STATS = "executor-stats";
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final RobotsResource robotsResource;
+    private final DbExecutor dbExecutor;
+
+    /**
+     * @param robotsResource Resource doing the actual work
+     * @param dbExecutor Executor the work is done in
+     */
+    public AsyncRobotsResource(
+            final RobotsResource robotsResource,
+            final DbExecutor dbExecutor) {
+        this.robotsResource = robotsResource;
+        this.dbExecutor = dbExecutor;
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_ADD)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void add(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeAdd(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_BULK_ADD)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void bulkAdd(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeBulkAdd(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_READ)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void read(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeRead(request, contentType));
+    }
+
+    @GET
+    @Path(RobotsResource.PATH_ROBOT_PART)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void getRobotPart(
+            @PathParam(Constants.SERIAL_NUMBER)
+            final String serialNumber,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH)
+            final String ifNoneMatch,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(asyncResponse,
+                () -> robotsResource.getRobotPart(serialNumber, ifNoneMatch));
+    }
+
+    @GET
+    @Path(RobotsResource.PATH_ROBOT_PART_COMPATIBLE)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void getCompatibleRobotParts(
+            @PathParam(Constants.SERIAL_NUMBER)
+            final String serialNumber,
+            @QueryParam(Constants.NUMBER)
+            @DefaultValue("" + RobotsResource.DEFAULT_PAGE_SIZE)
+            final Integer number,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH)
+            final String ifNoneMatch,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(asyncResponse, () -> robotsResource.getCompatibleRobotParts(
+                serialNumber, number, ifNoneMatch));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_READ_MANY)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void readMany(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeReadMany(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_UPDATE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void update(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeUpdate(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_PATCH)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void patch(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodePatch(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_DELETE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void delete(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeDelete(request, contentType));
+    }
+
+    /**
+     * In streaming mode the rows are read while the response is written,
+     * by the executor thread: both an executor thread and a connection are
+     * held until the client read the last row.
+     */
+    @GET
+    @Path(RobotsResource.PATH_LIST_ALL)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void listAll(
+            @HeaderParam(HttpHeaders.ACCEPT) final String accept,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(asyncResponse, () -> robotsResource.listAll(accept));
+    }
+
+    @GET
+    @Path(RobotsResource.PATH_LIST_PAGE)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void listPage(
+            @QueryParam(Constants.CONTINUATION_TOKEN)
+            final String continuationToken,
+            @QueryParam(Constants.LIMIT)
+            @DefaultValue("" + RobotsResource.DEFAULT_PAGE_SIZE)
+            final Integer limit,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(asyncResponse,
+                () -> robotsResource.listPage(continuationToken, limit));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_LIST_COMPATIBLE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void listCompatible(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeListCompatible(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_LIST_REVERSE_COMPATIBLE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void listReverseCompatible(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeListReverseCompatible(
+                        request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_LIST_REACHABLE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void listReachable(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeListReachable(request, contentType));
+    }
+
+    @POST
+    @Path(RobotsResource.PATH_SHORTEST_PATH)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public void shortestPath(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType,
+            @Suspended final AsyncResponse asyncResponse) {
+        submit(
+                asyncResponse,
+                robotsResource.decodeShortestPath(request, contentType));
+    }
+
+    /**
+     * Queue depth, wait time and rejections of the DB executor. Answered
+     * from the request thread, so that it works when the server is
+     * overloaded.
+     */
+    @GET
+    @Path(PATH_EXECUTOR_STATS)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response getExecutorStats() {
+        return Response.ok(dbExecutor.getStats()).build();
+    }
+
+    private void submit(
+            final AsyncResponse asyncResponse,
+            final RobotsResource.DecodedRequest decodedRequest) {
+        if (decodedRequest.getResponse() != null) {
+            asyncResponse.resume(decodedRequest.getResponse());
+            return;
+        }
+        submit(asyncResponse, decodedRequest.getWork());
+    }
+
+    private void submit(
+            final AsyncResponse asyncResponse,
+            final Supplier<Response> work) {
+        try {
+            dbExecutor.execute(() -> {
+                try {
+                    asyncResponse.resume(work.get());
+                } catch (final Throwable e) {
+                    // Errors too: no timeout is set, so the response would
+                    // stay suspended forever.
+                    asyncResponse.resume(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            asyncResponse.resume(Response
+                    .status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .entity(new JsonMessage(
+                            "Server overloaded, retry later."))
+                    .build());
+        }
+    }
+}
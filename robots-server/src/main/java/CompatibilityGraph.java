@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory adjacency index of the compatibilities, used to answer
+ * multi-hop queries without a DB round trip per hop.
+ *
+ * <p>Kept up to date as a {@link DbService.ChangeListener}. It must be
+ * registered, then {@link #load loaded}, before the server starts serving
+ * requests. Like the compatibilities stored in the DB, edges may reference
+ * serial numbers that do not exist; those are never part of a result.
+ *
+ * <p>Changes are notified after their commit, without ordering between
+ * threads: two concurrent writes to the same robot part may be applied in
+ * the reverse order of their commits, and writes made by another server
+ * are not notified at all. The graph can then differ from the DB until it
+ * is {@link #load loaded} again, which callers do periodically.
+ */
+public class CompatibilityGraph implements DbService.ChangeListener {
+    private final ReadWriteLock lock;
+    private Map<String, String[]> adjacency;
+    // Changes notified while the graph is being loaded, replayed on the
+    // loaded graph. Null when no load is running.
+    private List<Consumer<Map<String, String[]>>> pendingChanges;
+
+    public CompatibilityGraph() {
+        this.adjacency = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Replace the graph with every robot part of the DB. The current graph
+     * keeps answering queries and following changes until the load is done.
+     */
+    public synchronized void load(final DbService dbService)
+            throws DbService.DbServiceException, IOException {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        final Map<String, String[]> loaded = new HashMap<>();
+        boolean done = false;
+        try {
+            dbService.streamAll(robotPart -> loaded.put(
+                    robotPart.getSerialNumber(),
+                    robotPart.getCompatibilities()));
+            done = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (done) {
+                    // A row may have been read before a change to it was
+                    // committed.
+                    for (final Consumer<Map<String, String[]>> change
+                            : pendingChanges) {
+                        change.accept(loaded);
+                    }
+                    adjacency = loaded;
+                }
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void compatibilitiesChanged(
+            final String serialNumber,
+            final String[] compatibilities) {
+        final String[] edges
+                = Arrays.copyOf(compatibilities, compatibilities.length);
+        apply(graph -> graph.put(serialNumber, edges));
+    }
+
+    @Override
+    public void robotPartRenamed(
+            final String originalSerialNumber,
+            final String updatedSerialNumber) {
+        apply(graph -> {
+            final String[] edges = graph.remove(originalSerialNumber);
+            if (edges != null) {
+                graph.put(updatedSerialNumber, edges);
+            }
+        });
+    }
+
+    @Override
+    public void robotPartDeleted(final String serialNumber) {
+        apply(graph -> graph.remove(serialNumber));
+    }
+
+    private void apply(final Consumer<Map<String, String[]>> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(adjacency);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of robot parts in the graph
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return adjacency.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Breadth-first walk of the compatibilities.
+     * @param serialNumber Serial number to start from, not part of the result
+     * @param maxDepth Max number of hops
+     * @param limit Max number of results
+     * @return Serial numbers reachable within {@code maxDepth} hops, closest
+     * first and in compatibility order for a given distance, or null if the
+     * robot part does not exist
+     */
+    public List<String> reachable(
+            final String serialNumber,
+            final int maxDepth,
+            final int limit) {
+        lock.readLock().lock();
+        try {
+            if (!adjacency.containsKey(serialNumber)) {
+                return null;
+            }
+            final List<String> reachable = new ArrayList<>();
+            final Set<String> visited = new HashSet<>();
+            visited.add(serialNumber);
+            List<String> frontier = Collections.singletonList(serialNumber);
+            for (int depth = 0;
+                    depth < maxDepth && !frontier.isEmpty();
+                    depth++) {
+                final List<String> nextFrontier = new ArrayList<>();
+                for (final String current : frontier) {
+                    for (final String next : adjacency.get(current)) {
+                        if (!adjacency.containsKey(next)
+                                || !visited.add(next)) {
+                            continue;
+                        }
+                        if (reachable.size() >= limit) {
+                            return reachable;
+                        }
+                        reachable.add(next);
+                        nextFrontier.add(next);
+                    }
+                }
+                frontier = nextFrontier;
+            }
+            return reachable;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Breadth-first search of a shortest compatibility path.
+     * @param fromSerialNumber First robot part of the path
+     * @param toSerialNumber Last robot part of the path
+     * @param maxDepth Max number of hops
+     * @return Serial numbers of the path, both ends included, empty if there
+     * is no path within {@code maxDepth} hops, or null if one of the robot
+     * parts does not exist
+     */
+    public List<String> shortestPath(
+            final String fromSerialNumber,
+            final String toSerialNumber,
+            final int maxDepth) {
+        lock.readLock().lock();
+        try {
+            if (!adjacency.containsKey(fromSerialNumber)
+                    || !adjacency.containsKey(toSerialNumber)) {
+                return null;
+            }
+            final Map<String, String> previous = new HashMap<>();
+            previous.put(fromSerialNumber, null);
+            ArrayDeque<String> frontier = new ArrayDeque<>();
+            frontier.add(fromSerialNumber);
+            for (int depth = 0;
+                    depth <= maxDepth && !frontier.isEmpty();
+                    depth++) {
+                final ArrayDeque<String> nextFrontier = new ArrayDeque<>();
+                for (final String current : frontier) {
+                    if (current.equals(toSerialNumber)) {
+                        return path(previous, toSerialNumber);
+                    }
+                    for (final String next : adjacency.get(current)) {
+                        if (adjacency.containsKey(next)
+                                && !previous.containsKey(next)) {
+                            previous.put(next, current);
+                            nextFrontier.add(next);
+                        }
+                    }
+                }
+                frontier = nextFrontier;
+            }
+            return Collections.emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<String> path(
+            final Map<String, String> previous,
+            final String lastSerialNumber) {
+        final List<String> path = new ArrayList<>();
+        for (String serialNumber = lastSerialNumber;
+                serialNumber != null;
+                serialNumber = previous.get(serialNumber)) {
+            path.add(serialNumber);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+}
@@ -0,0 +1,273 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Normalized storage of the compatibilities: one row per
+ * (serial number, compatible serial number) edge, indexed in both
+ * directions, next to the historical colon-joined column of the parts
+ * table.
+ *
+ * <p>Writers keep both in sync inside their own transaction. Rows written
+ * before this table existed are copied by {@link #migrate}, which runs in
+ * the background while the server keeps serving requests; the table can
+ * only be queried once {@link #isReady()}.
+ */
+public class CompatibilityTable {
+    private static final Logger LOGGER
+            = Logger.getLogger(CompatibilityTable.class.getName());
+
+    // protected for unit tests
+    protected static final String COMPATIBILITIES_TABLE_NAME
+            = "part_compatibilities";
+    protected static final String SERIAL_NUMBER_COLUMN_NAME = "serial_number";
+    protected static final String COMPATIBLE_SERIAL_NUMBER_COLUMN_NAME
+            = "compatible_serial_number";
+    protected static final String POSITION_COLUMN_NAME = "list_index";
+    protected static final String MIGRATIONS_TABLE_NAME = "schema_migrations";
+    protected static final String MIGRATION_NAME = "compatibility_edges";
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    private static final long MIGRATION_RETRY_DELAY_MILLIS = 5000;
+
+    private final ConnectionPool connectionPool;
+    private final ReentrantLock migrationLock;
+    private volatile boolean ready;
+
+    protected CompatibilityTable(final ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        this.migrationLock = new ReentrantLock();
+    }
+
+    /**
+     * Create the tables if needed, and tell whether the migration of the
+     * existing rows already happened.
+     */
+    protected void init(final Connection connection) throws SQLException {
+        final Statement statement = connection.createStatement();
+        if (!tableExists(connection, COMPATIBILITIES_TABLE_NAME)) {
+            statement.executeUpdate(
+                    "CREATE TABLE "
+                    + COMPATIBILITIES_TABLE_NAME
+                    + " ( serial_number varchar(50),"
+                    + " compatible_serial_number varchar(50),"
+                    + " list_index int,"
+                    + " primary key (serial_number, list_index));");
+            statement.executeUpdate(
+                    "CREATE INDEX "
+                    + COMPATIBILITIES_TABLE_NAME
+                    + "_reverse ON "
+                    + COMPATIBILITIES_TABLE_NAME
+                    + " (compatible_serial_number, serial_number);");
+        }
+        statement.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS "
+                + MIGRATIONS_TABLE_NAME
+                + " ( name varchar(100),"
+                + " primary key (name));");
+        statement.close();
+        final PreparedStatement selectStatement = connection.prepareStatement(
+                "SELECT name FROM " + MIGRATIONS_TABLE_NAME + " WHERE name=?;");
+        selectStatement.setString(1, MIGRATION_NAME);
+        final ResultSet resultSet = selectStatement.executeQuery();
+        ready = resultSet.next();
+        resultSet.close();
+        selectStatement.close();
+    }
+
+    /**
+     * @return True once every robot part has its compatibilities in this
+     * table, so that it can be queried
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Start {@link #migrate} in a background thread if it is needed.
+     */
+    protected void startMigration() {
+        if (ready) {
+            return;
+        }
+        final Thread thread = new Thread(() -> {
+            while (!ready) {
+                try {
+                    migrate();
+                } catch (final SQLException e) {
+                    LOGGER.log(
+                            Level.WARNING,
+                            "Compatibility migration failed, will retry.",
+                            e);
+                    try {
+                        Thread.sleep(MIGRATION_RETRY_DELAY_MILLIS);
+                    } catch (final InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }, "compatibility-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Copy the compatibilities of every robot part from the parts table,
+     * {@link #MIGRATION_BATCH_SIZE} parts per transaction. The rows of a
+     * batch are locked while they are copied, so a concurrent update of a
+     * part waits and then overwrites the copied edges, never the opposite.
+     * Safe to run again: edges of a part are replaced, not appended.
+     */
+    protected void migrate() throws SQLException {
+        migrationLock.lock();
+        try {
+            if (ready) {
+                return;
+            }
+            String lastSerialNumber = null;
+            int migratedRobotParts = 0;
+            while (true) {
+                final PooledConnection connection = connectionPool.borrow();
+                try {
+                    connection.getConnection().setAutoCommit(false);
+                    final PreparedStatement selectStatement
+                            = connection.prepareStatement(
+                            "SELECT serial_number, compatibilities FROM "
+                            + DbService.PARTS_TABLE_NAME
+                            + (lastSerialNumber == null
+                                    ? "" : " WHERE serial_number > ?")
+                            + " ORDER BY serial_number LIMIT ? FOR UPDATE;");
+                    int parameterIndex = 1;
+                    if (lastSerialNumber != null) {
+                        selectStatement.setString(
+                                parameterIndex++, lastSerialNumber);
+                    }
+                    selectStatement.setInt(
+                            parameterIndex, MIGRATION_BATCH_SIZE);
+                    int batchSize = 0;
+                    try (ResultSet resultSet = selectStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            lastSerialNumber = resultSet.getString(1);
+                            write(connection,
+                                    lastSerialNumber,
+                                    DbService.extractCompatibilities(
+                                            resultSet.getString(2)));
+                            batchSize++;
+                        }
+                    }
+                    if (batchSize == 0) {
+                        markMigrationDone(connection);
+                        connection.getConnection().commit();
+                        ready = true;
+                        LOGGER.info("Compatibility migration done, "
+                                + migratedRobotParts + " robot parts copied.");
+                        return;
+                    }
+                    connection.getConnection().commit();
+                    migratedRobotParts += batchSize;
+                } finally {
+                    connectionPool.release(connection);
+                }
+            }
+        } finally {
+            migrationLock.unlock();
+        }
+    }
+
+    private void markMigrationDone(
+            final PooledConnection connection) throws SQLException {
+        final PreparedStatement markerStatement = connection.prepareStatement(
+                "INSERT INTO " + MIGRATIONS_TABLE_NAME + " VALUES (?);");
+        markerStatement.setString(1, MIGRATION_NAME);
+        try {
+            markerStatement.executeUpdate();
+        } catch (final SQLException e) {
+            // Another server finished the same migration first.
+            if (!DbService.isConstraintViolation(e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Replace the compatibilities of a robot part, in the transaction of
+     * the connection.
+     */
+    protected void write(
+            final PooledConnection connection,
+            final String serialNumber,
+            final String[] compatibilities)
+            throws SQLException {
+        delete(connection, serialNumber);
+        if (compatibilities.length == 0) {
+            return;
+        }
+        final PreparedStatement insertStatement = connection.prepareStatement(
+                "INSERT INTO "
+                + COMPATIBILITIES_TABLE_NAME
+                + " VALUES (?, ?, ?);");
+        for (int index = 0; index < compatibilities.length; index++) {
+            insertStatement.setString(1, serialNumber);
+            insertStatement.setString(2, compatibilities[index]);
+            insertStatement.setInt(3, index);
+            insertStatement.addBatch();
+        }
+        insertStatement.executeBatch();
+    }
+
+    protected void delete(
+            final PooledConnection connection,
+            final String serialNumber)
+            throws SQLException {
+        final PreparedStatement deleteStatement = connection.prepareStatement(
+                "DELETE FROM "
+                + COMPATIBILITIES_TABLE_NAME
+                + " WHERE "
+                + SERIAL_NUMBER_COLUMN_NAME
+                + "=?;");
+        deleteStatement.setString(1, serialNumber);
+        deleteStatement.executeUpdate();
+    }
+
+    protected void rename(
+            final PooledConnection connection,
+            final String originalSerialNumber,
+            final String updatedSerialNumber)
+            throws SQLException {
+        final PreparedStatement updateStatement = connection.prepareStatement(
+                "UPDATE "
+                + COMPATIBILITIES_TABLE_NAME
+                + " SET "
+                + SERIAL_NUMBER_COLUMN_NAME
+                + "=? WHERE "
+                + SERIAL_NUMBER_COLUMN_NAME
+                + "=?;");
+        updateStatement.setString(1, updatedSerialNumber);
+        updateStatement.setString(2, originalSerialNumber);
+        updateStatement.executeUpdate();
+    }
+
+    private static boolean tableExists(
+            final Connection connection,
+            final String tableName)
+            throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        // Unquoted names are stored upper case by some databases.
+        for (final String name
+                : new String[] {tableName, tableName.toUpperCase()}) {
+            final ResultSet resultSet = metaData.getTables(
+                    connection.getCatalog(), null, name, null);
+            final boolean exists = resultSet.next();
+            resultSet.close();
+            if (exists) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
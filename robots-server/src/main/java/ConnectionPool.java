@@ -0,0 +1,377 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import lombok.Getter;
+
+/**
+ * A bounded pool of JDBC connections.
+ *
+ * <p>At most {@code maxSize} connections are borrowed at the same time,
+ * callers beyond that wait up to {@code borrowTimeoutMillis}. Idle
+ * connections are reused most-recently-used first, validated when they have
+ * been idle for longer than {@code validationIntervalMillis}, and closed by a
+ * background task once idle for longer than {@code idleTimeoutMillis}, never
+ * going below {@code minSize}.
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER
+            = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final ConnectionSource connectionSource;
+    private final ConnectionPoolConfig config;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections;
+    private final Semaphore borrowPermits;
+    private final AtomicInteger totalConnections;
+    private final AtomicInteger waitingThreads;
+    private final LongAdder borrowCount;
+    private final LongAdder borrowTimeoutCount;
+    private final LongAdder totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+    private final LongAdder statementCacheHits;
+    private final LongAdder statementCacheMisses;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public ConnectionPool(
+            final String dbUrl,
+            final String username,
+            final String password,
+            final ConnectionPoolConfig config)
+            throws SQLException {
+        this(() -> DriverManager.getConnection(dbUrl, username, password),
+                config);
+    }
+
+    public ConnectionPool(
+            final String dbUrl,
+            final ConnectionPoolConfig config)
+            throws SQLException {
+        this(() -> DriverManager.getConnection(dbUrl), config);
+    }
+
+    public ConnectionPool(
+            final DataSource dataSource,
+            final ConnectionPoolConfig config)
+            throws SQLException {
+        this(dataSource::getConnection, config);
+    }
+
+    private ConnectionPool(
+            final ConnectionSource connectionSource,
+            final ConnectionPoolConfig config)
+            throws SQLException {
+        config.validate();
+        this.connectionSource = connectionSource;
+        this.config = config;
+        this.idleConnections = new LinkedBlockingDeque<>();
+        this.borrowPermits = new Semaphore(config.getMaxSize(), true);
+        this.totalConnections = new AtomicInteger();
+        this.waitingThreads = new AtomicInteger();
+        this.borrowCount = new LongAdder();
+        this.borrowTimeoutCount = new LongAdder();
+        this.totalWaitNanos = new LongAdder();
+        this.maxWaitNanos = new AtomicLong();
+        this.statementCacheHits = new LongAdder();
+        this.statementCacheMisses = new LongAdder();
+        try {
+            for (int count = 0; count < config.getMinSize(); count++) {
+                totalConnections.incrementAndGet();
+                idleConnections.offerLast(openConnection());
+            }
+        } catch (final SQLException | RuntimeException e) {
+            // The caller gets no pool to close them with.
+            PooledConnection pooledConnection;
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                discard(pooledConnection);
+            }
+            throw e;
+        }
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread
+                    = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(
+                this::evictIdleConnections,
+                config.getEvictionIntervalMillis(),
+                config.getEvictionIntervalMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection. It must be given back with {@link #release}.
+     * @return A valid connection, used by no other thread
+     * @throws SQLTransientConnectionException If no connection became
+     * available within the borrow timeout
+     * @throws SQLException If a new connection could not be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        final long startNanos = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        final boolean acquired;
+        try {
+            acquired = borrowPermits.tryAcquire(
+                    config.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException(
+                    "Interrupted while waiting for a DB connection.", e);
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+        final long waitNanos = System.nanoTime() - startNanos;
+        if (!acquired) {
+            borrowTimeoutCount.increment();
+            throw new SQLTransientConnectionException(
+                    "No DB connection available after "
+                    + config.getBorrowTimeoutMillis() + "ms.");
+        }
+        borrowCount.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        try {
+            PooledConnection pooledConnection;
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                if (isUsable(pooledConnection)) {
+                    return pooledConnection;
+                }
+                discard(pooledConnection);
+            }
+            totalConnections.incrementAndGet();
+            return openConnection();
+        } catch (final SQLException | RuntimeException e) {
+            borrowPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a connection obtained with {@link #borrow()}.
+     * Connections left in a transaction are rolled back, closed ones are
+     * dropped from the pool.
+     */
+    public void release(final PooledConnection pooledConnection) {
+        try {
+            if (closed || pooledConnection.isClosed()) {
+                discard(pooledConnection);
+                return;
+            }
+            final Connection connection = pooledConnection.getConnection();
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (final SQLException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Could not reset DB connection, discarding it.",
+                        e);
+                discard(pooledConnection);
+                return;
+            }
+            pooledConnection.touch();
+            idleConnections.offerFirst(pooledConnection);
+        } finally {
+            borrowPermits.release();
+        }
+    }
+
+    /**
+     * Close all idle connections and stop handing out new ones.
+     * Borrowed connections are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            discard(pooledConnection);
+        }
+    }
+
+    public ConnectionPoolConfig getConfig() {
+        return config;
+    }
+
+    public Stats getStats() {
+        final int total = totalConnections.get();
+        final int idle = idleConnections.size();
+        final long borrows = borrowCount.sum();
+        final long waitNanos = totalWaitNanos.sum();
+        return new Stats(
+                total,
+                Math.max(0, total - idle),
+                idle,
+                waitingThreads.get(),
+                config.getMaxSize(),
+                borrows,
+                borrowTimeoutCount.sum(),
+                borrows == 0 ? 0 : waitNanos / borrows / 1000,
+                maxWaitNanos.get() / 1000,
+                statementCacheHits.sum(),
+                statementCacheMisses.sum());
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        try {
+            final Connection connection = connectionSource.open();
+            return new PooledConnection(
+                    connection,
+                    new StatementCache(
+                            connection,
+                            config.getStatementCacheSize(),
+                            statementCacheHits,
+                            statementCacheMisses));
+        } catch (final SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(final PooledConnection pooledConnection) {
+        final long idleNanos
+                = System.nanoTime() - pooledConnection.getLastUsedAtNanos();
+        if (idleNanos < TimeUnit.MILLISECONDS.toNanos(
+                config.getValidationIntervalMillis())) {
+            return true;
+        }
+        return pooledConnection.isValid(config.getValidationTimeoutSeconds());
+    }
+
+    private void discard(final PooledConnection pooledConnection) {
+        totalConnections.decrementAndGet();
+        pooledConnection.close();
+    }
+
+    private void evictIdleConnections() {
+        final long idleTimeoutNanos
+                = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        // Connections are reused from the head, so the tail holds the ones
+        // that have been idle the longest.
+        PooledConnection oldest;
+        while (totalConnections.get() > config.getMinSize()
+                && (oldest = idleConnections.peekLast()) != null
+                && System.nanoTime() - oldest.getLastUsedAtNanos()
+                        > idleTimeoutNanos) {
+            if (idleConnections.removeLastOccurrence(oldest)) {
+                discard(oldest);
+            }
+        }
+        int total;
+        while (!closed
+                && (total = totalConnections.get()) < config.getMinSize()) {
+            if (!totalConnections.compareAndSet(total, total + 1)) {
+                continue;
+            }
+            try {
+                idleConnections.offerLast(openConnection());
+            } catch (final SQLException | RuntimeException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Could not refill the DB connection pool.",
+                        e);
+                return;
+            }
+        }
+    }
+
+    private interface ConnectionSource {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Point-in-time view of the pool occupancy and of the time spent by
+     * callers waiting for a connection.
+     */
+    public static class Stats {
+        @Getter
+        private final int totalConnections;
+
+        @Getter
+        private final int activeConnections;
+
+        @Getter
+        private final int idleConnections;
+
+        @Getter
+        private final int waitingThreads;
+
+        @Getter
+        private final int maxConnections;
+
+        @Getter
+        private final long borrowCount;
+
+        @Getter
+        private final long borrowTimeoutCount;
+
+        @Getter
+        private final long averageWaitMicros;
+
+        @Getter
+        private final long maxWaitMicros;
+
+        @Getter
+        private final long statementCacheHits;
+
+        @Getter
+        private final long statementCacheMisses;
+
+        public Stats(
+                final int totalConnections,
+                final int activeConnections,
+                final int idleConnections,
+                final int waitingThreads,
+                final int maxConnections,
+                final long borrowCount,
+                final long borrowTimeoutCount,
+                final long averageWaitMicros,
+                final long maxWaitMicros,
+                final long statementCacheHits,
+                final long statementCacheMisses) {
+            this.totalConnections = totalConnections;
+            this.activeConnections = activeConnections;
+            this.idleConnections = idleConnections;
+            this.waitingThreads = waitingThreads;
+            this.maxConnections = maxConnections;
+            this.borrowCount = borrowCount;
+            this.borrowTimeoutCount = borrowTimeoutCount;
+            this.averageWaitMicros = averageWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "total=" + totalConnections
+                    + ", active=" + activeConnections
+                    + ", idle=" + idleConnections
+                    + ", waiting=" + waitingThreads
+                    + ", max=" + maxConnections
+                    + ", borrows=" + borrowCount
+                    + ", timeouts=" + borrowTimeoutCount
+                    + ", avgWaitMicros=" + averageWaitMicros
+                    + ", maxWaitMicros=" + maxWaitMicros
+                    + ", statementCacheHits=" + statementCacheHits
+                    + ", statementCacheMisses=" + statementCacheMisses;
+        }
+    }
+}
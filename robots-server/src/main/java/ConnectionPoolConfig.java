@@ -0,0 +1,191 @@
+import lombok.Getter;
+
+/**
+ * Settings of a {@link ConnectionPool}. Start from {@link #defaults()} and
+ * override what is needed, e.g.
+ * {@code ConnectionPoolConfig.defaults().withMaxSize(20)}.
+ *
+ * <p>The settings are only checked together, by {@link #validate()} when
+ * the pool is created, so that overrides can be applied in any order.
+ */
+public class ConnectionPoolConfig {
+    @Getter
+    private final int minSize;
+
+    @Getter
+    private final int maxSize;
+
+    @Getter
+    private final long borrowTimeoutMillis;
+
+    @Getter
+    private final long idleTimeoutMillis;
+
+    @Getter
+    private final long evictionIntervalMillis;
+
+    @Getter
+    private final long validationIntervalMillis;
+
+    @Getter
+    private final int validationTimeoutSeconds;
+
+    @Getter
+    private final int statementCacheSize;
+
+    private ConnectionPoolConfig(
+            final int minSize,
+            final int maxSize,
+            final long borrowTimeoutMillis,
+            final long idleTimeoutMillis,
+            final long evictionIntervalMillis,
+            final long validationIntervalMillis,
+            final int validationTimeoutSeconds,
+            final int statementCacheSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictionIntervalMillis = evictionIntervalMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * 2 to 10 connections, 5s borrow timeout, connections idle for more
+     * than 10 minutes are closed, connections idle for more than 5s are
+     * validated before being handed out, up to 64 prepared statements are
+     * kept per connection.
+     */
+    public static ConnectionPoolConfig defaults() {
+        return new ConnectionPoolConfig(
+                2, 10, 5000, 600000, 30000, 5000, 2, 64);
+    }
+
+    /**
+     * A pool holding a single connection, which reproduces the historical
+     * behaviour of {@link DbService} while still validating the connection
+     * and reconnecting when it is dropped.
+     */
+    public static ConnectionPoolConfig singleConnection() {
+        return defaults().withMinSize(1).withMaxSize(1);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the settings are inconsistent,
+     * e.g. the min size is above the max size
+     */
+    public void validate() {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    "Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid statement cache size: " + statementCacheSize);
+        }
+    }
+
+    public ConnectionPoolConfig withMinSize(final int minSize) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withMaxSize(final int maxSize) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withBorrowTimeoutMillis(
+            final long borrowTimeoutMillis) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withIdleTimeoutMillis(
+            final long idleTimeoutMillis) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withEvictionIntervalMillis(
+            final long evictionIntervalMillis) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withValidationIntervalMillis(
+            final long validationIntervalMillis) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withValidationTimeoutSeconds(
+            final int validationTimeoutSeconds) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+
+    public ConnectionPoolConfig withStatementCacheSize(
+            final int statementCacheSize) {
+        return new ConnectionPoolConfig(
+                minSize,
+                maxSize,
+                borrowTimeoutMillis,
+                idleTimeoutMillis,
+                evictionIntervalMillis,
+                validationIntervalMillis,
+                validationTimeoutSeconds,
+                statementCacheSize);
+    }
+}
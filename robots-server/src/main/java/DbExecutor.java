@@ -0,0 +1,264 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Bounded executor running the DB work of {@link AsyncRobotsResource}.
+ *
+ * <p>It has as many threads as the connection pool has connections, so
+ * that tasks never wait for a connection while holding a thread, and a
+ * queue of fixed capacity. Once the queue is full, new tasks are rejected
+ * right away instead of piling up behind a slow DB.
+ *
+ * <p>With virtual threads, each task runs on a new virtual thread instead,
+ * and a semaphore with as many permits as there would be threads bounds
+ * how many of them run at once; the others wait for a permit, within the
+ * same queue capacity.
+ */
+public class DbExecutor {
+    private final int threads;
+    private final int queueCapacity;
+    // Null with virtual threads.
+    private final ThreadPoolExecutor threadPool;
+    // Null with platform threads.
+    private final ExecutorService virtualThreadExecutor;
+    private final Semaphore permits;
+    private final AtomicInteger waitingTasks;
+    private final LongAdder executedCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder totalQueueWaitNanos;
+    private final AtomicLong maxQueueWaitNanos;
+
+    /**
+     * @param threads Number of threads, usually the max size of the
+     *                connection pool
+     * @param queueCapacity Max number of tasks waiting for a thread
+     */
+    public DbExecutor(final int threads, final int queueCapacity) {
+        this(threads, queueCapacity, false);
+    }
+
+    /**
+     * @param threads Number of threads, or of tasks running at once on
+     *                virtual threads, usually the max size of the
+     *                connection pool
+     * @param queueCapacity Max number of tasks waiting for a thread
+     * @param virtualThreads True to run each task on a new virtual thread,
+     *                       see {@link VirtualThreads}
+     */
+    public DbExecutor(
+            final int threads,
+            final int queueCapacity,
+            final boolean virtualThreads) {
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.executedCount = new LongAdder();
+        this.rejectedCount = new LongAdder();
+        this.totalQueueWaitNanos = new LongAdder();
+        this.maxQueueWaitNanos = new AtomicLong();
+        if (virtualThreads) {
+            this.threadPool = null;
+            this.virtualThreadExecutor
+                    = VirtualThreads.newThreadPerTaskExecutor("db-executor-");
+            this.permits = new Semaphore(threads, true);
+            this.waitingTasks = new AtomicInteger();
+            return;
+        }
+        this.virtualThreadExecutor = null;
+        this.permits = null;
+        this.waitingTasks = null;
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(
+                    runnable, "db-executor-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.threadPool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @throws RejectedExecutionException If the queue is full
+     */
+    public void execute(final Runnable task) {
+        final Runnable waitEventCommit = startWaitEvent();
+        final long submittedAtNanos = System.nanoTime();
+        final Runnable timedTask = () -> {
+            if (waitEventCommit != null) {
+                waitEventCommit.run();
+            }
+            final long waitNanos = System.nanoTime() - submittedAtNanos;
+            totalQueueWaitNanos.add(waitNanos);
+            maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            executedCount.increment();
+            task.run();
+        };
+        try {
+            if (threadPool != null) {
+                threadPool.execute(timedTask);
+            } else {
+                executeOnVirtualThread(timedTask);
+            }
+        } catch (final RejectedExecutionException e) {
+            rejectedCount.increment();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        if (threadPool != null) {
+            threadPool.shutdown();
+        } else {
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    public Stats getStats() {
+        final long executed = executedCount.sum();
+        return new Stats(
+                threadPool != null
+                        ? threadPool.getActiveCount()
+                        : threads - permits.availablePermits(),
+                threads,
+                getQueueDepth(),
+                queueCapacity,
+                executed,
+                rejectedCount.sum(),
+                executed == 0
+                        ? 0 : totalQueueWaitNanos.sum() / executed / 1000,
+                maxQueueWaitNanos.get() / 1000);
+    }
+
+    /**
+     * @return Commit of the started event, or null if JFR does not record
+     * it. Tasks do not reference the event class itself, which cannot be
+     * loaded without JFR.
+     */
+    private Runnable startWaitEvent() {
+        if (!RobotsEvents.isAvailable()) {
+            return null;
+        }
+        final RobotsEvents.DbExecutorWaitEvent waitEvent
+                = new RobotsEvents.DbExecutorWaitEvent();
+        if (!waitEvent.isEnabled()) {
+            return null;
+        }
+        waitEvent.begin();
+        waitEvent.queueDepth = getQueueDepth();
+        return waitEvent::commit;
+    }
+
+    private int getQueueDepth() {
+        return threadPool != null
+                ? threadPool.getQueue().size()
+                : waitingTasks.get();
+    }
+
+    private void executeOnVirtualThread(final Runnable task) {
+        // Tasks already waiting for a permit are not overtaken.
+        final boolean acquired
+                = waitingTasks.get() == 0 && permits.tryAcquire();
+        if (!acquired && waitingTasks.incrementAndGet() > queueCapacity) {
+            waitingTasks.decrementAndGet();
+            throw new RejectedExecutionException("DB executor queue is full.");
+        }
+        try {
+            virtualThreadExecutor.execute(() -> {
+                if (!acquired) {
+                    try {
+                        permits.acquire();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } finally {
+                        waitingTasks.decrementAndGet();
+                    }
+                }
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            if (acquired) {
+                permits.release();
+            } else {
+                waitingTasks.decrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    public static class Stats {
+        @Getter
+        private final int activeThreads;
+
+        @Getter
+        private final int maxThreads;
+
+        @Getter
+        private final int queueDepth;
+
+        @Getter
+        private final int queueCapacity;
+
+        @Getter
+        private final long executedCount;
+
+        @Getter
+        private final long rejectedCount;
+
+        @Getter
+        private final long averageQueueWaitMicros;
+
+        @Getter
+        private final long maxQueueWaitMicros;
+
+        public Stats(
+                final int activeThreads,
+                final int maxThreads,
+                final int queueDepth,
+                final int queueCapacity,
+                final long executedCount,
+                final long rejectedCount,
+                final long averageQueueWaitMicros,
+                final long maxQueueWaitMicros) {
+            this.activeThreads = activeThreads;
+            this.maxThreads = maxThreads;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.executedCount = executedCount;
+            this.rejectedCount = rejectedCount;
+            this.averageQueueWaitMicros = averageQueueWaitMicros;
+            this.maxQueueWaitMicros = maxQueueWaitMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "activeThreads=" + activeThreads
+                    + ", maxThreads=" + maxThreads
+                    + ", queueDepth=" + queueDepth
+                    + ", queueCapacity=" + queueCapacity
+                    + ", executedCount=" + executedCount
+                    + ", rejectedCount=" + rejectedCount
+                    + ", averageQueueWaitMicros=" + averageQueueWaitMicros
+                    + ", maxQueueWaitMicros=" + maxQueueWaitMicros;
+        }
+    }
+}
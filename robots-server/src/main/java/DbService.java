@@ -1,13 +1,33 @@
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLDataException;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import models.BulkAddResult;
 import models.Constants;
 import models.RobotPart;
 
 public class DbService {
+    private static final Logger LOGGER
+            = Logger.getLogger(DbService.class.getName());
     // protected for unit tests
     protected static final String PARTS_TABLE_NAME = "parts";
     protected static final String NAME_COLUMN_NAME = "name";
@@ -15,95 +35,691 @@ public class DbService {
     protected static final String MANUFACTURER_COLUMN_NAME = "manufacturer";
     protected static final String WEIGHT_COLUMN_NAME = "weight";
     protected static final String COMPATIBILITIES_COLUMN_NAME = "compatibilities";
+    protected static final String VERSION_COLUMN_NAME = "version";
     protected static final String COMPATIBILITIES_SEPARATOR = ":";
+    protected static final int STREAMING_FETCH_SIZE = 500;
+    protected static final int BULK_ADD_CHUNK_SIZE = 500;
+    protected static final int READ_MANY_CHUNK_SIZE = 500;
+    protected static final int MAX_VARCHAR_LENGTH = 50;
+    private static final Map<String, String> UPDATABLE_COLUMNS
+            = updatableColumns();
+    private static final String INSERT_STRING =
+            "INSERT INTO "
+            + PARTS_TABLE_NAME
+            + " (name, serial_number, manufacturer, weight, compatibilities)"
+            + " VALUES (?, ?, ?, ?, ?);";
 
-    private final Connection connection;
+    private final ConnectionPool connectionPool;
+    private final RobotPartCache robotPartCache;
+    private final CompatibilityTable compatibilityTable;
+    private final List<ChangeListener> changeListeners;
+    private final Metrics metrics;
 
     public DbService(
             final String dbUrl,
             final String username,
             final String password)
             throws SQLException {
-        connection = DriverManager.getConnection(dbUrl, username, password);
-        init();
+        this(new ConnectionPool(
+                dbUrl,
+                username,
+                password,
+                ConnectionPoolConfig.singleConnection()));
     }
 
     public DbService(final String dbUrl) throws SQLException {
-        connection = DriverManager.getConnection(dbUrl);
+        this(new ConnectionPool(
+                dbUrl, ConnectionPoolConfig.singleConnection()));
+    }
+
+    /**
+     * Pooled mode: each call borrows its own connection from the pool,
+     * so concurrent requests run in parallel up to the pool size.
+     * @param connectionPool Pool the connections are borrowed from
+     */
+    public DbService(final ConnectionPool connectionPool) throws SQLException {
+        this(connectionPool, null);
+    }
+
+    /**
+     * Pooled mode with a read-through cache in front of {@link #read}.
+     * @param connectionPool Pool the connections are borrowed from
+     * @param robotPartCache Cache of robot parts, null to disable caching
+     */
+    public DbService(
+            final ConnectionPool connectionPool,
+            final RobotPartCache robotPartCache)
+            throws SQLException {
+        this(connectionPool, robotPartCache, null);
+    }
+
+    /**
+     * Pooled mode, timing every query.
+     * @param connectionPool Pool the connections are borrowed from
+     * @param robotPartCache Cache of robot parts, null to disable caching
+     * @param metrics Where the time each query holds its connection is
+     *                recorded, and the pool and cache stats exported,
+     *                null to disable timing
+     */
+    public DbService(
+            final ConnectionPool connectionPool,
+            final RobotPartCache robotPartCache,
+            final Metrics metrics)
+            throws SQLException {
+        this.connectionPool = connectionPool;
+        this.robotPartCache = robotPartCache;
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.addCollector(this::collectMetrics);
+        }
+        this.compatibilityTable = new CompatibilityTable(connectionPool);
+        this.changeListeners = new CopyOnWriteArrayList<>();
         init();
+        compatibilityTable.startMigration();
     }
 
     private void init() throws SQLException {
-        final Statement statement = connection.createStatement();
-        statement.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS "
-                +  PARTS_TABLE_NAME
-                + " ( name varchar(50),"
-                + " serial_number varchar(50),"
-                + " manufacturer varchar(50),"
-                + " weight int,"
-                + " compatibilities text,"
-                + " primary key (serial_number));");
-        statement.close();
+        final PooledConnection connection = connectionPool.borrow();
+        try {
+            final Statement statement
+                    = connection.getConnection().createStatement();
+            statement.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS "
+                    +  PARTS_TABLE_NAME
+                    + " ( name varchar(50),"
+                    + " serial_number varchar(50),"
+                    + " manufacturer varchar(50),"
+                    + " weight int,"
+                    + " compatibilities text,"
+                    + " version bigint default 0 not null,"
+                    + " primary key (serial_number));");
+            if (!columnExists(
+                    connection.getConnection(),
+                    PARTS_TABLE_NAME,
+                    VERSION_COLUMN_NAME)) {
+                // Table created before the rows were versioned.
+                statement.executeUpdate(
+                        "ALTER TABLE "
+                        + PARTS_TABLE_NAME
+                        + " ADD COLUMN version bigint default 0 not null;");
+            }
+            statement.close();
+            compatibilityTable.init(connection.getConnection());
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    public ConnectionPool.Stats getConnectionPoolStats() {
+        return connectionPool.getStats();
     }
 
+    /**
+     * @return Stats of the read cache, null if caching is disabled
+     */
+    public RobotPartCache.Stats getRobotPartCacheStats() {
+        return robotPartCache == null ? null : robotPartCache.getStats();
+    }
+
+    private void collectMetrics(final StringBuilder text) {
+        final ConnectionPool.Stats poolStats = connectionPool.getStats();
+        Metrics.writeSample(text, "robots_db_pool_connections", "gauge",
+                "Connections open, in use or idle.",
+                poolStats.getTotalConnections());
+        Metrics.writeSample(text, "robots_db_pool_active_connections",
+                "gauge", "Connections in use.",
+                poolStats.getActiveConnections());
+        Metrics.writeSample(text, "robots_db_pool_idle_connections",
+                "gauge", "Connections open and unused.",
+                poolStats.getIdleConnections());
+        Metrics.writeSample(text, "robots_db_pool_max_connections",
+                "gauge", "Max number of connections.",
+                poolStats.getMaxConnections());
+        Metrics.writeSample(text, "robots_db_pool_waiting_threads", "gauge",
+                "Threads waiting for a connection.",
+                poolStats.getWaitingThreads());
+        Metrics.writeSample(text, "robots_db_pool_borrows_total", "counter",
+                "Connections borrowed.", poolStats.getBorrowCount());
+        Metrics.writeSample(text, "robots_db_pool_borrow_timeouts_total",
+                "counter", "Borrows that gave up waiting for a connection.",
+                poolStats.getBorrowTimeoutCount());
+        Metrics.writeSample(text, "robots_db_pool_average_wait_seconds",
+                "gauge", "Average wait for a connection since startup.",
+                poolStats.getAverageWaitMicros() / 1e6);
+        Metrics.writeSample(text, "robots_db_pool_max_wait_seconds",
+                "gauge", "Longest wait for a connection since startup.",
+                poolStats.getMaxWaitMicros() / 1e6);
+        Metrics.writeSample(text, "robots_db_statement_cache_hits_total",
+                "counter", "Prepared statements reused.",
+                poolStats.getStatementCacheHits());
+        Metrics.writeSample(text, "robots_db_statement_cache_misses_total",
+                "counter", "Prepared statements created.",
+                poolStats.getStatementCacheMisses());
+        if (robotPartCache == null) {
+            return;
+        }
+        final RobotPartCache.Stats cacheStats = robotPartCache.getStats();
+        Metrics.writeSample(text, "robots_cache_size", "gauge",
+                "Serial numbers cached.", cacheStats.getSize());
+        Metrics.writeSample(text, "robots_cache_hits_total", "counter",
+                "Reads answered with a cached robot part.",
+                cacheStats.getHits());
+        Metrics.writeSample(text, "robots_cache_missing_hits_total",
+                "counter", "Reads answered with a cached unknown serial"
+                        + " number.",
+                cacheStats.getMissingHits());
+        Metrics.writeSample(text, "robots_cache_misses_total", "counter",
+                "Reads sent to the DB.", cacheStats.getMisses());
+        Metrics.writeSample(text, "robots_cache_evictions_total", "counter",
+                "Entries evicted to make room.", cacheStats.getEvictions());
+        Metrics.writeSample(text, "robots_cache_hit_ratio", "gauge",
+                "Share of reads answered from the cache since startup.",
+                cacheStats.getHitRatio());
+    }
+
+    /**
+     * Register a listener called after each committed write.
+     */
+    public void addChangeListener(final ChangeListener changeListener) {
+        changeListeners.add(changeListener);
+    }
+
+    /**
+     * Add a robot part in a single insert, an existing serial number being
+     * detected by the primary key.
+     */
     public void add(final RobotPart robotPart)
             throws DbServiceException, RessourceAlreadyExistsException {
-        if (robotPartExists(robotPart.getSerialNumber())) {
-            throw new RessourceAlreadyExistsException(
-                    "Could not add robot part. "
-                    + "Serial number already exists in DB: "
-                    + robotPart.getSerialNumber());
-        }
-        final String insertString =
-                "INSERT INTO "
-                + PARTS_TABLE_NAME
-                + " VALUES (?, ?, ?, ?, ?);";
-        final PreparedStatement insertStatement;
+        final DbCall dbCall = startDbCall("add", INSERT_STRING);
+        final PooledConnection connection = borrowConnection();
         try {
-
-            insertStatement = connection.prepareStatement(insertString);
-            insertStatement.setString(1, robotPart.getName());
-            insertStatement.setString(2, robotPart.getSerialNumber());
-            insertStatement.setString(3, robotPart.getManufacturer());
-            insertStatement.setInt(4, robotPart.getWeight());
-            insertStatement.setString(
-                    5, formatCompatibilities(robotPart.getCompatibilities()));
-            insertStatement.executeUpdate();
-            insertStatement.close();
+            connection.getConnection().setAutoCommit(false);
+            final PreparedStatement insertStatement
+                    = connection.prepareStatement(INSERT_STRING);
+            setInsertParameters(insertStatement, robotPart);
+            dbCall.rowCount = insertStatement.executeUpdate();
+            try {
+                compatibilityTable.write(
+                        connection,
+                        robotPart.getSerialNumber(),
+                        robotPart.getCompatibilities());
+            } catch (final SQLException e) {
+                // Not a duplicate, even if a constraint of the index failed.
+                throw new DbServiceException(
+                        "Could not add compatibilities of robot part to DB.",
+                        e);
+            }
+            connection.getConnection().commit();
         } catch (final SQLException e) {
+            if (isConstraintViolation(e)) {
+                throw new RessourceAlreadyExistsException(
+                        "Could not add robot part. "
+                        + "Serial number already exists in DB: "
+                        + robotPart.getSerialNumber());
+            }
             throw new DbServiceException("Could not add robot part to DB.", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
+        }
+        invalidateCachedRobotPart(robotPart.getSerialNumber());
+        for (final ChangeListener changeListener : changeListeners) {
+            changeListener.compatibilitiesChanged(
+                    robotPart.getSerialNumber(),
+                    robotPart.getCompatibilities());
+        }
+    }
+
+    /**
+     * Add many robot parts at once. Items are inserted with JDBC batches,
+     * {@link #BULK_ADD_CHUNK_SIZE} per transaction, and a bad item does not
+     * prevent the others from being added. Once a chunk fails for want of
+     * a working connection, the later chunks are not attempted, and their
+     * robot parts are reported as {@link BulkAddResult.Status#NOT_STORED}.
+     * @param robotParts Robot parts to add
+     * @return One result per robot part, in the same order
+     */
+    public BulkAddResult[] addAll(final List<RobotPart> robotParts)
+            throws DbServiceException {
+        final BulkAddResult[] results = new BulkAddResult[robotParts.size()];
+        final Set<String> requestedSerialNumbers = new HashSet<>();
+        final List<Integer> indexesToInsert = new ArrayList<>();
+        for (int index = 0; index < robotParts.size(); index++) {
+            final RobotPart robotPart = robotParts.get(index);
+            final String validationError = validateRobotPart(robotPart);
+            if (validationError != null) {
+                results[index] = new BulkAddResult(
+                        robotPart == null ? null : robotPart.getSerialNumber(),
+                        BulkAddResult.Status.INVALID,
+                        validationError);
+            } else if (!requestedSerialNumbers.add(
+                    robotPart.getSerialNumber())) {
+                results[index] = new BulkAddResult(
+                        robotPart.getSerialNumber(),
+                        BulkAddResult.Status.DUPLICATE,
+                        "Serial number appears several times in the request.");
+            } else {
+                indexesToInsert.add(index);
+            }
+        }
+        for (int chunkStart = 0;
+                chunkStart < indexesToInsert.size();
+                chunkStart += BULK_ADD_CHUNK_SIZE) {
+            if (!addChunk(
+                    robotParts,
+                    indexesToInsert.subList(
+                            chunkStart,
+                            Math.min(
+                                    chunkStart + BULK_ADD_CHUNK_SIZE,
+                                    indexesToInsert.size())),
+                    results)) {
+                // Each later chunk would wait for a connection as long.
+                failUnresolved(
+                        robotParts,
+                        indexesToInsert.subList(
+                                chunkStart, indexesToInsert.size()),
+                        results);
+                break;
+            }
         }
+        return results;
+    }
+
+    /**
+     * @return False if the chunk failed for want of a working connection
+     */
+    private boolean addChunk(
+            final List<RobotPart> robotParts,
+            final List<Integer> indexes,
+            final BulkAddResult[] results) {
+        final List<String> serialNumbers = new ArrayList<>(indexes.size());
+        for (final int index : indexes) {
+            serialNumbers.add(robotParts.get(index).getSerialNumber());
+        }
+        final List<Integer> batchedIndexes = new ArrayList<>(indexes.size());
+        boolean chunkStored = true;
+        final DbCall dbCall = startDbCall("addAll", INSERT_STRING);
+        final PooledConnection connection;
+        try {
+            connection = borrowConnection();
+        } catch (final DbServiceException e) {
+            endDbCall(dbCall);
+            LOGGER.log(Level.WARNING, "Could not add robot parts.", e);
+            return false;
+        }
+        try {
+            connection.getConnection().setAutoCommit(false);
+            final Set<String> existingSerialNumbers
+                    = findExistingSerialNumbers(connection, serialNumbers);
+            final PreparedStatement insertStatement
+                    = connection.prepareStatement(INSERT_STRING);
+            for (final int index : indexes) {
+                final RobotPart robotPart = robotParts.get(index);
+                if (existingSerialNumbers.contains(
+                        robotPart.getSerialNumber())) {
+                    results[index] = duplicateResult(robotPart);
+                    continue;
+                }
+                setInsertParameters(insertStatement, robotPart);
+                insertStatement.addBatch();
+                batchedIndexes.add(index);
+            }
+            try {
+                if (!batchedIndexes.isEmpty()) {
+                    insertStatement.executeBatch();
+                }
+                for (final int index : batchedIndexes) {
+                    compatibilityTable.write(
+                            connection,
+                            robotParts.get(index).getSerialNumber(),
+                            robotParts.get(index).getCompatibilities());
+                }
+                connection.getConnection().commit();
+                for (final int index : batchedIndexes) {
+                    results[index] = new BulkAddResult(
+                            robotParts.get(index).getSerialNumber(),
+                            BulkAddResult.Status.CREATED,
+                            null);
+                }
+            } catch (final SQLException e) {
+                // Most likely a concurrent insert of one of the serial
+                // numbers, or compatibilities the edge table cannot store:
+                // retry the chunk one row at a time, so that the failure is
+                // reported on the robot parts it belongs to.
+                insertStatement.clearBatch();
+                connection.getConnection().rollback();
+                addOneByOne(
+                        connection,
+                        insertStatement,
+                        robotParts,
+                        batchedIndexes,
+                        results);
+            }
+        } catch (final SQLException e) {
+            // The previous chunks are committed already, so the request
+            // cannot fail as a whole: the robot parts that were not stored
+            // are reported as such, by the caller.
+            LOGGER.log(Level.WARNING, "Could not add robot parts.", e);
+            chunkStored = false;
+        } finally {
+            connectionPool.release(connection);
+            dbCall.rowCount = batchedIndexes.size();
+            endDbCall(dbCall);
+            for (final int index : batchedIndexes) {
+                invalidateCachedRobotPart(
+                        robotParts.get(index).getSerialNumber());
+            }
+        }
+        for (final int index : batchedIndexes) {
+            if (results[index] == null
+                    || results[index].getStatus()
+                            != BulkAddResult.Status.CREATED) {
+                continue;
+            }
+            for (final ChangeListener changeListener : changeListeners) {
+                changeListener.compatibilitiesChanged(
+                        robotParts.get(index).getSerialNumber(),
+                        robotParts.get(index).getCompatibilities());
+            }
+        }
+        return chunkStored;
+    }
+
+    private static void failUnresolved(
+            final List<RobotPart> robotParts,
+            final List<Integer> indexes,
+            final BulkAddResult[] results) {
+        for (final int index : indexes) {
+            if (results[index] == null) {
+                results[index] = notStoredResult(robotParts.get(index));
+            }
+        }
+    }
+
+    private static BulkAddResult notStoredResult(final RobotPart robotPart) {
+        return new BulkAddResult(
+                robotPart.getSerialNumber(),
+                BulkAddResult.Status.NOT_STORED,
+                "Could not be stored, retry later.");
+    }
+
+    private void addOneByOne(
+            final PooledConnection connection,
+            final PreparedStatement insertStatement,
+            final List<RobotPart> robotParts,
+            final List<Integer> indexes,
+            final BulkAddResult[] results)
+            throws SQLException {
+        for (final int index : indexes) {
+            final RobotPart robotPart = robotParts.get(index);
+            boolean inserted = false;
+            try {
+                setInsertParameters(insertStatement, robotPart);
+                insertStatement.executeUpdate();
+                inserted = true;
+                compatibilityTable.write(
+                        connection,
+                        robotPart.getSerialNumber(),
+                        robotPart.getCompatibilities());
+                connection.getConnection().commit();
+                results[index] = new BulkAddResult(
+                        robotPart.getSerialNumber(),
+                        BulkAddResult.Status.CREATED,
+                        null);
+            } catch (final SQLException e) {
+                connection.getConnection().rollback();
+                if (!inserted && isConstraintViolation(e)) {
+                    results[index] = duplicateResult(robotPart);
+                } else if (isDataException(e)) {
+                    results[index] = new BulkAddResult(
+                            robotPart.getSerialNumber(),
+                            BulkAddResult.Status.INVALID,
+                            "A field value cannot be stored.");
+                } else {
+                    // A lock timeout or a deadlock, for instance.
+                    LOGGER.log(
+                            Level.WARNING,
+                            "Could not add robot part "
+                                    + robotPart.getSerialNumber() + ".",
+                            e);
+                    results[index] = notStoredResult(robotPart);
+                }
+            }
+        }
+    }
+
+    private Set<String> findExistingSerialNumbers(
+            final PooledConnection connection,
+            final List<String> serialNumbers)
+            throws SQLException {
+        final Set<String> existingSerialNumbers = new HashSet<>();
+        if (serialNumbers.isEmpty()) {
+            return existingSerialNumbers;
+        }
+        final int inListSize = inListBucketSize(serialNumbers.size());
+        final PreparedStatement selectStatement = connection.prepareStatement(
+                "SELECT "
+                + SERIAL_NUMBER_COLUMN_NAME
+                + " FROM "
+                + PARTS_TABLE_NAME
+                + " WHERE "
+                + SERIAL_NUMBER_COLUMN_NAME
+                + " IN ("
+                + inListPlaceholders(inListSize)
+                + ");");
+        setInListParameters(selectStatement, 1, inListSize, serialNumbers);
+        try (ResultSet resultSet = selectStatement.executeQuery()) {
+            while (resultSet.next()) {
+                existingSerialNumbers.add(resultSet.getString(1));
+            }
+        }
+        return existingSerialNumbers;
+    }
 
+    private static BulkAddResult duplicateResult(final RobotPart robotPart) {
+        return new BulkAddResult(
+                robotPart.getSerialNumber(),
+                BulkAddResult.Status.DUPLICATE,
+                "Serial number already exists in DB.");
+    }
+
+    /**
+     * @return Why the robot part cannot be stored, null if it can
+     */
+    private static String validateRobotPart(final RobotPart robotPart) {
+        if (robotPart == null) {
+            return "Missing robot part.";
+        }
+        if (robotPart.getSerialNumber() == null
+                || robotPart.getSerialNumber().isEmpty()) {
+            return "Missing serial number.";
+        }
+        if (robotPart.getName() == null
+                || robotPart.getManufacturer() == null
+                || robotPart.getWeight() == null
+                || robotPart.getCompatibilities() == null) {
+            return "Missing field.";
+        }
+        if (robotPart.getSerialNumber().length() > MAX_VARCHAR_LENGTH
+                || robotPart.getName().length() > MAX_VARCHAR_LENGTH
+                || robotPart.getManufacturer().length()
+                        > MAX_VARCHAR_LENGTH) {
+            return "Fields are limited to "
+                    + MAX_VARCHAR_LENGTH + " characters.";
+        }
+        return null;
+    }
+
+    protected static boolean isConstraintViolation(final SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException
+                || (e.getSQLState() != null
+                        && e.getSQLState().startsWith("23"));
+    }
+
+    /**
+     * @return True if a value does not fit its column, e.g. a string too
+     * long for it
+     */
+    private static boolean isDataException(final SQLException e) {
+        return e instanceof SQLDataException
+                || (e.getSQLState() != null
+                        && e.getSQLState().startsWith("22"));
+    }
+
+    private void setInsertParameters(
+            final PreparedStatement insertStatement,
+            final RobotPart robotPart)
+            throws SQLException {
+        insertStatement.setString(1, robotPart.getName());
+        insertStatement.setString(2, robotPart.getSerialNumber());
+        insertStatement.setString(3, robotPart.getManufacturer());
+        insertStatement.setInt(4, robotPart.getWeight());
+        insertStatement.setString(
+                5, formatCompatibilities(robotPart.getCompatibilities()));
     }
 
     public RobotPart read(
             final String robotPartSerialNumber)
             throws DbServiceException, RessourceNotFoundException {
+        if (robotPartCache == null) {
+            return readFromDb(robotPartSerialNumber);
+        }
+        final RobotPartCache.Entry cachedEntry
+                = robotPartCache.get(robotPartSerialNumber);
+        if (cachedEntry != null) {
+            if (cachedEntry.isMissing()) {
+                throw new RessourceNotFoundException(
+                        "Could not read robot part. "
+                                + "Serial number does not exist in DB: "
+                                + robotPartSerialNumber);
+            }
+            return cachedEntry.getRobotPart();
+        }
+        final long cacheVersion = robotPartCache.currentVersion();
+        final RobotPart robotPart;
+        try {
+            robotPart = readFromDb(robotPartSerialNumber);
+        } catch (final RessourceNotFoundException e) {
+            robotPartCache.putMissing(robotPartSerialNumber, cacheVersion);
+            throw e;
+        }
+        robotPartCache.put(robotPart, cacheVersion);
+        return robotPart;
+    }
+
+    /**
+     * Read many robot parts at once, with one IN-list query per
+     * {@link #READ_MANY_CHUNK_SIZE} serial numbers not found in the cache.
+     * @param serialNumbers Serial numbers to read, duplicates are ignored
+     * @return The robot parts found, by serial number. Serial numbers
+     * missing from the map do not exist in the DB.
+     */
+    public Map<String, RobotPart> readMany(
+            final Collection<String> serialNumbers)
+            throws DbServiceException {
+        final Map<String, RobotPart> robotParts = new HashMap<>();
+        final List<String> serialNumbersToRead = new ArrayList<>();
+        for (final String serialNumber : new LinkedHashSet<>(serialNumbers)) {
+            final RobotPartCache.Entry cachedEntry = robotPartCache == null
+                    ? null : robotPartCache.get(serialNumber);
+            if (cachedEntry == null) {
+                serialNumbersToRead.add(serialNumber);
+            } else if (!cachedEntry.isMissing()) {
+                robotParts.put(serialNumber, cachedEntry.getRobotPart());
+            }
+        }
+        if (serialNumbersToRead.isEmpty()) {
+            return robotParts;
+        }
+        final long cacheVersion = robotPartCache == null
+                ? 0 : robotPartCache.currentVersion();
+        final DbCall dbCall = startDbCall("readMany", null);
+        final PooledConnection connection = borrowConnection();
+        try {
+            for (int chunkStart = 0;
+                    chunkStart < serialNumbersToRead.size();
+                    chunkStart += READ_MANY_CHUNK_SIZE) {
+                final List<String> chunk = serialNumbersToRead.subList(
+                        chunkStart,
+                        Math.min(
+                                chunkStart + READ_MANY_CHUNK_SIZE,
+                                serialNumbersToRead.size()));
+                final int inListSize = inListBucketSize(chunk.size());
+                final String selectString =
+                        "SELECT * FROM "
+                        + PARTS_TABLE_NAME
+                        + " WHERE "
+                        + SERIAL_NUMBER_COLUMN_NAME
+                        + " IN ("
+                        + inListPlaceholders(inListSize)
+                        + ");";
+                dbCall.sql = selectString;
+                final PreparedStatement selectStatement
+                        = connection.prepareStatement(selectString);
+                setInListParameters(selectStatement, 1, inListSize, chunk);
+                try (ResultSet resultSet = selectStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        final RobotPart robotPart
+                                = createRobotPartFromResultSet(resultSet);
+                        robotParts.put(
+                                robotPart.getSerialNumber(), robotPart);
+                        dbCall.rowCount++;
+                    }
+                }
+            }
+        } catch (final SQLException e) {
+            throw new DbServiceException(
+                    "Could not read robot parts from DB.", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
+        }
+        if (robotPartCache != null) {
+            for (final String serialNumber : serialNumbersToRead) {
+                final RobotPart robotPart = robotParts.get(serialNumber);
+                if (robotPart == null) {
+                    robotPartCache.putMissing(serialNumber, cacheVersion);
+                } else {
+                    robotPartCache.put(robotPart, cacheVersion);
+                }
+            }
+        }
+        return robotParts;
+    }
+
+    private RobotPart readFromDb(
+            final String robotPartSerialNumber)
+            throws DbServiceException, RessourceNotFoundException {
         final String selectString =
                 "SELECT * FROM "
                         + PARTS_TABLE_NAME
                         + " WHERE "
                         + SERIAL_NUMBER_COLUMN_NAME
                         + "= ?;";
+        final DbCall dbCall = startDbCall("read", selectString);
+        final PooledConnection connection = borrowConnection();
         try {
             final PreparedStatement selectStatement
                     = connection.prepareStatement(selectString);
             selectStatement.setString(1, robotPartSerialNumber);
-            final ResultSet resultSet = selectStatement.executeQuery();
-            if (!resultSet.next()) {
-                throw new RessourceNotFoundException(
-                        "Could not read robot part. "
-                                + "Serial number does not exist in DB: "
-                                + robotPartSerialNumber);
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new RessourceNotFoundException(
+                            "Could not read robot part. "
+                                    + "Serial number does not exist in DB: "
+                                    + robotPartSerialNumber);
+                }
+                final RobotPart robotPart
+                        = createRobotPartFromResultSet(resultSet);
+                dbCall.rowCount = 1;
+                return robotPart;
             }
-            final RobotPart robotPart = createRobotPartFromResultSet(resultSet);
-            resultSet.close();
-            selectStatement.close();
-            return robotPart;
         } catch (final SQLException e) {
             throw new DbServiceException(
                     "Could not read robot part from DB.", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
         }
     }
 
@@ -115,46 +731,163 @@ public class DbService {
             RessourceNotFoundException,
             UpdateDbException,
             IllegalArgumentException {
-        if (!robotPartExists(originalSerialNumber)) {
-            throw new RessourceNotFoundException(
-                    "Could not update robot parts. "
-                    + "Serial number not found: "
-                    + originalSerialNumber);
+        update(originalSerialNumber, fieldToUpdate, valueOfField, null);
+    }
+
+    /**
+     * Update one field of a robot part, see {@link #patch}.
+     */
+    public void update(
+            final String originalSerialNumber,
+            final String fieldToUpdate,
+            final Object valueOfField,
+            final Long expectedVersion)
+            throws DbServiceException,
+            RessourceNotFoundException,
+            UpdateDbException,
+            IllegalArgumentException {
+        patch(originalSerialNumber,
+                Collections.singletonMap(fieldToUpdate, valueOfField),
+                expectedVersion);
+    }
+
+    /**
+     * Update any subset of the fields of a robot part, in a single
+     * statement that also increments the version of the row.
+     * @param originalSerialNumber Serial number of the robot part
+     * @param fieldsToUpdate Updated values by field name, see
+     *                       {@link Constants}
+     * @param expectedVersion Version the robot part must still have for the
+     *                        update to happen, null to update it whatever
+     *                        its version
+     * @throws VersionConflictException If the robot part no longer has
+     * {@code expectedVersion}
+     */
+    public void patch(
+            final String originalSerialNumber,
+            final Map<String, Object> fieldsToUpdate,
+            final Long expectedVersion)
+            throws DbServiceException,
+            RessourceNotFoundException,
+            UpdateDbException,
+            IllegalArgumentException {
+        if (fieldsToUpdate.isEmpty()) {
+            throw new IllegalArgumentException("No field to update");
         }
+        for (final String fieldToUpdate : fieldsToUpdate.keySet()) {
+            if (!UPDATABLE_COLUMNS.containsKey(fieldToUpdate)) {
+                throw new IllegalArgumentException("Unrecognized field");
+            }
+            if (fieldsToUpdate.get(fieldToUpdate) == null) {
+                throw new IllegalArgumentException("Missing field value");
+            }
+        }
+        final String[] compatibilities
+                = fieldsToUpdate.containsKey(Constants.COMPATIBILITIES)
+                ? toCompatibilities(
+                        fieldsToUpdate.get(Constants.COMPATIBILITIES))
+                : null;
+        final String updatedSerialNumber
+                = fieldsToUpdate.containsKey(Constants.SERIAL_NUMBER)
+                ? String.valueOf(fieldsToUpdate.get(Constants.SERIAL_NUMBER))
+                : null;
+        // Columns always come in the same order, so that a given set of
+        // fields always gives the same statement.
+        final List<Object> values = new ArrayList<>();
         final StringBuffer stringBuffer = new StringBuffer();
         stringBuffer.append("UPDATE " + PARTS_TABLE_NAME + " SET ");
-        if (Constants.NAME.equals(fieldToUpdate)) {
-            stringBuffer.append(NAME_COLUMN_NAME + "=?");
-        } else if (Constants.SERIAL_NUMBER.equals(fieldToUpdate)) {
-            stringBuffer.append(SERIAL_NUMBER_COLUMN_NAME + "=?");
-        } else if (Constants.MANUFACTURER.equals(fieldToUpdate)) {
-            stringBuffer.append(MANUFACTURER_COLUMN_NAME + "=?");
-        } else if (Constants.WEIGHT.equals(fieldToUpdate)) {
-            stringBuffer.append(WEIGHT_COLUMN_NAME + "=?");
-        } else if (Constants.COMPATIBILITIES.equals(fieldToUpdate)) {
-            stringBuffer.append(COMPATIBILITIES_COLUMN_NAME + "=?");
-        } else if (Constants.SERIAL_NUMBER.equals(fieldToUpdate)) {
-            if (robotPartExists((String) valueOfField)) {
-                throw new UpdateDbException(
-                        "Could not update robot parts. "
-                        + "The new serial number already exists in the DB.");
+        for (final Map.Entry<String, String> column
+                : UPDATABLE_COLUMNS.entrySet()) {
+            if (!fieldsToUpdate.containsKey(column.getKey())) {
+                continue;
             }
-            stringBuffer.append(SERIAL_NUMBER_COLUMN_NAME + "=?");
-        } else {
-            throw new IllegalArgumentException("Unrecognized field");
+            stringBuffer.append(column.getValue() + "=?, ");
+            values.add(Constants.COMPATIBILITIES.equals(column.getKey())
+                    ? formatCompatibilities(compatibilities)
+                    : fieldsToUpdate.get(column.getKey()));
         }
-        stringBuffer.append(" WHERE " + SERIAL_NUMBER_COLUMN_NAME + "=?;");
+        stringBuffer.append(
+                VERSION_COLUMN_NAME + "=" + VERSION_COLUMN_NAME + "+1");
+        stringBuffer.append(" WHERE " + SERIAL_NUMBER_COLUMN_NAME + "=?");
+        if (expectedVersion != null) {
+            stringBuffer.append(" AND " + VERSION_COLUMN_NAME + "=?");
+        }
+        stringBuffer.append(";");
         final String updateString = stringBuffer.toString();
+        final boolean updated;
+        final DbCall dbCall = startDbCall("patch", updateString);
+        final PooledConnection connection = borrowConnection();
         try {
+            connection.getConnection().setAutoCommit(false);
             final PreparedStatement updateStatement
                     = connection.prepareStatement(updateString);
-            updateStatement.setObject(1, valueOfField);
-            updateStatement.setString(2, originalSerialNumber);
-            updateStatement.executeUpdate();
-            updateStatement.close();
+            int parameterIndex = 1;
+            for (final Object value : values) {
+                updateStatement.setObject(parameterIndex++, value);
+            }
+            updateStatement.setString(parameterIndex++, originalSerialNumber);
+            if (expectedVersion != null) {
+                updateStatement.setLong(parameterIndex, expectedVersion);
+            }
+            dbCall.rowCount = updateStatement.executeUpdate();
+            updated = dbCall.rowCount > 0;
+            try {
+                if (updated && compatibilities != null) {
+                    compatibilityTable.write(
+                            connection, originalSerialNumber, compatibilities);
+                }
+                if (updated && updatedSerialNumber != null) {
+                    compatibilityTable.rename(
+                            connection,
+                            originalSerialNumber,
+                            updatedSerialNumber);
+                }
+            } catch (final SQLException e) {
+                // Not a duplicate, even if a constraint of the index failed.
+                throw new DbServiceException(
+                        "Could not update compatibilities of robot part in DB.",
+                        e);
+            }
+            connection.getConnection().commit();
         } catch (final SQLException e) {
+            if (isConstraintViolation(e)) {
+                throw new UpdateDbException(
+                        "Could not update robot parts. "
+                        + "The new serial number already exists in the DB.");
+            }
             throw new DbServiceException(
                     "Could not update robot part in DB.", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
+            invalidateCachedRobotPart(originalSerialNumber);
+            if (updatedSerialNumber != null) {
+                invalidateCachedRobotPart(updatedSerialNumber);
+            }
+        }
+        if (!updated) {
+            // Only a failed update pays for telling both cases apart.
+            if (expectedVersion != null
+                    && robotPartExists(originalSerialNumber)) {
+                throw new VersionConflictException(
+                        "Could not update robot parts. "
+                        + "Robot part was modified, expected version: "
+                        + expectedVersion);
+            }
+            throw new RessourceNotFoundException(
+                    "Could not update robot parts. "
+                    + "Serial number not found: "
+                    + originalSerialNumber);
+        }
+        for (final ChangeListener changeListener : changeListeners) {
+            if (compatibilities != null) {
+                changeListener.compatibilitiesChanged(
+                        originalSerialNumber, compatibilities);
+            }
+            if (updatedSerialNumber != null) {
+                changeListener.robotPartRenamed(
+                        originalSerialNumber, updatedSerialNumber);
+            }
         }
     }
 
@@ -166,103 +899,347 @@ public class DbService {
                 + " WHERE "
                 + SERIAL_NUMBER_COLUMN_NAME
                 + "=?;";
+        final DbCall dbCall = startDbCall("delete", deleteString);
+        final PooledConnection connection = borrowConnection();
         try {
+            connection.getConnection().setAutoCommit(false);
             final PreparedStatement deleteStatement
                     = connection.prepareStatement(deleteString);
             deleteStatement.setString(1, robotPartSerialNumber);
-            deleteStatement.executeUpdate();
-            deleteStatement.close();
+            dbCall.rowCount = deleteStatement.executeUpdate();
+            compatibilityTable.delete(connection, robotPartSerialNumber);
+            connection.getConnection().commit();
         } catch (final SQLException e) {
             throw new DbServiceException(
                     "Could not delete robot parts from DB: "
                             + robotPartSerialNumber,
                     e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
+            invalidateCachedRobotPart(robotPartSerialNumber);
+        }
+        for (final ChangeListener changeListener : changeListeners) {
+            changeListener.robotPartDeleted(robotPartSerialNumber);
         }
     }
 
     public RobotPart[] listAll() throws DbServiceException {
-        final RobotPart[] robotParts;
+        final List<RobotPart> robotParts = new ArrayList<>();
         try {
-            final Statement countStatement = connection.createStatement();
-            final ResultSet countResultSet
-                    = countStatement.executeQuery(
-                    "SELECT COUNT(*) FROM " + PARTS_TABLE_NAME + ";");
-            if (!countResultSet.next()) {
-                throw new DbServiceException(
-                        "Could not count raw of table " + PARTS_TABLE_NAME);
-            }
-            int tableSize = countResultSet.getInt(1);
-            countResultSet.close();
-            countStatement.close();
-
-            final Statement listStatement = connection.createStatement();
-            final ResultSet resultSet
-                    = listStatement.executeQuery(
-                    "SELECT * FROM " + PARTS_TABLE_NAME + ";");
-            robotParts = new RobotPart[tableSize];
-            int arrayColumn = 0;
-            while (resultSet.next()) {
-                robotParts[arrayColumn] = createRobotPartFromResultSet(resultSet);
-                arrayColumn++;
+            streamAll(robotParts::add);
+        } catch (final IOException e) {
+            // Adding to a list does not throw IOException.
+            throw new DbServiceException(
+                    "Could not list all robot parts from DB.", e);
+        }
+        return robotParts.toArray(new RobotPart[robotParts.size()]);
+    }
+
+    /**
+     * Hand every robot part of the DB to the handler, one row at a time,
+     * without keeping them in memory. Rows are read through a forward-only
+     * cursor, {@link #STREAMING_FETCH_SIZE} rows per round trip when the
+     * driver supports it (for MySQL, add useCursorFetch=true to the URL).
+     *
+     * <p>The pooled connection is held until the last row is handled. When
+     * the handler writes to an HTTP client, a slow client therefore keeps
+     * a connection of the pool for the whole transfer, and the time
+     * recorded for this query, in the metrics and the JFR event, includes
+     * the network time.
+     * @param robotPartHandler Called once per robot part, in the order of
+     *                         the table
+     * @throws IOException If the handler failed, the iteration is stopped
+     */
+    public void streamAll(final RobotPartHandler robotPartHandler)
+            throws DbServiceException, IOException {
+        final String selectString = "SELECT * FROM " + PARTS_TABLE_NAME + ";";
+        final DbCall dbCall = startDbCall("streamAll", selectString);
+        final PooledConnection connection = borrowConnection();
+        try {
+            final PreparedStatement listStatement
+                    = connection.prepareStatement(selectString);
+            listStatement.setFetchSize(STREAMING_FETCH_SIZE);
+            try (ResultSet resultSet = listStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    robotPartHandler.handle(
+                            createRobotPartFromResultSet(resultSet));
+                    dbCall.rowCount++;
+                }
             }
-            resultSet.close();
-            listStatement.close();
         } catch (final SQLException e) {
             throw new DbServiceException(
                     "Could not list all robot parts from DB.", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
         }
+    }
 
-        return robotParts;
+    /**
+     * List robot parts ordered by serial number, starting right after the
+     * given serial number. Seeks through the primary key index, so a page
+     * costs the same at any depth.
+     * @param afterSerialNumber Last serial number of the previous page,
+     *                          null for the first page
+     * @param limit Max number of robot parts to return
+     * @return At most {@code limit} robot parts
+     */
+    public RobotPart[] listPage(
+            final String afterSerialNumber,
+            final int limit)
+            throws DbServiceException {
+        final String selectString = afterSerialNumber == null
+                ? "SELECT * FROM "
+                        + PARTS_TABLE_NAME
+                        + " ORDER BY "
+                        + SERIAL_NUMBER_COLUMN_NAME
+                        + " LIMIT ?;"
+                : "SELECT * FROM "
+                        + PARTS_TABLE_NAME
+                        + " WHERE "
+                        + SERIAL_NUMBER_COLUMN_NAME
+                        + " > ? ORDER BY "
+                        + SERIAL_NUMBER_COLUMN_NAME
+                        + " LIMIT ?;";
+        final DbCall dbCall = startDbCall("listPage", selectString);
+        final PooledConnection connection = borrowConnection();
+        try {
+            final PreparedStatement pageStatement
+                    = connection.prepareStatement(selectString);
+            int parameterIndex = 1;
+            if (afterSerialNumber != null) {
+                pageStatement.setString(parameterIndex++, afterSerialNumber);
+            }
+            pageStatement.setInt(parameterIndex, limit);
+            final List<RobotPart> robotParts = new ArrayList<>(limit);
+            try (ResultSet resultSet = pageStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    robotParts.add(createRobotPartFromResultSet(resultSet));
+                }
+            }
+            dbCall.rowCount = robotParts.size();
+            return robotParts.toArray(new RobotPart[robotParts.size()]);
+        } catch (final SQLException e) {
+            throw new DbServiceException(
+                    "Could not list a page of robot parts from DB.", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
+        }
     }
 
+    /**
+     * List the robot parts the given robot part is compatible with, in the
+     * order of its compatibilities. Compatibilities referencing robot parts
+     * that no longer exist are skipped.
+     * @param robotPartSerialNumber Serial number of the robot part
+     * @param number Max number of results
+     */
     public RobotPart[] listCompatible(
             final String robotPartSerialNumber,
             final Integer number)
             throws DbServiceException, RessourceNotFoundException {
-        final RobotPart robotPart = read(robotPartSerialNumber);
-        final String[] compatibilities = robotPart.getCompatibilities();
-        final int numberOfRobotPartsToRetreive
-                = compatibilities.length < number
-                ? compatibilities.length : number;
-
-        final StringBuffer selectStringBuffer = new StringBuffer();
-        selectStringBuffer.append(
-                "SELECT * FROM "
-                + PARTS_TABLE_NAME
-                + " WHERE ");
-        for (int count = 0; count < numberOfRobotPartsToRetreive; count++) {
-            if (count != 0) {
-                selectStringBuffer.append("OR ");
+        if (!compatibilityTable.isReady()) {
+            return listCompatibleFromParts(robotPartSerialNumber, number);
+        }
+        final List<RobotPart> robotParts = new ArrayList<>();
+        if (number > 0) {
+            final String selectString =
+                    "SELECT p.* FROM "
+                    + CompatibilityTable.COMPATIBILITIES_TABLE_NAME
+                    + " c JOIN "
+                    + PARTS_TABLE_NAME
+                    + " p ON p."
+                    + SERIAL_NUMBER_COLUMN_NAME
+                    + " = c."
+                    + CompatibilityTable.COMPATIBLE_SERIAL_NUMBER_COLUMN_NAME
+                    + " WHERE c."
+                    + CompatibilityTable.SERIAL_NUMBER_COLUMN_NAME
+                    + " = ? ORDER BY c."
+                    + CompatibilityTable.POSITION_COLUMN_NAME
+                    + " LIMIT ?;";
+            final DbCall dbCall = startDbCall("listCompatible", selectString);
+            final PooledConnection connection = borrowConnection();
+            try {
+                final PreparedStatement listStatement
+                        = connection.prepareStatement(selectString);
+                listStatement.setString(1, robotPartSerialNumber);
+                listStatement.setInt(2, number);
+                try (ResultSet resultSet = listStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        robotParts.add(
+                                createRobotPartFromResultSet(resultSet));
+                    }
+                }
+                dbCall.rowCount = robotParts.size();
+            } catch (final SQLException e) {
+                throw new DbServiceException(
+                        "Could not list compatible robot parts from DB,", e);
+            } finally {
+                connectionPool.release(connection);
+                endDbCall(dbCall);
             }
-            selectStringBuffer.append(SERIAL_NUMBER_COLUMN_NAME + "= ? ");
         }
-        selectStringBuffer.append("LIMIT ?;");
-        final String selectString = selectStringBuffer.toString();
+        // An empty result does not tell an unknown robot part from one
+        // without compatibilities, only then is a second query needed.
+        if (robotParts.isEmpty()
+                && !robotPartExists(robotPartSerialNumber)) {
+            throw new RessourceNotFoundException(
+                    "Could not list compatible robot parts. "
+                    + "Serial number not found: "
+                    + robotPartSerialNumber);
+        }
+        return robotParts.toArray(new RobotPart[robotParts.size()]);
+    }
+
+    /**
+     * {@link #listCompatible} from the compatibilities column of the parts
+     * table, used until the compatibilities table is migrated.
+     */
+    private RobotPart[] listCompatibleFromParts(
+            final String robotPartSerialNumber,
+            final Integer number)
+            throws DbServiceException, RessourceNotFoundException {
+        final String[] compatibilities
+                = read(robotPartSerialNumber).getCompatibilities();
+        final Map<String, RobotPart> compatibleRobotParts
+                = readMany(Arrays.asList(compatibilities));
+        final List<RobotPart> robotParts = new ArrayList<>();
+        for (final String compatibility : compatibilities) {
+            if (robotParts.size() >= number) {
+                break;
+            }
+            final RobotPart robotPart = compatibleRobotParts.get(compatibility);
+            if (robotPart != null) {
+                robotParts.add(robotPart);
+            }
+        }
+        return robotParts.toArray(new RobotPart[robotParts.size()]);
+    }
+
+    /**
+     * List the robot parts that have the given serial number among their
+     * compatibilities, answered from the reverse index of the
+     * compatibilities table.
+     * @param robotPartSerialNumber Serial number the robot parts must be
+     *                              compatible with, it does not have to
+     *                              exist in the DB
+     * @param number Max number of results
+     * @return Robot parts ordered by serial number
+     * @throws IndexNotReadyException If existing compatibilities are still
+     * being migrated to the compatibilities table
+     */
+    public RobotPart[] listReverseCompatible(
+            final String robotPartSerialNumber,
+            final Integer number)
+            throws DbServiceException, IndexNotReadyException {
+        if (!compatibilityTable.isReady()) {
+            throw new IndexNotReadyException(
+                    "Compatibility index is still being built.");
+        }
+        final String selectString =
+                "SELECT DISTINCT p.* FROM "
+                + CompatibilityTable.COMPATIBILITIES_TABLE_NAME
+                + " c JOIN "
+                + PARTS_TABLE_NAME
+                + " p ON p."
+                + SERIAL_NUMBER_COLUMN_NAME
+                + " = c."
+                + CompatibilityTable.SERIAL_NUMBER_COLUMN_NAME
+                + " WHERE c."
+                + CompatibilityTable.COMPATIBLE_SERIAL_NUMBER_COLUMN_NAME
+                + " = ? ORDER BY p."
+                + SERIAL_NUMBER_COLUMN_NAME
+                + " LIMIT ?;";
+        final DbCall dbCall
+                = startDbCall("listReverseCompatible", selectString);
+        final PooledConnection connection = borrowConnection();
         try {
             final PreparedStatement listStatement
                     = connection.prepareStatement(selectString);
-            for (int count = 0; count < numberOfRobotPartsToRetreive; count++) {
-                listStatement.setString(count + 1, compatibilities[count]);
-            }
-            listStatement.setInt(
-                    numberOfRobotPartsToRetreive + 1,
-                    numberOfRobotPartsToRetreive);
-            final ResultSet resultSet = listStatement.executeQuery();
-            final RobotPart[] robotParts = new RobotPart[numberOfRobotPartsToRetreive];
-            int arrayColumn = 0;
-            while (resultSet.next()) {
-                robotParts[arrayColumn] = createRobotPartFromResultSet(resultSet);
-                arrayColumn++;
+            listStatement.setString(1, robotPartSerialNumber);
+            listStatement.setInt(2, number);
+            final List<RobotPart> robotParts = new ArrayList<>();
+            try (ResultSet resultSet = listStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    robotParts.add(createRobotPartFromResultSet(resultSet));
+                }
             }
-            resultSet.close();
-            listStatement.close();
-            return robotParts;
+            dbCall.rowCount = robotParts.size();
+            return robotParts.toArray(new RobotPart[robotParts.size()]);
         } catch (final SQLException e) {
             throw new DbServiceException(
-                    "Could not list compatible robot parts from DB,", e);
+                    "Could not list reverse compatible robot parts from DB.",
+                    e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
         }
     }
 
+    /**
+     * @return True once the compatibilities table can be queried
+     */
+    public boolean isCompatibilityIndexReady() {
+        return compatibilityTable.isReady();
+    }
+
+    /**
+     * Copy the compatibilities of existing robot parts to the
+     * compatibilities table now, instead of waiting for the background
+     * migration.
+     */
+    protected void migrateCompatibilities() throws DbServiceException {
+        try {
+            compatibilityTable.migrate();
+        } catch (final SQLException e) {
+            throw new DbServiceException(
+                    "Could not migrate compatibilities.", e);
+        }
+    }
+
+    /**
+     * Smallest power of two greater than or equal to the given size.
+     */
+    protected static int inListBucketSize(final int size) {
+        int bucketSize = 1;
+        while (bucketSize < size) {
+            bucketSize <<= 1;
+        }
+        return bucketSize;
+    }
+
+    /**
+     * Bind the values of an IN-list of {@code inListSize} placeholders,
+     * repeating the last value to fill the remaining ones.
+     * @return Index of the next parameter
+     */
+    private static int setInListParameters(
+            final PreparedStatement statement,
+            final int firstParameterIndex,
+            final int inListSize,
+            final List<String> values)
+            throws SQLException {
+        for (int count = 0; count < inListSize; count++) {
+            statement.setString(
+                    firstParameterIndex + count,
+                    values.get(Math.min(count, values.size() - 1)));
+        }
+        return firstParameterIndex + inListSize;
+    }
+
+    private static String inListPlaceholders(final int size) {
+        final StringBuilder placeholders = new StringBuilder();
+        for (int count = 0; count < size; count++) {
+            if (count != 0) {
+                placeholders.append(", ");
+            }
+            placeholders.append('?');
+        }
+        return placeholders.toString();
+    }
+
     private String formatCompatibilities(final String[] compatibilities) {
         final StringBuffer formatedCompatibilities = new StringBuffer();
         boolean firstValue = true;
@@ -276,10 +1253,71 @@ public class DbService {
         return formatedCompatibilities.toString();
     }
 
-    private String[] extractCompatibilities(final String compatibilities) {
+    protected static String[] extractCompatibilities(
+            final String compatibilities) {
+        if (compatibilities == null || compatibilities.isEmpty()) {
+            return new String[0];
+        }
         return compatibilities.split(COMPATIBILITIES_SEPARATOR);
     }
 
+    /**
+     * @return Column of each field that an update request may change, by
+     * field name of the request
+     */
+    private static Map<String, String> updatableColumns() {
+        final Map<String, String> columns = new LinkedHashMap<>();
+        columns.put(Constants.NAME, NAME_COLUMN_NAME);
+        columns.put(Constants.SERIAL_NUMBER, SERIAL_NUMBER_COLUMN_NAME);
+        columns.put(Constants.MANUFACTURER, MANUFACTURER_COLUMN_NAME);
+        columns.put(Constants.WEIGHT, WEIGHT_COLUMN_NAME);
+        columns.put(Constants.COMPATIBILITIES, COMPATIBILITIES_COLUMN_NAME);
+        return Collections.unmodifiableMap(columns);
+    }
+
+    /**
+     * Compatibilities as sent in an update request: a JSON array is
+     * deserialized as a List, a JSON string is colon-separated.
+     */
+    private String[] toCompatibilities(
+            final Object valueOfField) throws IllegalArgumentException {
+        if (valueOfField instanceof String[]) {
+            return (String[]) valueOfField;
+        }
+        if (valueOfField instanceof Collection) {
+            final List<String> compatibilities = new ArrayList<>();
+            for (final Object serialNumber : (Collection<?>) valueOfField) {
+                compatibilities.add(String.valueOf(serialNumber));
+            }
+            return compatibilities.toArray(new String[compatibilities.size()]);
+        }
+        if (valueOfField instanceof String) {
+            return extractCompatibilities((String) valueOfField);
+        }
+        throw new IllegalArgumentException(
+                "Compatibilities must be an array of serial numbers.");
+    }
+
+    private static boolean columnExists(
+            final Connection connection,
+            final String tableName,
+            final String columnName)
+            throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        // Unquoted names are stored upper case by some databases.
+        for (final String[] names : new String[][] {
+                {tableName, columnName},
+                {tableName.toUpperCase(), columnName.toUpperCase()}}) {
+            try (ResultSet resultSet = metaData.getColumns(
+                    connection.getCatalog(), null, names[0], names[1])) {
+                if (resultSet.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private boolean robotPartExists(
             final String serialNumber) throws DbServiceException {
         final String selectString =
@@ -288,18 +1326,74 @@ public class DbService {
                 + " WHERE "
                 + SERIAL_NUMBER_COLUMN_NAME
                 + "= ?;";
+        final DbCall dbCall = startDbCall("robotPartExists", selectString);
+        final PooledConnection connection = borrowConnection();
         try {
             final PreparedStatement selectStatement
                     = connection.prepareStatement(selectString);
             selectStatement.setString(1, serialNumber);
-            final ResultSet resultSet = selectStatement.executeQuery();
-            final boolean robotPartExists = resultSet.next();
-            resultSet.close();
-            selectStatement.close();
+            final boolean robotPartExists;
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                robotPartExists = resultSet.next();
+            }
+            dbCall.rowCount = robotPartExists ? 1 : 0;
             return robotPartExists;
         } catch (final SQLException e) {
             throw new DbServiceException(
                     "Could not check if robot part exists in DB,", e);
+        } finally {
+            connectionPool.release(connection);
+            endDbCall(dbCall);
+        }
+    }
+
+    private void invalidateCachedRobotPart(final String serialNumber) {
+        if (robotPartCache != null) {
+            robotPartCache.invalidate(serialNumber);
+        }
+    }
+
+    /**
+     * Start timing a query, before borrowing its connection.
+     * @param query Name of the query
+     * @param sql Main statement of the query, may be set later
+     */
+    private static DbCall startDbCall(final String query, final String sql) {
+        RobotsEvents.DbQueryEvent event = null;
+        if (RobotsEvents.isAvailable()) {
+            event = new RobotsEvents.DbQueryEvent();
+            if (event.isEnabled()) {
+                event.begin();
+            } else {
+                event = null;
+            }
+        }
+        return new DbCall(query, sql, event);
+    }
+
+    /**
+     * Stop timing a query, after releasing its connection.
+     */
+    private void endDbCall(final DbCall dbCall) {
+        if (metrics != null) {
+            metrics.recordDbCall(
+                    dbCall.query,
+                    System.nanoTime() - dbCall.startNanos);
+        }
+        final RobotsEvents.DbQueryEvent event = dbCall.event;
+        if (event != null && event.shouldCommit()) {
+            event.query = dbCall.query;
+            event.sql = dbCall.sql;
+            event.rowCount = dbCall.rowCount;
+            event.commit();
+        }
+    }
+
+    private PooledConnection borrowConnection() throws DbServiceException {
+        try {
+            return connectionPool.borrow();
+        } catch (final SQLException e) {
+            throw new DbServiceException("Could not get a DB connection.", e);
         }
     }
 
@@ -315,18 +1409,64 @@ public class DbService {
             final String[] compatibilities
                     = extractCompatibilities(
                     resultSet.getString(COMPATIBILITIES_COLUMN_NAME));
+            final Long version = resultSet.getLong(VERSION_COLUMN_NAME);
             return new RobotPart(
                     name,
                     serialNumber,
                     manufacturer,
                     weight,
-                    compatibilities);
+                    compatibilities,
+                    version);
         } catch (final SQLException e) {
             throw new DbServiceException(
                     "Could not create robot parts from resultSet,", e);
         }
     }
 
+    public interface RobotPartHandler {
+        void handle(RobotPart robotPart) throws IOException;
+    }
+
+    /**
+     * Notified of the writes once they are committed, in the thread that
+     * made them.
+     */
+    public interface ChangeListener {
+        /**
+         * A robot part was added, or its compatibilities updated.
+         */
+        void compatibilitiesChanged(
+                String serialNumber, String[] compatibilities);
+
+        void robotPartRenamed(
+                String originalSerialNumber, String updatedSerialNumber);
+
+        void robotPartDeleted(String serialNumber);
+    }
+
+    /**
+     * Query being timed for {@link Metrics}, and recorded as a
+     * {@link RobotsEvents.DbQueryEvent} when JFR records those.
+     */
+    private static final class DbCall {
+        private final String query;
+        private final long startNanos;
+        // Null when the event is not recorded.
+        private final RobotsEvents.DbQueryEvent event;
+        private String sql;
+        private int rowCount;
+
+        private DbCall(
+                final String query,
+                final String sql,
+                final RobotsEvents.DbQueryEvent event) {
+            this.query = query;
+            this.sql = sql;
+            this.event = event;
+            this.startNanos = System.nanoTime();
+        }
+    }
+
     public class DbServiceException extends Exception {
         public DbServiceException(final String message) {
             super(message);
@@ -336,16 +1476,27 @@ public class DbService {
         }
     }
 
+    // The exceptions below are expected outcomes of a request, like an
+    // unknown serial number. They are thrown without a stack trace, which
+    // would cost more to fill in than the query.
+
     public class RessourceNotFoundException extends Exception {
         public RessourceNotFoundException(
                 final String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
 
     public class UpdateDbException extends Exception {
         public UpdateDbException(
                 final String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    public class VersionConflictException extends UpdateDbException {
+        public VersionConflictException(
+                final String message) {
             super(message);
         }
     }
@@ -353,14 +1504,21 @@ public class DbService {
     public class RessourceAlreadyExistsException extends Exception {
         public RessourceAlreadyExistsException(
                 final String message) {
-            super(message);
+            super(message, null, false, false);
+        }
+    }
+
+    public class IndexNotReadyException extends Exception {
+        public IndexNotReadyException(
+                final String message) {
+            super(message, null, false, false);
         }
     }
 
     public class IllegalArgumentException extends Exception {
         public IllegalArgumentException(
                 final String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
 }
@@ -0,0 +1,83 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.ws.rs.core.EntityTag;
+import models.RobotPart;
+
+/**
+ * Entity tags of robot parts, used by the GET endpoints for conditional
+ * requests.
+ *
+ * <p>The tag is a hash of the fields and of the version of the robot parts,
+ * so it changes whenever one of them is updated, or deleted and added again,
+ * and is computed without serializing the response. It is weak, since the
+ * JSON and Smile representations of the robot parts share it.
+ */
+public final class EntityTags {
+    private static final int TAG_LENGTH = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private EntityTags() {
+    }
+
+    public static EntityTag of(final RobotPart... robotParts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+        for (final RobotPart robotPart : robotParts) {
+            update(digest, robotPart.getSerialNumber());
+            update(digest, robotPart.getName());
+            update(digest, robotPart.getManufacturer());
+            update(digest, robotPart.getWeight());
+            update(digest, robotPart.getCompatibilities().length);
+            for (final String compatibility
+                    : robotPart.getCompatibilities()) {
+                update(digest, compatibility);
+            }
+            update(digest, robotPart.getVersion());
+        }
+        final byte[] hash = digest.digest();
+        final char[] tag = new char[TAG_LENGTH];
+        for (int index = 0; index < TAG_LENGTH / 2; index++) {
+            tag[2 * index] = HEX_DIGITS[(hash[index] >> 4) & 0xf];
+            tag[2 * index + 1] = HEX_DIGITS[hash[index] & 0xf];
+        }
+        return new EntityTag(new String(tag), true);
+    }
+
+    /**
+     * @param ifNoneMatch Value of the If-None-Match header, may be null
+     * @return True if the header matches the tag, i.e. the client already
+     * has this version of the resource
+     */
+    public static boolean matches(
+            final String ifNoneMatch, final EntityTag entityTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        final String quotedTag = "\"" + entityTag.getValue() + "\"";
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match uses the weak comparison.
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(quotedTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void update(
+            final MessageDigest digest, final Object value) {
+        digest.update(
+                String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        // Separator, so that ("ab", "c") and ("a", "bc") differ.
+        digest.update((byte) 0);
+    }
+}
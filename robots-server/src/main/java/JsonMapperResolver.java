@@ -0,0 +1,24 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Make Jersey write JSON responses with the same {@link ObjectMapper} as
+ * {@link RobotsResource}, instead of one of its own.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class JsonMapperResolver implements ContextResolver<ObjectMapper> {
+    private final ObjectMapper mapper;
+
+    public JsonMapperResolver(final ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public ObjectMapper getContext(final Class<?> type) {
+        return mapper;
+    }
+}
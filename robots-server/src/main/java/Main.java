@@ -1,35 +1,161 @@
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
 
 public class Main {
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
+    private static final int PORT = 8080;
+    private static final int JETTY_ACCEPTORS = 1;
+    private static final int JETTY_SELECTORS = 1;
 
     public static void main(final String[] args) {
+        if (Boolean.parseBoolean(
+                System.getProperty("robots.log.async", "true"))) {
+            AsyncLogHandler.install(
+                    Integer.getInteger("robots.log.queueSize", 10000));
+        }
+        final ConnectionPoolConfig poolConfig = ConnectionPoolConfig.defaults()
+                .withMinSize(Integer.getInteger(
+                        "robots.db.pool.minSize", 2))
+                .withMaxSize(Integer.getInteger(
+                        "robots.db.pool.maxSize", 20))
+                .withBorrowTimeoutMillis(Long.getLong(
+                        "robots.db.pool.borrowTimeoutMillis", 5000L))
+                .withIdleTimeoutMillis(Long.getLong(
+                        "robots.db.pool.idleTimeoutMillis", 600000L));
+        final boolean virtualThreads
+                = Boolean.getBoolean("robots.virtualThreads");
+        if (virtualThreads) {
+            if (!VirtualThreads.isSupported()) {
+                LOGGER.severe("robots.virtualThreads needs Java 21 or later.");
+                return;
+            }
+            // Every JDBC call holds a pooled connection, and the acceptor and
+            // selector threads of Jetty block in native code.
+            VirtualThreads.reserveCarrierThreads(
+                    poolConfig.getMaxSize()
+                            + JETTY_ACCEPTORS
+                            + JETTY_SELECTORS);
+        }
+        final int cacheMaxSize
+                = Integer.getInteger("robots.cache.maxSize", 0);
+        final RobotPartCache robotPartCache = cacheMaxSize <= 0
+                ? null
+                : new RobotPartCache(
+                        cacheMaxSize,
+                        Long.getLong("robots.cache.ttlMillis", 60000L),
+                        Long.getLong("robots.cache.missingTtlMillis", 5000L));
+        final Metrics metrics = new Metrics();
         final DbService dbService;
         try {
             dbService = new DbService(
-                    "jdbc:mysql://localhost:3306/robots?useSSL=false",
-                    "root",
-                    "root");
+                    new ConnectionPool(
+                            "jdbc:mysql://localhost:3306/robots"
+                                    + "?useSSL=false&useCursorFetch=true",
+                            "root",
+                            "root",
+                            poolConfig),
+                    robotPartCache,
+                    metrics);
         } catch (final SQLException e) {
             LOGGER.log(Level.SEVERE, "Could not connect to DB.", e);
             return;
         }
-        final RobotsResource robotsResource
-                = new RobotsResource(dbService, new ObjectMapper());
+        final CompatibilityGraph compatibilityGraph;
+        if (Boolean.getBoolean("robots.graph")) {
+            compatibilityGraph = new CompatibilityGraph();
+            dbService.addChangeListener(compatibilityGraph);
+            try {
+                compatibilityGraph.load(dbService);
+            } catch (final DbService.DbServiceException | IOException e) {
+                LOGGER.log(
+                        Level.SEVERE, "Could not load compatibility graph.", e);
+                return;
+            }
+            LOGGER.info("Compatibility graph loaded, "
+                    + compatibilityGraph.size() + " robot parts.");
+            scheduleReloads(
+                    compatibilityGraph,
+                    dbService,
+                    Long.getLong("robots.graph.reloadIntervalSeconds", 300L));
+        } else {
+            compatibilityGraph = null;
+        }
+        final ObjectMapper mapper = new ObjectMapper();
+        if (Boolean.getBoolean("robots.jackson.afterburner")) {
+            // Generated bytecode instead of reflection to access the models.
+            mapper.registerModule(new AfterburnerModule());
+        }
+        final RobotsResource robotsResource = new RobotsResource(
+                dbService,
+                mapper,
+                Boolean.getBoolean("robots.listAll.streaming"),
+                compatibilityGraph,
+                Integer.getInteger("robots.http.cacheMaxAgeSeconds", 0));
         final ResourceConfig resourceConfig = new ResourceConfig();
-        resourceConfig.register(robotsResource);
+        resourceConfig.register(new JsonMapperResolver(mapper));
+        resourceConfig.register(JacksonSmileProvider.class);
+        resourceConfig.register(new MetricsFilter(metrics));
+        resourceConfig.register(new MetricsResource(metrics));
+        if (RobotsEvents.isAvailable()) {
+            resourceConfig.register(RequestEventFilter.class);
+        }
+        resourceConfig.register(new AccessLogFilter(new AccessLog(
+                AccessLog.parseSampleRates(System.getProperty(
+                        "robots.accessLog.sampling",
+                        "success=0.01,notFound=0.1,"
+                                + "clientError=1,serverError=1")),
+                Integer.getInteger("robots.accessLog.maxPerSecond", 100))));
+        if (Boolean.getBoolean("robots.profiling")) {
+            if (!RobotsEvents.isAvailable()) {
+                LOGGER.severe("robots.profiling needs Java 8u262 or later.");
+                return;
+            }
+            resourceConfig.register(new ProfilingResource());
+        }
+        final boolean async = Boolean.getBoolean("robots.async");
+        if (async) {
+            // As many threads as connections, so that none of them waits
+            // for a connection.
+            resourceConfig.register(new AsyncRobotsResource(
+                    robotsResource,
+                    new DbExecutor(
+                            poolConfig.getMaxSize(),
+                            Integer.getInteger(
+                                    "robots.async.queueSize", 100),
+                            virtualThreads)));
+        } else {
+            resourceConfig.register(robotsResource);
+        }
         final ServletHolder servlet
                 = new ServletHolder(new ServletContainer(resourceConfig));
+        servlet.setAsyncSupported(async);
 
-        final Server server = new Server(8080);
+        final Server server;
+        if (virtualThreads) {
+            server = new Server(new ExecutorThreadPool(
+                    VirtualThreads.newThreadPerTaskExecutor("jetty-")));
+            final ServerConnector connector = new ServerConnector(
+                    server, JETTY_ACCEPTORS, JETTY_SELECTORS);
+            connector.setPort(PORT);
+            server.addConnector(connector);
+        } else {
+            server = new Server(PORT);
+        }
         final ServletContextHandler context
                 = new ServletContextHandler(server, "/*");
         context.addServlet(servlet, "/*");
@@ -40,4 +166,42 @@ public class Main {
             return;
         }
     }
+
+    /**
+     * Load the graph again at a fixed delay, so that it does not stay
+     * different from the DB, see {@link CompatibilityGraph}.
+     */
+    private static void scheduleReloads(
+            final CompatibilityGraph compatibilityGraph,
+            final DbService dbService,
+            final long intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        final ScheduledExecutorService loader
+                = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread
+                            = new Thread(runnable, "compatibility-graph");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        loader.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        compatibilityGraph.load(dbService);
+                    } catch (final DbService.DbServiceException
+                            | IOException
+                            | RuntimeException e) {
+                        // An exception escaping the task would cancel the
+                        // later reloads.
+                        LOGGER.log(
+                                Level.WARNING,
+                                "Could not reload compatibility graph.",
+                                e);
+                    }
+                },
+                intervalSeconds,
+                intervalSeconds,
+                TimeUnit.SECONDS);
+    }
 }
@@ -0,0 +1,264 @@
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts and latencies per endpoint, and DB call latencies per
+ * {@link DbService} query, served in the Prometheus text format by
+ * {@link MetricsResource}, along with what the {@link Collector}s read at
+ * scrape time.
+ *
+ * <p>Recording is cheap enough to stay on in production: it looks up an
+ * existing entry without locking and adds to {@link LongAdder}s, so
+ * concurrent requests neither block nor allocate. Only the first request
+ * of an endpoint, and the scrapes, take locks.
+ */
+public class Metrics {
+    // protected for unit tests
+    protected static final String UNMATCHED_ENDPOINT = "unmatched";
+    private static final int MAX_STATUS = 599;
+    // Upper bounds of the latency buckets, in seconds.
+    private static final double[] BUCKET_BOUNDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025,
+        0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final ConcurrentHashMap<String, EndpointMetrics> endpoints;
+    private final ConcurrentHashMap<String, Histogram> dbCalls;
+    private final List<Collector> collectors;
+
+    public Metrics() {
+        this.endpoints = new ConcurrentHashMap<>();
+        this.dbCalls = new ConcurrentHashMap<>();
+        this.collectors = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Add metrics that are read when scraped rather than recorded, such as
+     * the occupancy of the connection pool.
+     */
+    public void addCollector(final Collector collector) {
+        collectors.add(collector);
+    }
+
+    /**
+     * @param endpoint Name of the resource method, or
+     *                 {@link #UNMATCHED_ENDPOINT}
+     * @param status HTTP status of the response
+     * @param durationNanos Time from the request to the response headers
+     */
+    public void recordRequest(
+            final String endpoint,
+            final int status,
+            final long durationNanos) {
+        EndpointMetrics endpointMetrics = endpoints.get(endpoint);
+        if (endpointMetrics == null) {
+            // computeIfAbsent locks even when the entry exists, on Java 8.
+            endpointMetrics = endpoints.computeIfAbsent(
+                    endpoint, name -> new EndpointMetrics());
+        }
+        endpointMetrics.record(status, durationNanos);
+    }
+
+    /**
+     * @param query Name of the {@link DbService} query
+     * @param durationNanos Time from borrowing a connection to releasing it
+     */
+    public void recordDbCall(final String query, final long durationNanos) {
+        Histogram histogram = dbCalls.get(query);
+        if (histogram == null) {
+            histogram = dbCalls.computeIfAbsent(
+                    query, name -> new Histogram());
+        }
+        histogram.record(durationNanos);
+    }
+
+    /**
+     * @return Every metric in the Prometheus text exposition format,
+     * version 0.0.4
+     */
+    public String scrape() {
+        final Map<String, EndpointMetrics> sortedEndpoints
+                = new TreeMap<>(endpoints);
+        final StringBuilder text = new StringBuilder();
+        text.append("# HELP robots_http_requests_total"
+                + " Requests served, by endpoint and status.\n");
+        text.append("# TYPE robots_http_requests_total counter\n");
+        for (final Map.Entry<String, EndpointMetrics> entry
+                : sortedEndpoints.entrySet()) {
+            final AtomicReferenceArray<LongAdder> statusCounts
+                    = entry.getValue().statusCounts;
+            for (int status = 0; status <= MAX_STATUS; status++) {
+                final LongAdder count = statusCounts.get(status);
+                if (count != null) {
+                    text.append("robots_http_requests_total{endpoint=\"")
+                            .append(entry.getKey())
+                            .append("\",status=\"")
+                            .append(status)
+                            .append("\"} ")
+                            .append(count.sum())
+                            .append('\n');
+                }
+            }
+        }
+        text.append("# HELP robots_http_request_duration_seconds"
+                + " Time to the response headers, by endpoint.\n");
+        text.append("# TYPE robots_http_request_duration_seconds"
+                + " histogram\n");
+        for (final Map.Entry<String, EndpointMetrics> entry
+                : sortedEndpoints.entrySet()) {
+            entry.getValue().latency.write(
+                    text,
+                    "robots_http_request_duration_seconds",
+                    "endpoint=\"" + entry.getKey() + "\"");
+        }
+        text.append("# HELP robots_db_call_duration_seconds"
+                + " Time a connection is held, by query. For streamAll it"
+                + " includes writing the rows to the HTTP client.\n");
+        text.append("# TYPE robots_db_call_duration_seconds histogram\n");
+        for (final Map.Entry<String, Histogram> entry
+                : new TreeMap<>(dbCalls).entrySet()) {
+            entry.getValue().write(
+                    text,
+                    "robots_db_call_duration_seconds",
+                    "query=\"" + entry.getKey() + "\"");
+        }
+        for (final Collector collector : collectors) {
+            collector.collect(text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Append a metric with a single sample and no labels.
+     * @param type "counter" or "gauge"
+     */
+    public static void writeSample(
+            final StringBuilder text,
+            final String name,
+            final String type,
+            final String help,
+            final Number value) {
+        text.append("# HELP ").append(name).append(' ').append(help)
+                .append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type)
+                .append('\n');
+        text.append(name)
+                .append(' ')
+                .append(value instanceof Double
+                        ? String.format(Locale.ROOT, "%.6f", value)
+                        : value.toString())
+                .append('\n');
+    }
+
+    /**
+     * Source of metrics read at scrape time.
+     */
+    public interface Collector {
+        /**
+         * Append the metrics in the Prometheus text format, see
+         * {@link #writeSample}.
+         */
+        void collect(StringBuilder text);
+    }
+
+    private static class EndpointMetrics {
+        private final AtomicReferenceArray<LongAdder> statusCounts;
+        private final Histogram latency;
+
+        private EndpointMetrics() {
+            this.statusCounts = new AtomicReferenceArray<>(MAX_STATUS + 1);
+            this.latency = new Histogram();
+        }
+
+        private void record(final int status, final long durationNanos) {
+            final int index = status < 0 || status > MAX_STATUS ? 0 : status;
+            LongAdder count = statusCounts.get(index);
+            if (count == null) {
+                statusCounts.compareAndSet(index, null, new LongAdder());
+                count = statusCounts.get(index);
+            }
+            count.increment();
+            latency.record(durationNanos);
+        }
+    }
+
+    /**
+     * Latency histogram with fixed buckets. Bucket counts are kept per
+     * bucket and only made cumulative when written.
+     */
+    private static class Histogram {
+        private static final long[] BUCKET_BOUNDS_NANOS = boundsNanos();
+
+        // One more than the bounds, for the +Inf bucket.
+        private final LongAdder[] bucketCounts;
+        private final LongAdder sumNanos;
+
+        private Histogram() {
+            this.bucketCounts = new LongAdder[BUCKET_BOUNDS.length + 1];
+            for (int index = 0; index < bucketCounts.length; index++) {
+                bucketCounts[index] = new LongAdder();
+            }
+            this.sumNanos = new LongAdder();
+        }
+
+        private void record(final long durationNanos) {
+            int index = 0;
+            while (index < BUCKET_BOUNDS_NANOS.length
+                    && durationNanos > BUCKET_BOUNDS_NANOS[index]) {
+                index++;
+            }
+            bucketCounts[index].increment();
+            sumNanos.add(durationNanos);
+        }
+
+        private void write(
+                final StringBuilder text,
+                final String name,
+                final String labels) {
+            long cumulativeCount = 0;
+            for (int index = 0; index < bucketCounts.length; index++) {
+                cumulativeCount += bucketCounts[index].sum();
+                text.append(name)
+                        .append("_bucket{")
+                        .append(labels)
+                        .append(",le=\"")
+                        .append(index < BUCKET_BOUNDS.length
+                                ? Double.toString(BUCKET_BOUNDS[index])
+                                : "+Inf")
+                        .append("\"} ")
+                        .append(cumulativeCount)
+                        .append('\n');
+            }
+            text.append(name)
+                    .append("_sum{")
+                    .append(labels)
+                    .append("} ")
+                    .append(String.format(Locale.ROOT, "%.6f",
+                            sumNanos.sum() / 1e9))
+                    .append('\n');
+            // The +Inf bucket, so that both agree while requests are being
+            // recorded.
+            text.append(name)
+                    .append("_count{")
+                    .append(labels)
+                    .append("} ")
+                    .append(cumulativeCount)
+                    .append('\n');
+        }
+
+        private static long[] boundsNanos() {
+            final long[] boundsNanos = new long[BUCKET_BOUNDS.length];
+            for (int index = 0; index < BUCKET_BOUNDS.length; index++) {
+                boundsNanos[index] = (long) (BUCKET_BOUNDS[index]
+                        * TimeUnit.SECONDS.toNanos(1));
+            }
+            return boundsNanos;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.lang.reflect.Method;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+
+/**
+ * Record the count, status and latency of every request in {@link Metrics},
+ * under the name of the resource method that served it. Streamed bodies,
+ * like the one of "list-all" in streaming mode, are written after the
+ * latency is recorded.
+ */
+@PreMatching
+public class MetricsFilter
+        implements ContainerRequestFilter, ContainerResponseFilter {
+    // protected for unit tests
+    protected static final String START_NANOS_PROPERTY
+            = "robots.metrics.startNanos";
+
+    private final Metrics metrics;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public MetricsFilter(final Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // protected for unit tests
+    protected MetricsFilter(
+            final Metrics metrics, final ResourceInfo resourceInfo) {
+        this.metrics = metrics;
+        this.resourceInfo = resourceInfo;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_NANOS_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(
+            final ContainerRequestContext requestContext,
+            final ContainerResponseContext responseContext) {
+        final Object startNanos
+                = requestContext.getProperty(START_NANOS_PROPERTY);
+        if (startNanos == null) {
+            // Aborted by a filter that ran before this one.
+            return;
+        }
+        final Method resourceMethod = resourceInfo.getResourceMethod();
+        metrics.recordRequest(
+                resourceMethod == null
+                        ? Metrics.UNMATCHED_ENDPOINT
+                        : resourceMethod.getName(),
+                responseContext.getStatus(),
+                System.nanoTime() - (Long) startNanos);
+    }
+}
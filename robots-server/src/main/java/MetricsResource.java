@@ -0,0 +1,29 @@
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * Scrape endpoint of the {@link Metrics}, served in both the sync and the
+ * async mode, from the request thread.
+ */
+@Path("/")
+public class MetricsResource {
+    // protected for unit tests
+    protected static final String PATH_METRICS = "metrics";
+    protected static final String PROMETHEUS_TEXT_TYPE
+            = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+
+    public MetricsResource(final Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GET
+    @Path(PATH_METRICS)
+    @Produces(PROMETHEUS_TEXT_TYPE)
+    public Response getMetrics() {
+        return Response.ok(metrics.scrape()).build();
+    }
+}
@@ -0,0 +1,70 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import lombok.Getter;
+
+/**
+ * A physical JDBC connection owned by a {@link ConnectionPool}.
+ * It is used by one thread at a time, between
+ * {@link ConnectionPool#borrow()} and {@link ConnectionPool#release}.
+ */
+public class PooledConnection {
+    @Getter
+    private final Connection connection;
+
+    @Getter
+    private final long createdAtNanos;
+
+    @Getter
+    private volatile long lastUsedAtNanos;
+
+    private final StatementCache statementCache;
+
+    protected PooledConnection(
+            final Connection connection,
+            final StatementCache statementCache) {
+        this.connection = connection;
+        this.statementCache = statementCache;
+        this.createdAtNanos = System.nanoTime();
+        this.lastUsedAtNanos = createdAtNanos;
+    }
+
+    /**
+     * Prepare a statement through the statement cache of this connection.
+     * The returned statement is reused by later callers and must not be
+     * closed, only its result sets.
+     */
+    public PreparedStatement prepareStatement(
+            final String sql) throws SQLException {
+        return statementCache.prepareStatement(sql);
+    }
+
+    protected void touch() {
+        lastUsedAtNanos = System.nanoTime();
+    }
+
+    protected boolean isValid(final int timeoutSeconds) {
+        try {
+            return connection.isValid(timeoutSeconds);
+        } catch (final SQLException e) {
+            return false;
+        }
+    }
+
+    protected boolean isClosed() {
+        try {
+            return connection.isClosed();
+        } catch (final SQLException e) {
+            return true;
+        }
+    }
+
+    protected void close() {
+        statementCache.close();
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            // The connection is being discarded anyway.
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import models.JsonMessage;
+
+/**
+ * Start and stop a Java Flight Recorder recording without restarting the
+ * server. The recording uses the "profile" settings of the JVM, with the
+ * {@link RobotsEvents}, and is bounded in time and size: it stops by
+ * itself after its duration, and keeps at most its max size on disk.
+ *
+ * <p>At most one recording runs at a time. Stopping it answers the
+ * recording file, which can be opened with JDK Mission Control or
+ * "jfr print".
+ */
+@Path("/")
+public class ProfilingResource {
+    private static final Logger LOGGER
+            = Logger.getLogger(ProfilingResource.class.getName());
+    // protected for unit tests
+    protected static final String PATH_START = "profiling/start";
+    protected static final String PATH_STOP = "profiling/stop";
+    protected static final int MAX_DURATION_SECONDS = 600;
+    protected static final long MAX_SIZE_BYTES = 100L * 1024 * 1024;
+    private static final String SETTINGS = "profile";
+
+    private Recording recording;
+
+    /**
+     * @param durationSeconds Time after which the recording stops by
+     *                        itself, at most {@link #MAX_DURATION_SECONDS}
+     */
+    @POST
+    @Path(PATH_START)
+    @Produces(MediaType.APPLICATION_JSON)
+    public synchronized Response start(
+            @QueryParam("durationSeconds") @DefaultValue("60")
+            final int durationSeconds) {
+        if (durationSeconds <= 0 || durationSeconds > MAX_DURATION_SECONDS) {
+            return formatJsonResponse(
+                    400,
+                    "Bad request. durationSeconds must be between 1 and "
+                            + MAX_DURATION_SECONDS + ".");
+        }
+        if (recording != null) {
+            return formatJsonResponse(
+                    409, "A recording is already started, stop it first.");
+        }
+        final Recording newRecording;
+        try {
+            newRecording = new Recording(
+                    Configuration.getConfiguration(SETTINGS));
+        } catch (final IOException | ParseException e) {
+            LOGGER.log(Level.WARNING, "Could not read JFR settings.", e);
+            return formatJsonResponse(500, "Internal Server error");
+        }
+        newRecording.setName("robots");
+        newRecording.setDuration(Duration.ofSeconds(durationSeconds));
+        newRecording.setMaxSize(MAX_SIZE_BYTES);
+        newRecording.setToDisk(true);
+        newRecording.start();
+        recording = newRecording;
+        LOGGER.info("JFR recording started for "
+                + durationSeconds + " seconds.");
+        return formatJsonResponse(200, "OK");
+    }
+
+    /**
+     * Stop the recording, if it did not stop by itself, and answer its
+     * file.
+     */
+    @POST
+    @Path(PATH_STOP)
+    @Produces({MediaType.APPLICATION_OCTET_STREAM, MediaType.APPLICATION_JSON})
+    public synchronized Response stop() {
+        if (recording == null) {
+            return formatJsonResponse(404, "No recording started.");
+        }
+        final Recording stoppedRecording = recording;
+        recording = null;
+        final File file;
+        try {
+            if (stoppedRecording.getState() == RecordingState.RUNNING) {
+                stoppedRecording.stop();
+            }
+            file = File.createTempFile("robots-", ".jfr");
+            stoppedRecording.dump(file.toPath());
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Could not dump JFR recording.", e);
+            return formatJsonResponse(500, "Internal Server error");
+        } finally {
+            stoppedRecording.close();
+        }
+        LOGGER.info("JFR recording stopped.");
+        final StreamingOutput output = outputStream -> {
+            try {
+                Files.copy(file.toPath(), outputStream);
+            } finally {
+                Files.delete(file.toPath());
+            }
+        };
+        return Response
+                .ok(output, MediaType.APPLICATION_OCTET_STREAM_TYPE)
+                .header(
+                        HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"robots.jfr\"")
+                .build();
+    }
+
+    private Response formatJsonResponse(
+            final Integer httpCode, final String message) {
+        return Response
+                .status(httpCode)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(new JsonMessage(message))
+                .build();
+    }
+}
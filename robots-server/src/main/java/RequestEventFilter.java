@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Emit a {@link RobotsEvents.RequestEvent} per request, and a
+ * {@link RobotsEvents.EncodeEvent} per response body.
+ */
+@PreMatching
+public class RequestEventFilter implements
+        ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+    // protected for unit tests
+    protected static final String EVENT_PROPERTY = "robots.jfr.requestEvent";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public RequestEventFilter() {
+    }
+
+    // protected for unit tests
+    protected RequestEventFilter(final ResourceInfo resourceInfo) {
+        this.resourceInfo = resourceInfo;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext) {
+        final RobotsEvents.RequestEvent event
+                = new RobotsEvents.RequestEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.begin();
+        requestContext.setProperty(EVENT_PROPERTY, event);
+    }
+
+    @Override
+    public void filter(
+            final ContainerRequestContext requestContext,
+            final ContainerResponseContext responseContext) {
+        final RobotsEvents.RequestEvent event = (RobotsEvents.RequestEvent)
+                requestContext.getProperty(EVENT_PROPERTY);
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        final Method resourceMethod = resourceInfo.getResourceMethod();
+        event.endpoint = resourceMethod == null
+                ? Metrics.UNMATCHED_ENDPOINT
+                : resourceMethod.getName();
+        event.method = requestContext.getMethod();
+        event.path = requestContext.getUriInfo().getPath();
+        event.status = responseContext.getStatus();
+        event.commit();
+    }
+
+    @Override
+    public void aroundWriteTo(final WriterInterceptorContext context)
+            throws IOException {
+        final RobotsEvents.EncodeEvent event = new RobotsEvents.EncodeEvent();
+        event.begin();
+        try {
+            context.proceed();
+        } finally {
+            if (event.shouldCommit()) {
+                event.mediaType = String.valueOf(context.getMediaType());
+                event.entityType = context.getType().getSimpleName();
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import models.RobotPart;
+
+/**
+ * Bounded on-heap cache of robot parts by serial number, used by
+ * {@link DbService#read} as a read-through cache.
+ *
+ * <p>Entries expire after a time-to-live and the least recently used entry
+ * is evicted once the cache is full. Serial numbers that do not exist in the
+ * DB are cached too, with their own (usually shorter) time-to-live.
+ *
+ * <p>Writers must call {@link #invalidate} once their write is done. A read
+ * that started before an invalidation is not cached, see
+ * {@link #currentVersion()}.
+ */
+public class RobotPartCache {
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final long missingTimeToLiveNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder missingHits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private long version;
+
+    /**
+     * @param maxSize Maximum number of cached serial numbers
+     * @param timeToLiveMillis Time a cached robot part stays valid
+     * @param missingTimeToLiveMillis Time an unknown serial number stays
+     *                                cached, 0 disables negative caching
+     */
+    public RobotPartCache(
+            final int maxSize,
+            final long timeToLiveMillis,
+            final long missingTimeToLiveMillis) {
+        this.maxSize = maxSize;
+        this.timeToLiveNanos
+                = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+        this.missingTimeToLiveNanos
+                = TimeUnit.MILLISECONDS.toNanos(missingTimeToLiveMillis);
+        this.hits = new LongAdder();
+        this.missingHits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Entry> eldest) {
+                if (size() > RobotPartCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return The cached entry, or null if the serial number is not cached
+     * or its entry expired
+     */
+    public Entry get(final String serialNumber) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(serialNumber);
+            if (entry != null && entry.expiresAtNanos - System.nanoTime() < 0) {
+                entries.remove(serialNumber);
+                misses.increment();
+                return null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+        } else if (entry.isMissing()) {
+            missingHits.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Version to capture before reading from the DB and to pass to
+     * {@link #put} or {@link #putMissing} afterwards.
+     */
+    public synchronized long currentVersion() {
+        return version;
+    }
+
+    /**
+     * Cache a robot part read from the DB, unless an invalidation happened
+     * since {@code readVersion} was captured.
+     */
+    public void put(final RobotPart robotPart, final long readVersion) {
+        store(robotPart.getSerialNumber(),
+                new Entry(robotPart, System.nanoTime() + timeToLiveNanos),
+                readVersion);
+    }
+
+    /**
+     * Remember that a serial number does not exist in the DB, unless an
+     * invalidation happened since {@code readVersion} was captured.
+     */
+    public void putMissing(final String serialNumber, final long readVersion) {
+        if (missingTimeToLiveNanos <= 0) {
+            return;
+        }
+        store(serialNumber,
+                new Entry(null, System.nanoTime() + missingTimeToLiveNanos),
+                readVersion);
+    }
+
+    public synchronized void invalidate(final String serialNumber) {
+        version++;
+        entries.remove(serialNumber);
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        entries.clear();
+    }
+
+    public Stats getStats() {
+        final int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return new Stats(
+                size,
+                maxSize,
+                hits.sum(),
+                missingHits.sum(),
+                misses.sum(),
+                evictions.sum());
+    }
+
+    private synchronized void store(
+            final String serialNumber,
+            final Entry entry,
+            final long readVersion) {
+        if (readVersion == version) {
+            entries.put(serialNumber, entry);
+        }
+    }
+
+    public static class Entry {
+        /**
+         * Null when the serial number does not exist in the DB.
+         */
+        @Getter
+        private final RobotPart robotPart;
+
+        private final long expiresAtNanos;
+
+        private Entry(final RobotPart robotPart, final long expiresAtNanos) {
+            this.robotPart = robotPart;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        public boolean isMissing() {
+            return robotPart == null;
+        }
+    }
+
+    public static class Stats {
+        @Getter
+        private final int size;
+
+        @Getter
+        private final int maxSize;
+
+        @Getter
+        private final long hits;
+
+        @Getter
+        private final long missingHits;
+
+        @Getter
+        private final long misses;
+
+        @Getter
+        private final long evictions;
+
+        public Stats(
+                final int size,
+                final int maxSize,
+                final long hits,
+                final long missingHits,
+                final long misses,
+                final long evictions) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.missingHits = missingHits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * Share of lookups answered from the cache, negative entries
+         * included.
+         */
+        public double getHitRatio() {
+            final long lookups = hits + missingHits + misses;
+            return lookups == 0 ? 0 : (double) (hits + missingHits) / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size
+                    + ", maxSize=" + maxSize
+                    + ", hits=" + hits
+                    + ", missingHits=" + missingHits
+                    + ", misses=" + misses
+                    + ", evictions=" + evictions
+                    + ", hitRatio=" + getHitRatio();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the request lifecycle, to tell in a
+ * recording where the time of a slow request went.
+ *
+ * <p>Events are cheap when no recording is running: they are only filled
+ * in when {@link Event#shouldCommit()} is true. They do not record stack
+ * traces, JFR's own sampling does that.
+ *
+ * <p>The event classes need the JFR API of Java 8u262 or later. On other
+ * JVMs they cannot be loaded, so callers check {@link #isAvailable()}
+ * before creating one and do without the event otherwise.
+ */
+public final class RobotsEvents {
+    private static final String CATEGORY = "Robots";
+    private static final boolean AVAILABLE = isJfrPresent();
+
+    private RobotsEvents() {
+    }
+
+    /**
+     * @return True if the running JVM has the JFR API, so that the events
+     * can be used
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean isJfrPresent() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (final ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Name("robots.Request")
+    @Label("Request")
+    @Description("Request, from before matching to the response headers")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class RequestEvent extends Event {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("HTTP Method")
+        String method;
+
+        @Label("Path")
+        String path;
+
+        @Label("Status")
+        int status;
+    }
+
+    @Name("robots.Decode")
+    @Label("Request Decode")
+    @Description("Binding of a request body by Jackson")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class DecodeEvent extends Event {
+        @Label("Endpoint")
+        String endpoint;
+    }
+
+    @Name("robots.Encode")
+    @Label("Response Encode")
+    @Description("Writing of a response body, streamed ones included")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class EncodeEvent extends Event {
+        @Label("Media Type")
+        String mediaType;
+
+        @Label("Entity Type")
+        String entityType;
+    }
+
+    @Name("robots.DbQuery")
+    @Label("DB Query")
+    @Description("DbService query, from borrowing a connection to releasing"
+            + " it")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class DbQueryEvent extends Event {
+        @Label("Query")
+        String query;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Row Count")
+        @Description("Rows read or written")
+        int rowCount;
+    }
+
+    @Name("robots.DbExecutorWait")
+    @Label("DB Executor Wait")
+    @Description("Time an async request waited for a DB executor thread")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class DbExecutorWaitEvent extends Event {
+        @Label("Queue Depth")
+        @Description("Tasks queued when this one was submitted")
+        int queueDepth;
+    }
+}
@@ -1,222 +1,1116 @@
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.core.Response;
+import models.BulkAddResult;
+import models.Constants;
 import models.DeleteRequest;
 import models.JsonMessage;
 import models.ListCompatibleRequest;
+import models.PatchRequest;
+import models.ReadManyRequest;
+import models.ReachableRequest;
+import models.ReadManyResponse;
 import models.ReadRequest;
 import models.RobotPart;
+import models.RobotPartPage;
+import models.ShortestPathRequest;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import lombok.Getter;
 import models.UpdateRequest;
 
 @Path("/")
 public class RobotsResource {
     private static final Logger LOGGER
             = Logger.getLogger(RobotsResource.class.getName());
-    private static final String PATH_ADD = "add";
-    private static final String PATH_READ = "read";
-    private static final String PATH_UPDATE = "update";
-    private static final String PATH_DELETE = "delete";
-    private static final String PATH_LIST_ALL = "list-all";
-    private static final String PATH_LIST_COMPATIBLE = "list-compatible";
+    // protected for AsyncRobotsResource, which serves the same paths
+    protected static final String PATH_ADD = "add";
+    protected static final String PATH_READ = "read";
+    protected static final String PATH_UPDATE = "update";
+    protected static final String PATH_PATCH = "patch";
+    protected static final String PATH_DELETE = "delete";
+    protected static final String PATH_LIST_ALL = "list-all";
+    protected static final String PATH_LIST_COMPATIBLE = "list-compatible";
+    protected static final String PATH_LIST_PAGE = "list-page";
+    protected static final String PATH_BULK_ADD = "bulk-add";
+    private static final int MAX_BULK_ADD_SIZE = 10000;
+    protected static final String PATH_READ_MANY = "read-many";
+    protected static final String PATH_LIST_REVERSE_COMPATIBLE
+            = "list-reverse-compatible";
+    private static final int MAX_READ_MANY_SIZE = 10000;
+    protected static final String PATH_LIST_REACHABLE = "list-reachable";
+    protected static final String PATH_SHORTEST_PATH = "shortest-path";
+    private static final int MAX_GRAPH_DEPTH = 10;
+    protected static final String PATH_ROBOT_PART
+            = "robot-parts/{serialNumber}";
+    protected static final String PATH_ROBOT_PART_COMPATIBLE
+            = "robot-parts/{serialNumber}/compatible";
+    protected static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final MediaType SMILE_TYPE
+            = MediaType.valueOf(SmileMediaTypes.APPLICATION_JACKSON_SMILE);
 
     private final DbService dbService;
-    private final ObjectMapper mapper;
+    private final BodyReader treeReader;
+    private final BodyReader robotPartReader;
+    private final BodyReader readRequestReader;
+    private final BodyReader readManyRequestReader;
+    private final BodyReader updateRequestReader;
+    private final BodyReader patchRequestReader;
+    private final BodyReader deleteRequestReader;
+    private final BodyReader listCompatibleRequestReader;
+    private final BodyReader reachableRequestReader;
+    private final BodyReader shortestPathRequestReader;
+    private final ObjectWriter robotPartJsonWriter;
+    private final ObjectWriter robotPartSmileWriter;
+    private final boolean streamListAll;
+    private final CompatibilityGraph compatibilityGraph;
+    private final CacheControl cacheControl;
 
     public RobotsResource(
             final DbService dbService, final ObjectMapper mapper) {
+        this(dbService, mapper, false);
+    }
+
+    /**
+     * @param streamListAll If true, "list-all" writes the robot parts to the
+     *                      response as they are read from the DB instead of
+     *                      building the whole array first
+     */
+    public RobotsResource(
+            final DbService dbService,
+            final ObjectMapper mapper,
+            final boolean streamListAll) {
+        this(dbService, mapper, streamListAll, null);
+    }
+
+    /**
+     * @param compatibilityGraph Graph answering "list-reachable" and
+     *                           "shortest-path", null to disable them
+     */
+    public RobotsResource(
+            final DbService dbService,
+            final ObjectMapper mapper,
+            final boolean streamListAll,
+            final CompatibilityGraph compatibilityGraph) {
+        this(dbService, mapper, streamListAll, compatibilityGraph, 0);
+    }
+
+    /**
+     * @param cacheMaxAgeSeconds Time HTTP caches may serve a GET response
+     *                           without revalidating it with its ETag
+     */
+    public RobotsResource(
+            final DbService dbService,
+            final ObjectMapper mapper,
+            final boolean streamListAll,
+            final CompatibilityGraph compatibilityGraph,
+            final int cacheMaxAgeSeconds) {
         this.dbService = dbService;
-        this.mapper = mapper;
+        // Built once: readers and writers are immutable and cache what they
+        // resolved about their type.
+        this.treeReader = new BodyReader(mapper, JsonNode.class);
+        this.robotPartReader = new BodyReader(mapper, RobotPart.class);
+        this.readRequestReader = new BodyReader(mapper, ReadRequest.class);
+        this.readManyRequestReader
+                = new BodyReader(mapper, ReadManyRequest.class);
+        this.updateRequestReader = new BodyReader(mapper, UpdateRequest.class);
+        this.patchRequestReader = new BodyReader(mapper, PatchRequest.class);
+        this.deleteRequestReader = new BodyReader(mapper, DeleteRequest.class);
+        this.listCompatibleRequestReader
+                = new BodyReader(mapper, ListCompatibleRequest.class);
+        this.reachableRequestReader
+                = new BodyReader(mapper, ReachableRequest.class);
+        this.shortestPathRequestReader
+                = new BodyReader(mapper, ShortestPathRequest.class);
+        // Flushing after each robot part would defeat the output buffer.
+        this.robotPartJsonWriter = mapper.writerFor(RobotPart.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.robotPartSmileWriter = new ObjectMapper(new SmileFactory())
+                .writerFor(RobotPart.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.streamListAll = streamListAll;
+        this.compatibilityGraph = compatibilityGraph;
+        this.cacheControl = new CacheControl();
+        this.cacheControl.setMaxAge(cacheMaxAgeSeconds);
+        this.cacheControl.setMustRevalidate(true);
+        this.cacheControl.setNoTransform(false);
     }
 
     @POST
     @Path(PATH_ADD)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response add(final String request) {
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response add(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeAdd(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #add}.
+     */
+    protected DecodedRequest decodeAdd(
+            final InputStream request,
+            final MediaType contentType) {
         final RobotPart robotPart;
         try {
-            robotPart = mapper.readValue(request, RobotPart.class);
+            robotPart = decode("add", robotPartReader, request, contentType);
         } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING,
-                    "Could not read \"add\" request:" + request,
+                    Level.FINE,
+                    "Could not read \"add\" request.",
                     e);
-            return formatJsonResponse(422, "Unprocessable Entity");
+            return answered(422, "Unprocessable Entity");
         }
+        return DecodedRequest.work(() -> {
+            try {
+                dbService.add(robotPart);
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while adding to DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            } catch (DbService.RessourceAlreadyExistsException e) {
+                LOGGER.log(
+                        Level.FINE, "Exception thrown while adding to DB.", e);
+                return formatJsonResponse(
+                        400, "Bad request. Item already exists.");
+            }
+            return formatJsonResponse(200, "OK");
+        });
+    }
+
+    /**
+     * Add an array of robot parts. Each item is added, or not, on its own:
+     * the response holds one result per item, in the request order.
+     */
+    @POST
+    @Path(PATH_BULK_ADD)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response bulkAdd(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeBulkAdd(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #bulkAdd}.
+     */
+    protected DecodedRequest decodeBulkAdd(
+            final InputStream request,
+            final MediaType contentType) {
+        final JsonNode items;
         try {
-            dbService.add(robotPart);
-        } catch (DbService.DbServiceException e) {
-            LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
-            return formatJsonResponse(500, "Internal Server error");
-        } catch (DbService.RessourceAlreadyExistsException e) {
+            items = decode("bulkAdd", treeReader, request, contentType);
+        } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
-            return formatJsonResponse(
-                    400, "Bad request. Item already exists.");
+                    Level.FINE, "Could not read \"bulkAdd\" request.", e);
+            return answered(422, "Unprocessable Entity");
+        }
+        if (items == null || !items.isArray()) {
+            return answered(422, "Unprocessable Entity");
         }
-        return formatJsonResponse(200, "OK");
+        if (items.size() > MAX_BULK_ADD_SIZE) {
+            return answered(
+                    400,
+                    "Bad request. At most "
+                            + MAX_BULK_ADD_SIZE + " items per request.");
+        }
+        final BulkAddResult[] results = new BulkAddResult[items.size()];
+        final List<RobotPart> robotParts = new ArrayList<>(items.size());
+        final List<Integer> robotPartIndexes = new ArrayList<>(items.size());
+        for (int index = 0; index < items.size(); index++) {
+            final JsonNode item = items.get(index);
+            try {
+                robotParts.add(robotPartReader.readValue(item));
+                robotPartIndexes.add(index);
+            } catch (final IOException e) {
+                results[index] = new BulkAddResult(
+                        item.path(Constants.SERIAL_NUMBER).asText(null),
+                        BulkAddResult.Status.INVALID,
+                        "Malformed robot part.");
+            }
+        }
+        return DecodedRequest.work(() -> {
+            final BulkAddResult[] addResults;
+            try {
+                addResults = dbService.addAll(robotParts);
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while adding to DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            }
+            for (int count = 0; count < addResults.length; count++) {
+                results[robotPartIndexes.get(count)] = addResults[count];
+            }
+            return Response.ok(results).build();
+        });
     }
 
     @POST
     @Path(PATH_READ)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response read(final String request) {
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response read(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeRead(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #read}.
+     */
+    protected DecodedRequest decodeRead(
+            final InputStream request,
+            final MediaType contentType) {
         final ReadRequest readRequest;
         try {
             readRequest
-                    = mapper.readValue(request, ReadRequest.class);
+                    = decode("read", readRequestReader, request, contentType);
         } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING,
-                    "Could not read \"read\" request:" + request,
+                    Level.FINE,
+                    "Could not read \"read\" request.",
                     e);
-            return formatJsonResponse(422, "Unprocessable Entity");
+            return answered(422, "Unprocessable Entity");
         }
+        return DecodedRequest.work(() -> {
+            final RobotPart robotPart;
+            try {
+                robotPart = dbService.read(readRequest.getSerialNumber());
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while adding to DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            } catch (DbService.RessourceNotFoundException e) {
+                LOGGER.log(
+                        Level.FINE, "Exception thrown while adding to DB.", e);
+                return formatJsonResponse(404, "Item not found.");
+            }
+            return Response.ok(robotPart).build();
+        });
+    }
+
+    /**
+     * Cacheable equivalent of "read". Answers 304 without a body when the
+     * If-None-Match header holds the current ETag of the robot part.
+     */
+    @GET
+    @Path(PATH_ROBOT_PART)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response getRobotPart(
+            @PathParam(Constants.SERIAL_NUMBER)
+            final String serialNumber,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH)
+            final String ifNoneMatch) {
         final RobotPart robotPart;
         try {
-            robotPart = dbService.read(readRequest.getSerialNumber());
+            robotPart = dbService.read(serialNumber);
         } catch (DbService.DbServiceException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
+                    Level.WARNING, "Exception thrown while reading DB.", e);
             return formatJsonResponse(500, "Internal Server error");
         } catch (DbService.RessourceNotFoundException e) {
+            return formatJsonResponse(404, "Item not found.");
+        }
+        return formatCacheableResponse(
+                robotPart, EntityTags.of(robotPart), ifNoneMatch);
+    }
+
+    /**
+     * Cacheable equivalent of "list-compatible".
+     */
+    @GET
+    @Path(PATH_ROBOT_PART_COMPATIBLE)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response getCompatibleRobotParts(
+            @PathParam(Constants.SERIAL_NUMBER)
+            final String serialNumber,
+            @QueryParam(Constants.NUMBER)
+            @DefaultValue("" + DEFAULT_PAGE_SIZE)
+            final Integer number,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH)
+            final String ifNoneMatch) {
+        if (number == null || number < 1 || number > MAX_PAGE_SIZE) {
+            return formatJsonResponse(
+                    400,
+                    "Bad request. Number must be between 1 and "
+                            + MAX_PAGE_SIZE + ".");
+        }
+        final RobotPart[] robotParts;
+        try {
+            robotParts = dbService.listCompatible(serialNumber, number);
+        } catch (DbService.DbServiceException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
+                    Level.WARNING, "Exception thrown while reading DB.", e);
+            return formatJsonResponse(500, "Internal Server error");
+        } catch (DbService.RessourceNotFoundException e) {
             return formatJsonResponse(404, "Item not found.");
         }
-        return Response.ok(robotPart, MediaType.APPLICATION_JSON_TYPE).build();
+        return formatCacheableResponse(
+                robotParts, EntityTags.of(robotParts), ifNoneMatch);
+    }
+
+    /**
+     * Read many robot parts in one request. The found robot parts are
+     * returned in the order of the request, the serial numbers that do not
+     * exist are listed apart.
+     */
+    @POST
+    @Path(PATH_READ_MANY)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response readMany(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeReadMany(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #readMany}.
+     */
+    protected DecodedRequest decodeReadMany(
+            final InputStream request,
+            final MediaType contentType) {
+        final ReadManyRequest readManyRequest;
+        try {
+            readManyRequest = decode(
+                    "readMany", readManyRequestReader, request, contentType);
+        } catch (final IOException e) {
+            LOGGER.log(
+                    Level.FINE,
+                    "Could not read \"readMany\" request.",
+                    e);
+            return answered(422, "Unprocessable Entity");
+        }
+        if (readManyRequest.getSerialNumbers() == null) {
+            return answered(422, "Unprocessable Entity");
+        }
+        final List<String> serialNumbers
+                = Arrays.asList(readManyRequest.getSerialNumbers());
+        if (serialNumbers.size() > MAX_READ_MANY_SIZE) {
+            return answered(
+                    400,
+                    "Bad request. At most "
+                            + MAX_READ_MANY_SIZE + " serial numbers.");
+        }
+        return DecodedRequest.work(() -> {
+            final Map<String, RobotPart> foundRobotParts;
+            try {
+                foundRobotParts = dbService.readMany(serialNumbers);
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING, "Exception thrown while reading DB.", e);
+                return formatJsonResponse(500, "Internal Server error");
+            }
+            final List<RobotPart> robotParts = new ArrayList<>();
+            final List<String> missingSerialNumbers = new ArrayList<>();
+            for (final String serialNumber
+                    : new LinkedHashSet<>(serialNumbers)) {
+                final RobotPart robotPart = foundRobotParts.get(serialNumber);
+                if (robotPart == null) {
+                    missingSerialNumbers.add(serialNumber);
+                } else {
+                    robotParts.add(robotPart);
+                }
+            }
+            final ReadManyResponse readManyResponse = new ReadManyResponse(
+                    robotParts.toArray(new RobotPart[robotParts.size()]),
+                    missingSerialNumbers.toArray(
+                            new String[missingSerialNumbers.size()]));
+            return Response.ok(readManyResponse).build();
+        });
     }
 
     @POST
     @Path(PATH_UPDATE)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response update(final String request) {
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response update(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeUpdate(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #update}.
+     */
+    protected DecodedRequest decodeUpdate(
+            final InputStream request,
+            final MediaType contentType) {
         final UpdateRequest updateRequest;
         try {
-            updateRequest = mapper.readValue(request, UpdateRequest.class);
+            updateRequest = decode(
+                    "update", updateRequestReader, request, contentType);
         } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING,
-                    "Could not read \"add\" request:" + request,
+                    Level.FINE,
+                    "Could not read \"update\" request.",
                     e);
-            return formatJsonResponse(422, "Unprocessable Entity");
+            return answered(422, "Unprocessable Entity");
         }
+        return DecodedRequest.work(() -> {
+            try {
+                dbService.update(
+                        updateRequest.getOriginalSerialNumber(),
+                        updateRequest.getFieldToUpdate(),
+                        updateRequest.getValueOfField(),
+                        updateRequest.getExpectedVersion());
+            } catch (DbService.VersionConflictException e) {
+                return formatJsonResponse(
+                        409, "Conflict. Item was modified concurrently.");
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while adding to DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            } catch (DbService.RessourceNotFoundException e) {
+                LOGGER.log(
+                        Level.FINE, "Exception thrown while adding to DB.", e);
+                return formatJsonResponse(404, "Item not found.");
+            } catch (DbService.UpdateDbException e) {
+                LOGGER.log(
+                        Level.FINE, "Exception thrown while adding to DB.", e);
+                return formatJsonResponse(
+                        400,
+                        "Bad request. New serial number already exists.");
+            } catch (DbService.IllegalArgumentException e) {
+                return formatJsonResponse(
+                        400,
+                        "Bad request. Unrecognized field.");
+            }
+            return formatJsonResponse(200, "OK");
+        });
+    }
+
+    /**
+     * Update several fields of a robot part at once: either all of them
+     * are updated, or none.
+     */
+    @POST
+    @Path(PATH_PATCH)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response patch(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodePatch(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #patch}.
+     */
+    protected DecodedRequest decodePatch(
+            final InputStream request,
+            final MediaType contentType) {
+        final PatchRequest patchRequest;
         try {
-            dbService.update(
-                    updateRequest.getOriginalSerialNumber(),
-                    updateRequest.getFieldToUpdate(),
-                    updateRequest.getValueOfField());
-        } catch (DbService.DbServiceException e) {
-            LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
-            return formatJsonResponse(500, "Internal Server error");
-        } catch (DbService.RessourceNotFoundException e) {
-            LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
-            return formatJsonResponse(404, "Item not found.");
-        } catch (DbService.UpdateDbException e) {
+            patchRequest = decode(
+                    "patch", patchRequestReader, request, contentType);
+        } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
-            return formatJsonResponse(
-                    400,
-                    "Bad request. New serial number already exists.");
-        } catch (DbService.IllegalArgumentException e) {
-            return formatJsonResponse(
-                    400,
-                    "Bad request. Unrecognized field.");
+                    Level.FINE,
+                    "Could not read \"patch\" request.",
+                    e);
+            return answered(422, "Unprocessable Entity");
+        }
+        if (patchRequest.getFields() == null) {
+            return answered(422, "Unprocessable Entity");
         }
-        return formatJsonResponse(200, "OK");
+        return DecodedRequest.work(() -> {
+            try {
+                dbService.patch(
+                        patchRequest.getOriginalSerialNumber(),
+                        patchRequest.getFields(),
+                        patchRequest.getExpectedVersion());
+            } catch (DbService.VersionConflictException e) {
+                return formatJsonResponse(
+                        409, "Conflict. Item was modified concurrently.");
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while updating DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            } catch (DbService.RessourceNotFoundException e) {
+                return formatJsonResponse(404, "Item not found.");
+            } catch (DbService.UpdateDbException e) {
+                return formatJsonResponse(
+                        400,
+                        "Bad request. New serial number already exists.");
+            } catch (DbService.IllegalArgumentException e) {
+                return formatJsonResponse(
+                        400,
+                        "Bad request. " + e.getMessage() + ".");
+            }
+            return formatJsonResponse(200, "OK");
+        });
     }
 
     @POST
     @Path(PATH_DELETE)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response delete(final String request) {
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response delete(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeDelete(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #delete}.
+     */
+    protected DecodedRequest decodeDelete(
+            final InputStream request,
+            final MediaType contentType) {
         final DeleteRequest deleteRequest;
         try {
-            deleteRequest
-                    = mapper.readValue(request, DeleteRequest.class);
+            deleteRequest = decode(
+                    "delete", deleteRequestReader, request, contentType);
         } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING,
-                    "Could not read \"read\" request:" + request,
+                    Level.FINE,
+                    "Could not read \"delete\" request.",
                     e);
-            return formatJsonResponse(422, "Unprocessable Entity");
+            return answered(422, "Unprocessable Entity");
+        }
+        return DecodedRequest.work(() -> {
+            try {
+                dbService.delete(deleteRequest.getSerialNumber());
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while adding to DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            }
+            return formatJsonResponse(200, "OK");
+        });
+    }
+
+    @GET
+    @Path(PATH_LIST_ALL)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response listAll(
+            @HeaderParam(HttpHeaders.ACCEPT) final String accept) {
+        if (streamListAll) {
+            // Written by hand, so the media type is negotiated here.
+            if (prefersSmile(accept)) {
+                return Response
+                        .ok(streamAllRobotParts(robotPartSmileWriter),
+                                SMILE_TYPE)
+                        .build();
+            }
+            return Response
+                    .ok(streamAllRobotParts(robotPartJsonWriter),
+                            MediaType.APPLICATION_JSON_TYPE)
+                    .build();
         }
+        final RobotPart[] robotParts;
         try {
-            dbService.delete(deleteRequest.getSerialNumber());
+            robotParts = dbService.listAll();
         } catch (DbService.DbServiceException e) {
             LOGGER.log(
                     Level.WARNING, "Exception thrown while adding to DB.", e);
             return formatJsonResponse(500, "Internal Server error");
         }
-        return formatJsonResponse(200, "OK");
+        return Response.ok(robotParts).build();
     }
 
+    /**
+     * One page of robot parts, ordered by serial number. The response holds
+     * a continuation token to pass back to get the next page, none on the
+     * last page.
+     */
     @GET
-    @Path(PATH_LIST_ALL)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response listAll() {
+    @Path(PATH_LIST_PAGE)
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response listPage(
+            @QueryParam(Constants.CONTINUATION_TOKEN)
+            final String continuationToken,
+            @QueryParam(Constants.LIMIT)
+            @DefaultValue("" + DEFAULT_PAGE_SIZE)
+            final Integer limit) {
+        if (limit == null || limit < 1 || limit > MAX_PAGE_SIZE) {
+            return formatJsonResponse(
+                    400,
+                    "Bad request. Limit must be between 1 and "
+                            + MAX_PAGE_SIZE + ".");
+        }
+        final String afterSerialNumber;
+        try {
+            afterSerialNumber = continuationToken == null
+                    ? null : decodeContinuationToken(continuationToken);
+        } catch (final IllegalArgumentException e) {
+            return formatJsonResponse(
+                    400, "Bad request. Invalid continuation token.");
+        }
         final RobotPart[] robotParts;
         try {
-            robotParts = dbService.listAll();
+            // One extra row tells whether there is a next page.
+            robotParts = dbService.listPage(afterSerialNumber, limit + 1);
         } catch (DbService.DbServiceException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
+                    Level.WARNING, "Exception thrown while reading DB.", e);
             return formatJsonResponse(500, "Internal Server error");
         }
-        return Response
-                .ok(robotParts, MediaType.APPLICATION_JSON_TYPE)
-                .build();
+        final RobotPartPage robotPartPage;
+        if (robotParts.length > limit) {
+            robotPartPage = new RobotPartPage(
+                    Arrays.copyOf(robotParts, limit),
+                    encodeContinuationToken(
+                            robotParts[limit - 1].getSerialNumber()));
+        } else {
+            robotPartPage = new RobotPartPage(robotParts, null);
+        }
+        return Response.ok(robotPartPage).build();
     }
 
     @POST
     @Path(PATH_LIST_COMPATIBLE)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response listCompatible(final String request) {
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response listCompatible(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeListCompatible(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #listCompatible}.
+     */
+    protected DecodedRequest decodeListCompatible(
+            final InputStream request,
+            final MediaType contentType) {
         final ListCompatibleRequest listCompatibleRequest;
         try {
-            listCompatibleRequest = mapper.readValue(request, ListCompatibleRequest.class);
+            listCompatibleRequest = decode(
+                    "listCompatible",
+                    listCompatibleRequestReader,
+                    request,
+                    contentType);
         } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING,
-                    "Could not read \"listCompatible\" request:" + request,
+                    Level.FINE,
+                    "Could not read \"listCompatible\" request.",
                     e);
-            return formatJsonResponse(422, "Unprocessable Entity");
+            return answered(422, "Unprocessable Entity");
         }
-        final RobotPart[] robotParts;
+        return DecodedRequest.work(() -> {
+            final RobotPart[] robotParts;
+            try {
+                robotParts = dbService.listCompatible(
+                        listCompatibleRequest.getSerialNumber(),
+                        listCompatibleRequest.getNumber());
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while adding to DB.",
+                        e);
+                return formatJsonResponse(500, "Internal Server error");
+            } catch (DbService.RessourceNotFoundException e) {
+                LOGGER.log(
+                        Level.FINE, "Exception thrown while adding to DB.", e);
+                return formatJsonResponse(404, "Item not found.");
+            }
+
+            return Response.ok(robotParts).build();
+        });
+    }
+
+    /**
+     * List the robot parts that are compatible with the given serial number,
+     * i.e. that have it among their compatibilities.
+     */
+    @POST
+    @Path(PATH_LIST_REVERSE_COMPATIBLE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response listReverseCompatible(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeListReverseCompatible(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #listReverseCompatible}.
+     */
+    protected DecodedRequest decodeListReverseCompatible(
+            final InputStream request,
+            final MediaType contentType) {
+        final ListCompatibleRequest listCompatibleRequest;
         try {
-            robotParts = dbService.listCompatible(
-                    listCompatibleRequest.getSerialNumber(),
-                    listCompatibleRequest.getNumber());
-        } catch (DbService.DbServiceException e) {
+            listCompatibleRequest = decode(
+                    "listReverseCompatible",
+                    listCompatibleRequestReader,
+                    request,
+                    contentType);
+        } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
-            return formatJsonResponse(500, "Internal Server error");
-        } catch (DbService.RessourceNotFoundException e) {
+                    Level.FINE,
+                    "Could not read \"listReverseCompatible\" request.",
+                    e);
+            return answered(422, "Unprocessable Entity");
+        }
+        return DecodedRequest.work(() -> {
+            final RobotPart[] robotParts;
+            try {
+                robotParts = dbService.listReverseCompatible(
+                        listCompatibleRequest.getSerialNumber(),
+                        listCompatibleRequest.getNumber());
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING, "Exception thrown while reading DB.", e);
+                return formatJsonResponse(500, "Internal Server error");
+            } catch (DbService.IndexNotReadyException e) {
+                return Response
+                        .fromResponse(formatJsonResponse(
+                                503, "Compatibility index is being built."))
+                        .header(HttpHeaders.RETRY_AFTER, 30)
+                        .build();
+            }
+            return Response.ok(robotParts).build();
+        });
+    }
+
+    /**
+     * List the robot parts reachable from a robot part within a number of
+     * compatibility hops, closest first.
+     */
+    @POST
+    @Path(PATH_LIST_REACHABLE)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response listReachable(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeListReachable(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #listReachable}.
+     */
+    protected DecodedRequest decodeListReachable(
+            final InputStream request,
+            final MediaType contentType) {
+        if (compatibilityGraph == null) {
+            return answered(501, "Not Implemented");
+        }
+        final ReachableRequest reachableRequest;
+        try {
+            reachableRequest = decode(
+                    "listReachable",
+                    reachableRequestReader,
+                    request,
+                    contentType);
+        } catch (final IOException e) {
             LOGGER.log(
-                    Level.WARNING, "Exception thrown while adding to DB.", e);
+                    Level.FINE,
+                    "Could not read \"listReachable\" request.",
+                    e);
+            return answered(422, "Unprocessable Entity");
+        }
+        if (reachableRequest.getMaxDepth() < 1
+                || reachableRequest.getMaxDepth() > MAX_GRAPH_DEPTH
+                || reachableRequest.getNumber() < 1
+                || reachableRequest.getNumber() > MAX_PAGE_SIZE) {
+            return answered(
+                    400,
+                    "Bad request. Depth must be between 1 and "
+                            + MAX_GRAPH_DEPTH
+                            + ", number between 1 and "
+                            + MAX_PAGE_SIZE
+                            + ".");
+        }
+        return DecodedRequest.work(() -> {
+            final List<String> serialNumbers = compatibilityGraph.reachable(
+                    reachableRequest.getSerialNumber(),
+                    reachableRequest.getMaxDepth(),
+                    reachableRequest.getNumber());
+            return formatRobotPartsResponse(serialNumbers);
+        });
+    }
+
+    /**
+     * Find a shortest chain of compatible robot parts between two robot
+     * parts, both included. The chain is empty if there is none within the
+     * given number of hops.
+     */
+    @POST
+    @Path(PATH_SHORTEST_PATH)
+    @Consumes({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    @Produces({MediaType.APPLICATION_JSON,
+            SmileMediaTypes.APPLICATION_JACKSON_SMILE})
+    public Response shortestPath(
+            final InputStream request,
+            @HeaderParam(HttpHeaders.CONTENT_TYPE)
+            final MediaType contentType) {
+        return decodeShortestPath(request, contentType).answer();
+    }
+
+    /**
+     * Decoding step of {@link #shortestPath}.
+     */
+    protected DecodedRequest decodeShortestPath(
+            final InputStream request,
+            final MediaType contentType) {
+        if (compatibilityGraph == null) {
+            return answered(501, "Not Implemented");
+        }
+        final ShortestPathRequest shortestPathRequest;
+        try {
+            shortestPathRequest = decode(
+                    "shortestPath",
+                    shortestPathRequestReader,
+                    request,
+                    contentType);
+        } catch (final IOException e) {
+            LOGGER.log(
+                    Level.FINE,
+                    "Could not read \"shortestPath\" request.",
+                    e);
+            return answered(422, "Unprocessable Entity");
+        }
+        if (shortestPathRequest.getMaxDepth() < 1
+                || shortestPathRequest.getMaxDepth() > MAX_GRAPH_DEPTH) {
+            return answered(
+                    400,
+                    "Bad request. Depth must be between 1 and "
+                            + MAX_GRAPH_DEPTH
+                            + ".");
+        }
+        return DecodedRequest.work(() -> {
+            final List<String> serialNumbers = compatibilityGraph.shortestPath(
+                    shortestPathRequest.getFromSerialNumber(),
+                    shortestPathRequest.getToSerialNumber(),
+                    shortestPathRequest.getMaxDepth());
+            return formatRobotPartsResponse(serialNumbers);
+        });
+    }
+
+    /**
+     * Read the robot parts of a graph query result, keeping its order.
+     * @param serialNumbers Result of the query, null if a robot part of the
+     *                      query does not exist
+     */
+    private Response formatRobotPartsResponse(
+            final List<String> serialNumbers) {
+        if (serialNumbers == null) {
             return formatJsonResponse(404, "Item not found.");
         }
+        final Map<String, RobotPart> foundRobotParts;
+        try {
+            foundRobotParts = dbService.readMany(serialNumbers);
+        } catch (DbService.DbServiceException e) {
+            LOGGER.log(
+                    Level.WARNING, "Exception thrown while reading DB.", e);
+            return formatJsonResponse(500, "Internal Server error");
+        }
+        final List<RobotPart> robotParts = new ArrayList<>();
+        for (final String serialNumber : serialNumbers) {
+            // Deleted since the graph was queried.
+            final RobotPart robotPart = foundRobotParts.get(serialNumber);
+            if (robotPart != null) {
+                robotParts.add(robotPart);
+            }
+        }
+        return Response
+                .ok(robotParts.toArray(new RobotPart[robotParts.size()]))
+                .build();
+    }
+
+    private static String encodeContinuationToken(
+            final String lastSerialNumber) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                lastSerialNumber.getBytes(StandardCharsets.UTF_8));
+    }
 
+    private static String decodeContinuationToken(
+            final String continuationToken) {
+        return new String(
+                Base64.getUrlDecoder().decode(continuationToken),
+                StandardCharsets.UTF_8);
+    }
+
+    private StreamingOutput streamAllRobotParts(
+            final ObjectWriter robotPartWriter) {
+        return output -> {
+            final JsonGenerator generator
+                    = robotPartWriter.getFactory().createGenerator(output);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            try {
+                dbService.streamAll(robotPart
+                        -> robotPartWriter.writeValue(generator, robotPart));
+            } catch (DbService.DbServiceException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "Exception thrown while streaming from DB.",
+                        e);
+                // Only fails the request if nothing was sent yet, otherwise
+                // the client gets a truncated array.
+                throw new WebApplicationException(e, 500);
+            }
+            generator.writeEndArray();
+            generator.close();
+        };
+    }
+
+    private Response formatCacheableResponse(
+            final Object entity,
+            final EntityTag entityTag,
+            final String ifNoneMatch) {
+        if (EntityTags.matches(ifNoneMatch, entityTag)) {
+            return Response
+                    .notModified(entityTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
         return Response
-                .ok(robotParts, MediaType.APPLICATION_JSON_TYPE)
+                .ok(entity)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .tag(entityTag)
+                .cacheControl(cacheControl)
                 .build();
     }
 
+    /**
+     * @param accept Value of the Accept header, may be null
+     * @return True if Smile is accepted with a higher quality than JSON
+     */
+    private static boolean prefersSmile(final String accept) {
+        if (accept == null) {
+            return false;
+        }
+        double jsonQuality = 0;
+        double smileQuality = 0;
+        for (final String value : accept.split(",")) {
+            final MediaType mediaType;
+            try {
+                mediaType = MediaType.valueOf(value.trim());
+            } catch (final IllegalArgumentException e) {
+                continue;
+            }
+            final String qualityParameter = mediaType.getParameters().get("q");
+            double quality;
+            try {
+                quality = qualityParameter == null
+                        ? 1 : Double.parseDouble(qualityParameter);
+            } catch (final NumberFormatException e) {
+                quality = 0;
+            }
+            // Wildcards are served JSON, the first produced media type.
+            if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                jsonQuality = Math.max(jsonQuality, quality);
+            } else if (mediaType.isCompatible(SMILE_TYPE)) {
+                smileQuality = Math.max(smileQuality, quality);
+            }
+        }
+        return smileQuality > jsonQuality;
+    }
+
+    /**
+     * Bind a request body, in a {@link RobotsEvents.DecodeEvent}.
+     * @param endpoint Name of the endpoint reading the request
+     * @param contentType Media type of the body, Smile or else JSON
+     */
+    private static <T> T decode(
+            final String endpoint,
+            final BodyReader bodyReader,
+            final InputStream request,
+            final MediaType contentType)
+            throws IOException {
+        final ObjectReader reader = bodyReader.forType(contentType);
+        if (!RobotsEvents.isAvailable()) {
+            return reader.readValue(request);
+        }
+        final RobotsEvents.DecodeEvent event = new RobotsEvents.DecodeEvent();
+        event.begin();
+        try {
+            return reader.readValue(request);
+        } finally {
+            if (event.shouldCommit()) {
+                event.endpoint = endpoint;
+                event.commit();
+            }
+        }
+    }
+
     private Response formatJsonResponse(
             final Integer httpCode, final String message) {
         final JsonMessage jsonMessage = new JsonMessage(message);
@@ -225,4 +1119,74 @@ public class RobotsResource {
                 .type(MediaType.APPLICATION_JSON_TYPE)
                 .entity(jsonMessage).build();
     }
+
+    private DecodedRequest answered(
+            final Integer httpCode, final String message) {
+        return DecodedRequest.answered(formatJsonResponse(httpCode, message));
+    }
+
+    /**
+     * Request whose body is decoded, and checked as far as possible
+     * without the DB. It is either answered already, e.g. when the body is
+     * malformed, or holds the work answering it.
+     *
+     * <p>Splitting the two lets {@link AsyncRobotsResource} read the body
+     * on the request thread, and only hand the work to its executor.
+     */
+    protected static final class DecodedRequest {
+        @Getter
+        private final Response response;
+
+        @Getter
+        private final Supplier<Response> work;
+
+        private DecodedRequest(
+                final Response response, final Supplier<Response> work) {
+            this.response = response;
+            this.work = work;
+        }
+
+        protected static DecodedRequest answered(final Response response) {
+            return new DecodedRequest(response, null);
+        }
+
+        protected static DecodedRequest work(final Supplier<Response> work) {
+            return new DecodedRequest(null, work);
+        }
+
+        /**
+         * @return The response, doing the work if there is any
+         */
+        protected Response answer() {
+            return response != null ? response : work.get();
+        }
+    }
+
+    /**
+     * Readers of a request body type, one per format, so that Smile bodies
+     * are bound as they are read, like JSON ones.
+     */
+    private static final class BodyReader {
+        private final ObjectReader jsonReader;
+        private final ObjectReader smileReader;
+
+        private BodyReader(final ObjectMapper mapper, final Class<?> type) {
+            this.jsonReader = mapper.readerFor(type);
+            // Keeps the configuration and modules of the mapper.
+            this.smileReader = jsonReader.with(new SmileFactory());
+        }
+
+        private ObjectReader forType(final MediaType contentType) {
+            return contentType != null && SMILE_TYPE.isCompatible(contentType)
+                    ? smileReader
+                    : jsonReader;
+        }
+
+        /**
+         * Bind a tree decoded already, whatever its format was.
+         */
+        private <T> T readValue(final JsonNode tree) throws IOException {
+            return jsonReader.readValue(tree);
+        }
+    }
 }
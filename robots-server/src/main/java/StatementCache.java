@@ -0,0 +1,76 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least-recently-used cache of the prepared statements of one connection,
+ * keyed by SQL string. Like its connection, it is only used by one thread at
+ * a time. Statements evicted from the cache are closed.
+ */
+public class StatementCache {
+    private final Connection connection;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    protected StatementCache(
+            final Connection connection,
+            final int maxSize,
+            final LongAdder hits,
+            final LongAdder misses) {
+        this.connection = connection;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements
+                = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return the cached statement for this SQL string, preparing it on
+     * first use. The statement must not be closed by the caller.
+     */
+    protected PreparedStatement prepareStatement(
+            final String sql) throws SQLException {
+        final PreparedStatement cachedStatement = statements.get(sql);
+        if (cachedStatement != null && !cachedStatement.isClosed()) {
+            hits.increment();
+            return cachedStatement;
+        }
+        misses.increment();
+        final PreparedStatement statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        return statement;
+    }
+
+    protected int size() {
+        return statements.size();
+    }
+
+    protected void close() {
+        for (final PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(final PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (final SQLException e) {
+            // The statement is not used anymore.
+        }
+    }
+}
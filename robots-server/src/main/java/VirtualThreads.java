@@ -0,0 +1,80 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 and later. The server is still
+ * built for Java 8, so they are looked up by reflection and only used when
+ * it runs on a recent enough JVM.
+ */
+public final class VirtualThreads {
+    private static final String PARALLELISM_PROPERTY
+            = "jdk.virtualThreadScheduler.parallelism";
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return True if the running JVM has virtual threads
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param namePrefix Prefix of the thread names, followed by a counter
+     * @return Executor starting a new virtual thread per task
+     * @throws UnsupportedOperationException If the JVM has no virtual
+     * threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(
+            final String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads need Java 21 or later.");
+        }
+        try {
+            // Through the public interfaces, the builder classes are not.
+            final Object builder = Class
+                    .forName("java.lang.Thread$Builder$OfVirtual")
+                    .getMethod("name", String.class, long.class)
+                    .invoke(Thread.class.getMethod("ofVirtual").invoke(null),
+                            namePrefix,
+                            0L);
+            final ThreadFactory threadFactory = (ThreadFactory) Class
+                    .forName("java.lang.Thread$Builder")
+                    .getMethod("factory")
+                    .invoke(builder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (final ReflectiveOperationException e) {
+            throw new UnsupportedOperationException(
+                    "Could not create virtual threads.", e);
+        }
+    }
+
+    /**
+     * Make sure that virtual threads blocked while pinned to their carrier
+     * thread cannot take all the carrier threads. A virtual thread is
+     * pinned while it blocks in a synchronized block, which the MySQL driver
+     * does around its socket I/O, and the scheduler does not start more
+     * carriers to compensate. Must be called before the first virtual
+     * thread is started; does nothing if the parallelism is already set.
+     * @param maxPinnedThreads Max number of virtual threads pinned at once,
+     *                         e.g. the max size of the connection pool
+     */
+    public static void reserveCarrierThreads(final int maxPinnedThreads) {
+        if (System.getProperty(PARALLELISM_PROPERTY) == null) {
+            System.setProperty(
+                    PARALLELISM_PROPERTY,
+                    Integer.toString(Runtime.getRuntime().availableProcessors()
+                            + maxPinnedThreads));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BulkAddResult {
+    public enum Status {
+        @JsonProperty("created")
+        CREATED,
+        @JsonProperty("duplicate")
+        DUPLICATE,
+        @JsonProperty("invalid")
+        INVALID,
+        /**
+         * Not stored because of a server-side failure, such as no DB
+         * connection being available: retrying later may succeed.
+         */
+        @JsonProperty("not_stored")
+        NOT_STORED
+    }
+
+    /**
+     * Null when the item was too malformed to read its serial number.
+     */
+    @JsonProperty(Constants.SERIAL_NUMBER)
+    @Getter
+    private final String serialNumber;
+
+    @JsonProperty(Constants.STATUS)
+    @Getter
+    private final Status status;
+
+    @JsonProperty(Constants.MESSAGE)
+    @Getter
+    private final String message;
+
+    @JsonCreator
+    public BulkAddResult(
+            @JsonProperty(Constants.SERIAL_NUMBER)
+            final String serialNumber,
+            @JsonProperty(value = Constants.STATUS, required = true)
+            final Status status,
+            @JsonProperty(Constants.MESSAGE)
+            final String message) {
+        this.serialNumber = serialNumber;
+        this.status = status;
+        this.message = message;
+    }
+}
@@ -12,4 +12,16 @@ public class Constants {
     public static final String UPDATED_SERIAL_NUMBER = "updatedSerialNumber";
     public static final String FIELD_TO_UPDATE = "fieldToUpdate";
     public static final String VALUE_OF_FIELD = "valueOfField";
+    public static final String ROBOT_PARTS = "robotParts";
+    public static final String CONTINUATION_TOKEN = "continuationToken";
+    public static final String LIMIT = "limit";
+    public static final String STATUS = "status";
+    public static final String SERIAL_NUMBERS = "serialNumbers";
+    public static final String MISSING_SERIAL_NUMBERS = "missingSerialNumbers";
+    public static final String MAX_DEPTH = "maxDepth";
+    public static final String FROM_SERIAL_NUMBER = "fromSerialNumber";
+    public static final String TO_SERIAL_NUMBER = "toSerialNumber";
+    public static final String VERSION = "version";
+    public static final String EXPECTED_VERSION = "expectedVersion";
+    public static final String FIELDS = "fields";
 }
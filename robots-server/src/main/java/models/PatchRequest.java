@@ -0,0 +1,45 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Map;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PatchRequest {
+    @JsonProperty(Constants.ORIGINAL_SERIAL_NUMBER)
+    @Getter
+    private final String originalSerialNumber;
+
+    /**
+     * Updated values by field name, e.g. {@link Constants#NAME}.
+     */
+    @JsonProperty(Constants.FIELDS)
+    @Getter
+    private final Map<String, Object> fields;
+
+    /**
+     * Version the robot part must still have for the update to happen,
+     * null to update it whatever its version.
+     */
+    @JsonProperty(Constants.EXPECTED_VERSION)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Getter
+    private final Long expectedVersion;
+
+    @JsonCreator
+    public PatchRequest(
+            @JsonProperty(
+                    value = Constants.ORIGINAL_SERIAL_NUMBER, required = true)
+            final String originalSerialNumber,
+            @JsonProperty(value = Constants.FIELDS, required = true)
+            final Map<String, Object> fields,
+            @JsonProperty(Constants.EXPECTED_VERSION)
+            final Long expectedVersion) {
+        this.originalSerialNumber = originalSerialNumber;
+        this.fields = fields;
+        this.expectedVersion = expectedVersion;
+    }
+}
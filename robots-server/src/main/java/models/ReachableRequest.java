@@ -0,0 +1,32 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReachableRequest {
+    @JsonProperty(Constants.SERIAL_NUMBER)
+    @Getter
+    private final String serialNumber;
+
+    @JsonProperty(Constants.MAX_DEPTH)
+    @Getter
+    private final Integer maxDepth;
+
+    @JsonProperty(Constants.NUMBER)
+    @Getter
+    private final Integer number;
+
+    public ReachableRequest(
+            @JsonProperty(value = Constants.SERIAL_NUMBER, required = true)
+            final String serialNumber,
+            @JsonProperty(value = Constants.MAX_DEPTH, required = true)
+            final Integer maxDepth,
+            @JsonProperty(value = Constants.NUMBER, required = true)
+            final Integer number) {
+        this.serialNumber = serialNumber;
+        this.maxDepth = maxDepth;
+        this.number = number;
+    }
+}
@@ -0,0 +1,20 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReadManyRequest {
+    @JsonProperty(Constants.SERIAL_NUMBERS)
+    @Getter
+    private final String[] serialNumbers;
+
+    @JsonCreator
+    public ReadManyRequest(
+            @JsonProperty(value = Constants.SERIAL_NUMBERS, required = true)
+            final String[] serialNumbers) {
+        this.serialNumbers = serialNumbers;
+    }
+}
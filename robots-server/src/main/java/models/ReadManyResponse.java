@@ -0,0 +1,28 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ReadManyResponse {
+    @JsonProperty(Constants.ROBOT_PARTS)
+    @Getter
+    private final RobotPart[] robotParts;
+
+    @JsonProperty(Constants.MISSING_SERIAL_NUMBERS)
+    @Getter
+    private final String[] missingSerialNumbers;
+
+    @JsonCreator
+    public ReadManyResponse(
+            @JsonProperty(value = Constants.ROBOT_PARTS, required = true)
+            final RobotPart[] robotParts,
+            @JsonProperty(
+                    value = Constants.MISSING_SERIAL_NUMBERS, required = true)
+            final String[] missingSerialNumbers) {
+        this.robotParts = robotParts;
+        this.missingSerialNumbers = missingSerialNumbers;
+    }
+}
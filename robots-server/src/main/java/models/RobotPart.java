@@ -2,6 +2,7 @@ package models;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 import lombok.Setter;
@@ -33,6 +34,24 @@ public class RobotPart {
     @Setter
     private final String[] compatibilities;
 
+    /**
+     * Version of the stored robot part, incremented by each update.
+     * Null for a robot part that is not stored yet.
+     */
+    @JsonProperty(Constants.VERSION)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Getter
+    private final Long version;
+
+    public RobotPart(
+            final String name,
+            final String serialNumber,
+            final String manufacturer,
+            final Integer weight,
+            final String[] compatibilities) {
+        this(name, serialNumber, manufacturer, weight, compatibilities, null);
+    }
+
     @JsonCreator
     public RobotPart(
             @JsonProperty(value = Constants.NAME, required = true)
@@ -44,12 +63,15 @@ public class RobotPart {
             @JsonProperty(value = Constants.WEIGHT, required = true)
             final Integer weight,
             @JsonProperty(value = Constants.COMPATIBILITIES, required = true)
-            final String[] compatibilities) {
+            final String[] compatibilities,
+            @JsonProperty(Constants.VERSION)
+            final Long version) {
         this.name = name;
         this.serialNumber = serialNumber;
         this.manufacturer = manufacturer;
         this.weight = weight;
         this.compatibilities = compatibilities;
+        this.version = version;
     }
 
     // For unit tests
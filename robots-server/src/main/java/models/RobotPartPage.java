@@ -0,0 +1,30 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RobotPartPage {
+    @JsonProperty(Constants.ROBOT_PARTS)
+    @Getter
+    private final RobotPart[] robotParts;
+
+    /**
+     * Token to pass to get the next page, null on the last page.
+     */
+    @JsonProperty(Constants.CONTINUATION_TOKEN)
+    @Getter
+    private final String continuationToken;
+
+    @JsonCreator
+    public RobotPartPage(
+            @JsonProperty(value = Constants.ROBOT_PARTS, required = true)
+            final RobotPart[] robotParts,
+            @JsonProperty(Constants.CONTINUATION_TOKEN)
+            final String continuationToken) {
+        this.robotParts = robotParts;
+        this.continuationToken = continuationToken;
+    }
+}
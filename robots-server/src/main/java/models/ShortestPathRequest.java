@@ -0,0 +1,32 @@
+package models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ShortestPathRequest {
+    @JsonProperty(Constants.FROM_SERIAL_NUMBER)
+    @Getter
+    private final String fromSerialNumber;
+
+    @JsonProperty(Constants.TO_SERIAL_NUMBER)
+    @Getter
+    private final String toSerialNumber;
+
+    @JsonProperty(Constants.MAX_DEPTH)
+    @Getter
+    private final Integer maxDepth;
+
+    public ShortestPathRequest(
+            @JsonProperty(value = Constants.FROM_SERIAL_NUMBER, required = true)
+            final String fromSerialNumber,
+            @JsonProperty(value = Constants.TO_SERIAL_NUMBER, required = true)
+            final String toSerialNumber,
+            @JsonProperty(value = Constants.MAX_DEPTH, required = true)
+            final Integer maxDepth) {
+        this.fromSerialNumber = fromSerialNumber;
+        this.toSerialNumber = toSerialNumber;
+        this.maxDepth = maxDepth;
+    }
+}
@@ -2,6 +2,7 @@ package models;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 
@@ -19,6 +20,22 @@ public class UpdateRequest {
     @Getter
     private final Object valueOfField;
 
+    /**
+     * Version the robot part must still have for the update to happen,
+     * null to update it whatever its version.
+     */
+    @JsonProperty(Constants.EXPECTED_VERSION)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Getter
+    private final Long expectedVersion;
+
+    public UpdateRequest(
+            final String originalSerialNumber,
+            final String fieldToUpdate,
+            final Object valueOfField) {
+        this(originalSerialNumber, fieldToUpdate, valueOfField, null);
+    }
+
     @JsonCreator
     public UpdateRequest(
             @JsonProperty(
@@ -27,9 +44,12 @@ public class UpdateRequest {
             @JsonProperty(value = Constants.FIELD_TO_UPDATE, required = true)
             final String fieldToUpdate,
             @JsonProperty(value = Constants.VALUE_OF_FIELD, required = true)
-            final Object valueOfField) {
+            final Object valueOfField,
+            @JsonProperty(Constants.EXPECTED_VERSION)
+            final Long expectedVersion) {
         this.originalSerialNumber = originalSerialNumber;
         this.fieldToUpdate = fieldToUpdate;
         this.valueOfField = valueOfField;
+        this.expectedVersion = expectedVersion;
     }
 }
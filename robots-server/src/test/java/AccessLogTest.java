@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AccessLogTest {
+    private final Logger logger = Logger.getLogger("robots.access");
+    private final List<String> lines = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(final LogRecord record) {
+            lines.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Before
+    public void setUp() {
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+    }
+
+    @After
+    public void tearDown() {
+        logger.removeHandler(handler);
+        logger.setUseParentHandlers(true);
+    }
+
+    @Test
+    public void testCategories() {
+        assertEquals(AccessLog.Category.success, AccessLog.Category.of(304));
+        assertEquals(AccessLog.Category.notFound, AccessLog.Category.of(404));
+        assertEquals(
+                AccessLog.Category.clientError, AccessLog.Category.of(422));
+        assertEquals(
+                AccessLog.Category.serverError, AccessLog.Category.of(503));
+    }
+
+    @Test
+    public void testSamplesPerCategory() {
+        final AccessLog accessLog = new AccessLog(
+                AccessLog.parseSampleRates("success=0,serverError=1"), 100);
+        accessLog.log("read", "POST", "read", 200, 1000000);
+        accessLog.log("read", "POST", "read", 404, 1000000);
+        accessLog.log("read", "POST", "read", 500, 1500000);
+        assertEquals(
+                Collections.singletonList("endpoint=read method=POST"
+                        + " path=\"read\" status=500 durationMillis=1.500"),
+                lines);
+    }
+
+    @Test
+    public void testLimitsLinesPerSecond() {
+        final AccessLog accessLog = new AccessLog(
+                AccessLog.parseSampleRates("notFound=1"), 2);
+        for (int count = 0; count < 5; count++) {
+            accessLog.log("getRobotPart", "GET", "robot-parts/x", 404, 0);
+        }
+        assertEquals(2, lines.size());
+    }
+
+    @Test
+    public void testReportsSuppressedLines() throws Exception {
+        final AccessLog accessLog = new AccessLog(
+                AccessLog.parseSampleRates("notFound=1"), 1);
+        for (int count = 0; count < 3; count++) {
+            accessLog.log("getRobotPart", "GET", "robot-parts/x", 404, 0);
+        }
+        Thread.sleep(1100);
+        accessLog.log("getRobotPart", "GET", "robot-parts/x", 404, 0);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1).endsWith(" suppressed=2"));
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncLogHandlerTest {
+    @Test
+    public void testPublishesOnWriterThread() throws Exception {
+        final CountDownLatch published = new CountDownLatch(1);
+        final String[] publishingThread = new String[1];
+        final Handler handler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                publishingThread[0] = Thread.currentThread().getName();
+                published.countDown();
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final AsyncLogHandler asyncLogHandler
+                = new AsyncLogHandler(new Handler[] {handler}, 10);
+        final LogRecord record = new LogRecord(Level.INFO, "message");
+        record.setLoggerName("AsyncLogHandlerTest");
+        asyncLogHandler.publish(record);
+        assertTrue(published.await(1, TimeUnit.SECONDS));
+        assertNotEquals(Thread.currentThread().getName(), publishingThread[0]);
+        assertEquals("AsyncLogHandlerTest", record.getSourceClassName());
+        asyncLogHandler.close();
+    }
+}
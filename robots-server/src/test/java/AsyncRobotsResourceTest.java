@@ -0,0 +1,94 @@
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncRobotsResourceTest {
+    private final RobotsResource robotsResource;
+
+    public AsyncRobotsResourceTest() {
+        this.robotsResource = mock(RobotsResource.class);
+    }
+
+    @Test
+    public void testResumesWithResponse() throws Exception {
+        final DbExecutor dbExecutor = new DbExecutor(1, 1);
+        final AsyncRobotsResource asyncRobotsResource
+                = new AsyncRobotsResource(robotsResource, dbExecutor);
+        final Response response = Response.ok().build();
+        when(robotsResource.getRobotPart("1", null)).thenReturn(response);
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        asyncRobotsResource.getRobotPart("1", null, asyncResponse);
+        verify(asyncResponse, timeout(1000)).resume(response);
+        dbExecutor.shutdown();
+    }
+
+    @Test
+    public void testResumesWithError() throws Exception {
+        final DbExecutor dbExecutor = new DbExecutor(1, 1);
+        final AsyncRobotsResource asyncRobotsResource
+                = new AsyncRobotsResource(robotsResource, dbExecutor);
+        final StackOverflowError error = new StackOverflowError();
+        when(robotsResource.getRobotPart("1", null)).thenThrow(error);
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        asyncRobotsResource.getRobotPart("1", null, asyncResponse);
+        verify(asyncResponse, timeout(1000)).resume(error);
+        dbExecutor.shutdown();
+    }
+
+    @Test
+    public void testOverloaded() throws Exception {
+        final DbExecutor dbExecutor = mock(DbExecutor.class);
+        doThrow(new RejectedExecutionException())
+                .when(dbExecutor).execute(any(Runnable.class));
+        final AsyncRobotsResource asyncRobotsResource
+                = new AsyncRobotsResource(robotsResource, dbExecutor);
+        final AtomicBoolean workDone = new AtomicBoolean();
+        when(robotsResource.decodeAdd(any(), any())).thenReturn(
+                RobotsResource.DecodedRequest.work(() -> {
+                    workDone.set(true);
+                    return Response.ok().build();
+                }));
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        asyncRobotsResource.add(
+                new ByteArrayInputStream(new byte[0]), null, asyncResponse);
+        final ArgumentCaptor<Response> captor
+                = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(captor.capture());
+        assertEquals(503, captor.getValue().getStatus());
+        assertEquals("1", captor.getValue().getHeaderString("Retry-After"));
+        assertFalse(workDone.get());
+
+        when(dbExecutor.getStats()).thenReturn(
+                new DbExecutor.Stats(1, 1, 1, 1, 0, 1, 0, 0));
+        assertEquals(200, asyncRobotsResource.getExecutorStats().getStatus());
+    }
+
+    @Test
+    public void testAnswersMalformedRequestWithoutExecutor() throws Exception {
+        final DbExecutor dbExecutor = mock(DbExecutor.class);
+        final AsyncRobotsResource asyncRobotsResource
+                = new AsyncRobotsResource(robotsResource, dbExecutor);
+        final Response response = Response.status(422).build();
+        when(robotsResource.decodeUpdate(any(), any())).thenReturn(
+                RobotsResource.DecodedRequest.answered(response));
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        asyncRobotsResource.update(
+                new ByteArrayInputStream(new byte[0]), null, asyncResponse);
+        verify(asyncResponse).resume(response);
+        verify(dbExecutor, never()).execute(any(Runnable.class));
+    }
+}
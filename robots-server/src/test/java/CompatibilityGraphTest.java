@@ -0,0 +1,60 @@
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompatibilityGraphTest {
+    private static CompatibilityGraph createGraph() {
+        // 1 -> 2 -> 4 -> 5, 1 -> 3 -> 4, 3 -> unknown
+        final CompatibilityGraph graph = new CompatibilityGraph();
+        graph.compatibilitiesChanged("1", new String[] {"2", "3"});
+        graph.compatibilitiesChanged("2", new String[] {"4", "1"});
+        graph.compatibilitiesChanged("3", new String[] {"unknown", "4"});
+        graph.compatibilitiesChanged("4", new String[] {"5"});
+        graph.compatibilitiesChanged("5", new String[] {});
+        return graph;
+    }
+
+    @Test
+    public void testReachable() {
+        final CompatibilityGraph graph = createGraph();
+        assertEquals(Arrays.asList("2", "3"), graph.reachable("1", 1, 10));
+        assertEquals(
+                Arrays.asList("2", "3", "4", "5"),
+                graph.reachable("1", 3, 10));
+        assertEquals(Arrays.asList("2", "3", "4"), graph.reachable("1", 3, 3));
+        assertEquals(Collections.emptyList(), graph.reachable("5", 3, 10));
+        assertNull(graph.reachable("unknown", 3, 10));
+    }
+
+    @Test
+    public void testShortestPath() {
+        final CompatibilityGraph graph = createGraph();
+        assertEquals(
+                Arrays.asList("1", "2", "4", "5"),
+                graph.shortestPath("1", "5", 3));
+        assertEquals(Collections.emptyList(), graph.shortestPath("1", "5", 2));
+        assertEquals(Collections.emptyList(), graph.shortestPath("5", "1", 5));
+        assertEquals(
+                Collections.singletonList("1"),
+                graph.shortestPath("1", "1", 1));
+        assertNull(graph.shortestPath("1", "unknown", 3));
+    }
+
+    @Test
+    public void testFollowsChanges() {
+        final CompatibilityGraph graph = createGraph();
+        graph.robotPartDeleted("2");
+        assertEquals(
+                Arrays.asList("1", "3", "4", "5"),
+                graph.shortestPath("1", "5", 3));
+        graph.robotPartRenamed("5", "6");
+        assertNull(graph.reachable("5", 1, 10));
+        assertEquals(Collections.emptyList(), graph.reachable("4", 1, 10));
+        graph.compatibilitiesChanged("4", new String[] {"6"});
+        assertEquals(Arrays.asList("6"), graph.reachable("4", 1, 10));
+        assertEquals(4, graph.size());
+    }
+}
@@ -0,0 +1,185 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import javax.sql.DataSource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionPoolTest {
+    private static final String HSQLDB_URL
+            = "jdbc:hsqldb:mem:connectionpooltests;sql.syntax_mys=true";
+
+    @Test
+    public void testPrefillsMinSize() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.defaults().withMinSize(3).withMaxSize(5));
+        final ConnectionPool.Stats stats = connectionPool.getStats();
+        assertEquals(3, stats.getTotalConnections());
+        assertEquals(3, stats.getIdleConnections());
+        assertEquals(0, stats.getActiveConnections());
+        connectionPool.close();
+    }
+
+    @Test
+    public void testOverridesApplyInAnyOrder() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.defaults()
+                        .withMinSize(15)
+                        .withMaxSize(20));
+        assertEquals(15, connectionPool.getStats().getTotalConnections());
+        connectionPool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMinSizeAboveMaxSize() throws Exception {
+        new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.defaults().withMinSize(15));
+    }
+
+    @Test
+    public void testClosesPrefilledConnectionsOnFailure() throws Exception {
+        final Connection first = DriverManager.getConnection(HSQLDB_URL);
+        final Connection second = DriverManager.getConnection(HSQLDB_URL);
+        final DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection())
+                .thenReturn(first, second)
+                .thenThrow(new SQLException("Connection refused."));
+        try {
+            new ConnectionPool(
+                    dataSource,
+                    ConnectionPoolConfig.defaults()
+                            .withMinSize(3)
+                            .withMaxSize(5));
+            fail("Creating the pool should have failed.");
+        } catch (final SQLException e) {
+            assertEquals("Connection refused.", e.getMessage());
+        }
+        assertTrue(first.isClosed());
+        assertTrue(second.isClosed());
+    }
+
+    @Test
+    public void testReusesReleasedConnection() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.defaults().withMinSize(1).withMaxSize(2));
+        final PooledConnection first = connectionPool.borrow();
+        assertEquals(1, connectionPool.getStats().getActiveConnections());
+        connectionPool.release(first);
+        final PooledConnection second = connectionPool.borrow();
+        assertSame(first, second);
+        final PooledConnection third = connectionPool.borrow();
+        assertNotSame(second, third);
+        assertEquals(2, connectionPool.getStats().getActiveConnections());
+        assertEquals(3, connectionPool.getStats().getBorrowCount());
+        connectionPool.release(second);
+        connectionPool.release(third);
+        connectionPool.close();
+    }
+
+    @Test
+    public void testBorrowTimesOutWhenExhausted() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.singleConnection()
+                        .withBorrowTimeoutMillis(50));
+        final PooledConnection connection = connectionPool.borrow();
+        try {
+            connectionPool.borrow();
+            fail("Borrowing from an exhausted pool should time out.");
+        } catch (final SQLTransientConnectionException e) {
+            assertEquals(1, connectionPool.getStats().getBorrowTimeoutCount());
+        }
+        connectionPool.release(connection);
+        connectionPool.release(connectionPool.borrow());
+        connectionPool.close();
+    }
+
+    @Test
+    public void testDiscardsClosedConnection() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL, ConnectionPoolConfig.singleConnection());
+        final PooledConnection connection = connectionPool.borrow();
+        connection.getConnection().close();
+        connectionPool.release(connection);
+        assertEquals(0, connectionPool.getStats().getTotalConnections());
+        final PooledConnection newConnection = connectionPool.borrow();
+        assertNotSame(connection, newConnection);
+        connectionPool.release(newConnection);
+        connectionPool.close();
+    }
+
+    @Test
+    public void testRollsBackOpenTransactionOnRelease() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL, ConnectionPoolConfig.singleConnection());
+        final PooledConnection connection = connectionPool.borrow();
+        connection.getConnection().setAutoCommit(false);
+        connectionPool.release(connection);
+        final PooledConnection sameConnection = connectionPool.borrow();
+        assertSame(connection, sameConnection);
+        if (!sameConnection.getConnection().getAutoCommit()) {
+            fail("Released connection should be back in auto-commit mode.");
+        }
+        connectionPool.release(sameConnection);
+        connectionPool.close();
+    }
+
+    @Test(expected = SQLException.class)
+    public void testBorrowFromClosedPool() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL, ConnectionPoolConfig.singleConnection());
+        connectionPool.close();
+        connectionPool.borrow();
+    }
+
+    @Test
+    public void testStatementCacheReusesStatements() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL, ConnectionPoolConfig.singleConnection());
+        final PooledConnection connection = connectionPool.borrow();
+        final PreparedStatement first = connection.prepareStatement(
+                "VALUES (CAST(? AS INT))");
+        final PreparedStatement second = connection.prepareStatement(
+                "VALUES (CAST(? AS INT))");
+        assertSame(first, second);
+        assertEquals(1, connectionPool.getStats().getStatementCacheHits());
+        assertEquals(1, connectionPool.getStats().getStatementCacheMisses());
+        connectionPool.release(connection);
+        connectionPool.close();
+    }
+
+    @Test
+    public void testStatementCacheEvictsLeastRecentlyUsed() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.singleConnection()
+                        .withStatementCacheSize(2));
+        final PooledConnection connection = connectionPool.borrow();
+        final PreparedStatement first
+                = connection.prepareStatement("VALUES (1)");
+        connection.prepareStatement("VALUES (2)");
+        connection.prepareStatement("VALUES (1)");
+        connection.prepareStatement("VALUES (3)");
+        assertSame(first, connection.prepareStatement("VALUES (1)"));
+        final PreparedStatement evicted
+                = connection.prepareStatement("VALUES (2)");
+        assertTrue(first != evicted);
+        assertEquals(2, connectionPool.getStats().getStatementCacheHits());
+        assertEquals(4, connectionPool.getStats().getStatementCacheMisses());
+        connectionPool.release(connection);
+        connectionPool.close();
+    }
+}
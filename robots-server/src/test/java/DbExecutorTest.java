@@ -0,0 +1,63 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class DbExecutorTest {
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        checkRejectsWhenQueueIsFull(new DbExecutor(1, 1));
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFullOnVirtualThreads()
+            throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        checkRejectsWhenQueueIsFull(new DbExecutor(1, 1, true));
+    }
+
+    private static void checkRejectsWhenQueueIsFull(
+            final DbExecutor dbExecutor) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final Runnable blockingTask = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        dbExecutor.execute(blockingTask);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        dbExecutor.execute(done::countDown);
+        try {
+            dbExecutor.execute(done::countDown);
+            fail("Task accepted with a full queue.");
+        } catch (final RejectedExecutionException e) {
+            // expected
+        }
+
+        DbExecutor.Stats stats = dbExecutor.getStats();
+        assertEquals(1, stats.getActiveThreads());
+        assertEquals(1, stats.getQueueDepth());
+        assertEquals(1, stats.getQueueCapacity());
+        assertEquals(1, stats.getRejectedCount());
+
+        release.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        stats = dbExecutor.getStats();
+        assertEquals(2, stats.getExecutedCount());
+        assertEquals(0, stats.getQueueDepth());
+        assertTrue(stats.getMaxQueueWaitMicros()
+                >= stats.getAverageQueueWaitMicros());
+        dbExecutor.shutdown();
+    }
+}
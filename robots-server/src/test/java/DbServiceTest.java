@@ -3,11 +3,21 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import models.BulkAddResult;
+import models.Constants;
 import models.RobotPart;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class DbServiceTest {
     private static final String HSQLDB_URL
@@ -57,6 +67,545 @@ public class DbServiceTest {
                 + DbService.COMPATIBILITIES_SEPARATOR
                 + compatibilities[1]);
     }
+
+    @Test
+    public void testListCompatible() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "10", "Manu", 1000, new String[] {"11", "12"}));
+        dbService.add(new RobotPart(
+                "BasicBody", "11", "Manu", 5000, new String[] {"10"}));
+        dbService.add(new RobotPart(
+                "BasicArm", "12", "Manu", 1500, new String[] {"10"}));
+        assertEquals(2, dbService.listCompatible("10", 3).length);
+        assertEquals(1, dbService.listCompatible("10", 1).length);
+        final long hitsBefore
+                = dbService.getConnectionPoolStats().getStatementCacheHits();
+        assertEquals(2, dbService.listCompatible("10", 2).length);
+        assertTrue(dbService.getConnectionPoolStats().getStatementCacheHits()
+                > hitsBefore);
+    }
+
+    @Test
+    public void testListCompatibleOrderAndMissingParts() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "ordered-20", "Manu", 1000,
+                new String[] {
+                        "ordered-23", "unknown", "ordered-21", "ordered-22"}));
+        dbService.add(new RobotPart(
+                "BasicBody", "ordered-21", "Manu", 5000, new String[] {}));
+        dbService.add(new RobotPart(
+                "BasicArm", "ordered-22", "Manu", 1500, new String[] {}));
+        dbService.add(new RobotPart(
+                "BasicLeg", "ordered-23", "Manu", 1500, new String[] {}));
+        final RobotPart[] robotParts
+                = dbService.listCompatible("ordered-20", 3);
+        assertEquals(3, robotParts.length);
+        assertEquals("ordered-23", robotParts[0].getSerialNumber());
+        assertEquals("ordered-21", robotParts[1].getSerialNumber());
+        assertEquals("ordered-22", robotParts[2].getSerialNumber());
+        assertEquals(0, dbService.listCompatible("ordered-21", 3).length);
+        try {
+            dbService.listCompatible("unknown", 3);
+            fail("Listing from an unknown serial number should fail.");
+        } catch (final DbService.RessourceNotFoundException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testNotFoundHasNoStackTrace() throws Exception {
+        try {
+            dbService.read("not-found");
+            fail("Serial number not-found should not exist.");
+        } catch (final DbService.RessourceNotFoundException e) {
+            assertEquals(0, e.getStackTrace().length);
+        }
+    }
+
+    @Test
+    public void testTimesQueries() throws Exception {
+        final Metrics metrics = new Metrics();
+        final DbService timedDbService = new DbService(
+                new ConnectionPool(
+                        HSQLDB_URL, ConnectionPoolConfig.singleConnection()),
+                null,
+                metrics);
+        timedDbService.add(new RobotPart(
+                "BasicHead", "timed-1", "Manu", 1000, new String[] {}));
+        timedDbService.read("timed-1");
+        timedDbService.read("timed-1");
+
+        final String text = metrics.scrape();
+        assertTrue(text.contains(
+                "robots_db_call_duration_seconds_count{query=\"add\"} 1\n"));
+        assertTrue(text.contains(
+                "robots_db_call_duration_seconds_count{query=\"read\"} 2\n"));
+        assertFalse(text.contains("robots_cache_"));
+    }
+
+    @Test
+    public void testExportsPoolAndCacheStats() throws Exception {
+        final Metrics metrics = new Metrics();
+        final DbService cachedDbService = new DbService(
+                new ConnectionPool(
+                        HSQLDB_URL, ConnectionPoolConfig.singleConnection()),
+                new RobotPartCache(100, 60000, 60000),
+                metrics);
+        cachedDbService.add(new RobotPart(
+                "BasicHead", "exported-1", "Manu", 1000, new String[] {}));
+        cachedDbService.read("exported-1");
+        cachedDbService.read("exported-1");
+
+        final String text = metrics.scrape();
+        assertTrue(text.contains("robots_db_pool_max_connections 1\n"));
+        assertTrue(text.contains("robots_db_pool_active_connections 0\n"));
+        assertTrue(text.contains(
+                "# TYPE robots_db_statement_cache_misses_total counter\n"));
+        assertTrue(text.contains("robots_cache_hits_total 1\n"));
+        assertTrue(text.contains("robots_cache_misses_total 1\n"));
+        assertTrue(text.contains("robots_cache_hit_ratio 0.500000\n"));
+    }
+
+    @Test
+    public void testReadThroughCache() throws Exception {
+        final DbService cachedDbService = new DbService(
+                new ConnectionPool(
+                        HSQLDB_URL, ConnectionPoolConfig.singleConnection()),
+                new RobotPartCache(100, 60000, 60000));
+        cachedDbService.add(new RobotPart(
+                "BasicHead", "20", "Manu", 1000, new String[] {"21"}));
+        assertEquals("BasicHead", cachedDbService.read("20").getName());
+        assertEquals("BasicHead", cachedDbService.read("20").getName());
+        assertEquals(1, cachedDbService.getRobotPartCacheStats().getHits());
+
+        cachedDbService.update("20", Constants.NAME, "FancyHead");
+        assertEquals("FancyHead", cachedDbService.read("20").getName());
+
+        try {
+            cachedDbService.read("22");
+            fail("Serial number 22 should not exist.");
+        } catch (final DbService.RessourceNotFoundException e) {
+            // expected, and now cached as missing
+        }
+        cachedDbService.update("20", Constants.SERIAL_NUMBER, "22");
+        assertEquals("FancyHead", cachedDbService.read("22").getName());
+        cachedDbService.delete("22");
+        try {
+            cachedDbService.read("22");
+            fail("Serial number 22 should have been deleted.");
+        } catch (final DbService.RessourceNotFoundException e) {
+            assertEquals(
+                    1, cachedDbService.getRobotPartCacheStats().getHits());
+        }
+    }
+
+    @Test
+    public void testListAll() throws Exception {
+        final int sizeBefore = dbService.listAll().length;
+        dbService.add(new RobotPart(
+                "BasicHead", "30", "Manu", 1000, new String[] {"31"}));
+        dbService.add(new RobotPart(
+                "BasicBody", "31", "Manu", 5000, new String[] {"30"}));
+        final RobotPart[] robotParts = dbService.listAll();
+        assertEquals(sizeBefore + 2, robotParts.length);
+
+        final List<RobotPart> streamedRobotParts = new ArrayList<>();
+        dbService.streamAll(streamedRobotParts::add);
+        assertEquals(robotParts.length, streamedRobotParts.size());
+        for (int count = 0; count < robotParts.length; count++) {
+            assertEquals(
+                    robotParts[count].getSerialNumber(),
+                    streamedRobotParts.get(count).getSerialNumber());
+        }
+    }
+
+    @Test
+    public void testListPage() throws Exception {
+        for (int count = 1; count <= 5; count++) {
+            dbService.add(new RobotPart(
+                    "Part", "page-" + count, "Manu", 100, new String[] {}));
+        }
+        final RobotPart[] firstPage = dbService.listPage("page-", 2);
+        assertEquals(2, firstPage.length);
+        assertEquals("page-1", firstPage[0].getSerialNumber());
+        assertEquals("page-2", firstPage[1].getSerialNumber());
+        final RobotPart[] lastPage = dbService.listPage("page-3", 2);
+        assertEquals(2, lastPage.length);
+        assertEquals("page-4", lastPage[0].getSerialNumber());
+        assertEquals("page-5", lastPage[1].getSerialNumber());
+        assertEquals(
+                Math.min(3, dbService.listAll().length),
+                dbService.listPage(null, 3).length);
+    }
+
+    @Test
+    public void testAddAll() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "bulk-1", "Manu", 1000, new String[] {}));
+        final List<RobotPart> robotParts = new ArrayList<>();
+        robotParts.add(new RobotPart(
+                "BasicHead", "bulk-1", "Manu", 1000, new String[] {}));
+        robotParts.add(new RobotPart(
+                "BasicBody", "bulk-2", "Manu", 5000, new String[] {"bulk-1"}));
+        robotParts.add(new RobotPart(
+                null, "bulk-3", "Manu", 5000, new String[] {}));
+        robotParts.add(new RobotPart(
+                "BasicBody", "bulk-2", "Manu", 5000, new String[] {}));
+        for (int count = 4; count < DbService.BULK_ADD_CHUNK_SIZE + 10;
+                count++) {
+            robotParts.add(new RobotPart(
+                    "BasicArm", "bulk-" + count, "Manu", 1500,
+                    new String[] {}));
+        }
+        final BulkAddResult[] results = dbService.addAll(robotParts);
+        assertEquals(robotParts.size(), results.length);
+        assertEquals(BulkAddResult.Status.DUPLICATE, results[0].getStatus());
+        assertEquals(BulkAddResult.Status.CREATED, results[1].getStatus());
+        assertEquals(BulkAddResult.Status.INVALID, results[2].getStatus());
+        assertEquals(BulkAddResult.Status.DUPLICATE, results[3].getStatus());
+        for (int count = 4; count < results.length; count++) {
+            assertEquals(
+                    BulkAddResult.Status.CREATED, results[count].getStatus());
+        }
+        assertEquals("bulk-1", dbService.read("bulk-2").getCompatibilities()[0]);
+        assertEquals("BasicArm", dbService.read("bulk-509").getName());
+    }
+
+    @Test
+    public void testAddAllReportsEdgeWriteFailuresPerItem() throws Exception {
+        // Longer than the compatible_serial_number column of the edge
+        // table, while the parts table keeps compatibilities as text.
+        final String tooLong = new String(new char[60]).replace('\0', 'x');
+        final List<RobotPart> robotParts = new ArrayList<>();
+        robotParts.add(new RobotPart(
+                "BasicHead", "edge-1", "Manu", 1000, new String[] {}));
+        robotParts.add(new RobotPart(
+                "BasicBody", "edge-2", "Manu", 5000, new String[] {tooLong}));
+        robotParts.add(new RobotPart(
+                "BasicArm", "edge-3", "Manu", 1500, new String[] {"edge-1"}));
+        final BulkAddResult[] results = dbService.addAll(robotParts);
+        assertEquals(BulkAddResult.Status.CREATED, results[0].getStatus());
+        assertEquals(BulkAddResult.Status.INVALID, results[1].getStatus());
+        assertEquals(BulkAddResult.Status.CREATED, results[2].getStatus());
+        assertEquals("BasicArm", dbService.read("edge-3").getName());
+    }
+
+    @Test
+    public void testAddAllStopsWhenNoConnectionIsAvailable() throws Exception {
+        final ConnectionPool connectionPool = new ConnectionPool(
+                HSQLDB_URL,
+                ConnectionPoolConfig.singleConnection()
+                        .withBorrowTimeoutMillis(100));
+        final Metrics metrics = new Metrics();
+        final DbService pooledDbService
+                = new DbService(connectionPool, null, metrics);
+        final List<RobotPart> robotParts = new ArrayList<>();
+        robotParts.add(new RobotPart(
+                null, "exhausted-0", "Manu", 1000, new String[] {}));
+        for (int count = 1; count < 2 * DbService.BULK_ADD_CHUNK_SIZE + 1;
+                count++) {
+            robotParts.add(new RobotPart(
+                    "BasicArm", "exhausted-" + count, "Manu", 1500,
+                    new String[] {}));
+        }
+        final PooledConnection heldConnection = connectionPool.borrow();
+        final BulkAddResult[] results;
+        try {
+            results = pooledDbService.addAll(robotParts);
+        } finally {
+            connectionPool.release(heldConnection);
+        }
+        assertEquals(BulkAddResult.Status.INVALID, results[0].getStatus());
+        for (int count = 1; count < results.length; count++) {
+            assertEquals(
+                    BulkAddResult.Status.NOT_STORED,
+                    results[count].getStatus());
+            assertEquals(
+                    "Could not be stored, retry later.",
+                    results[count].getMessage());
+        }
+        // The later chunks were not attempted.
+        assertTrue(metrics.scrape().contains(
+                "robots_db_call_duration_seconds_count{query=\"addAll\"} 1\n"));
+    }
+
+    @Test
+    public void testReadMany() throws Exception {
+        final List<String> serialNumbers = new ArrayList<>();
+        for (int count = 0; count < DbService.READ_MANY_CHUNK_SIZE + 3;
+                count++) {
+            if (count % 2 == 0) {
+                dbService.add(new RobotPart(
+                        "Part", "many-" + count, "Manu", 100,
+                        new String[] {}));
+            }
+            serialNumbers.add("many-" + count);
+        }
+        serialNumbers.add("many-0");
+        final Map<String, RobotPart> robotParts
+                = dbService.readMany(serialNumbers);
+        assertEquals(DbService.READ_MANY_CHUNK_SIZE / 2 + 2, robotParts.size());
+        assertEquals(
+                "many-502", robotParts.get("many-502").getSerialNumber());
+        assertTrue(!robotParts.containsKey("many-1"));
+    }
+
+    @Test
+    public void testListReverseCompatible() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "inverse-1", "Manu", 1000,
+                new String[] {"inverse-0"}));
+        dbService.add(new RobotPart(
+                "BasicBody", "inverse-2", "Manu", 5000,
+                new String[] {"inverse-0", "inverse-1"}));
+        dbService.add(new RobotPart(
+                "BasicArm", "inverse-3", "Manu", 1500,
+                new String[] {"inverse-1"}));
+        assertTrue(dbService.isCompatibilityIndexReady());
+        final RobotPart[] robotParts
+                = dbService.listReverseCompatible("inverse-0", 10);
+        assertEquals(2, robotParts.length);
+        assertEquals("inverse-1", robotParts[0].getSerialNumber());
+        assertEquals("inverse-2", robotParts[1].getSerialNumber());
+        assertEquals(1, dbService.listReverseCompatible("inverse-0", 1).length);
+
+        dbService.update(
+                "inverse-3",
+                Constants.COMPATIBILITIES,
+                new String[] {"inverse-0"});
+        assertEquals(3, dbService.listReverseCompatible("inverse-0", 10).length);
+        assertEquals(1, dbService.listReverseCompatible("inverse-1", 10).length);
+        dbService.update("inverse-3", Constants.SERIAL_NUMBER, "inverse-4");
+        assertEquals(
+                "inverse-4",
+                dbService.listReverseCompatible("inverse-0", 10)[2]
+                        .getSerialNumber());
+        dbService.delete("inverse-1");
+        assertEquals(2, dbService.listReverseCompatible("inverse-0", 10).length);
+    }
+
+    @Test
+    public void testMigrateCompatibilities() throws Exception {
+        final Statement statement = connection.createStatement();
+        statement.executeUpdate(
+                "INSERT INTO "
+                + DbService.PARTS_TABLE_NAME
+                + " (name, serial_number, manufacturer, weight,"
+                + " compatibilities)"
+                + " VALUES ('LegacyHead', 'legacy-1', 'Manu', 1000,"
+                + " 'legacy-0:legacy-2');");
+        statement.executeUpdate(
+                "INSERT INTO "
+                + DbService.PARTS_TABLE_NAME
+                + " (name, serial_number, manufacturer, weight,"
+                + " compatibilities)"
+                + " VALUES ('LegacyBody', 'legacy-2', 'Manu', 5000,"
+                + " 'legacy-0');");
+        statement.executeUpdate(
+                "DELETE FROM "
+                + CompatibilityTable.MIGRATIONS_TABLE_NAME
+                + " WHERE name='"
+                + CompatibilityTable.MIGRATION_NAME
+                + "';");
+        final DbService migratingDbService = new DbService(HSQLDB_URL);
+        try {
+            migratingDbService.listReverseCompatible("legacy-0", 10);
+            if (!migratingDbService.isCompatibilityIndexReady()) {
+                fail("Index should not be queried before the migration.");
+            }
+        } catch (final DbService.IndexNotReadyException e) {
+            // The background migration did not finish yet.
+        }
+        migratingDbService.migrateCompatibilities();
+        assertTrue(migratingDbService.isCompatibilityIndexReady());
+        final RobotPart[] robotParts
+                = migratingDbService.listReverseCompatible("legacy-0", 10);
+        assertEquals(2, robotParts.length);
+        assertEquals("legacy-1", robotParts[0].getSerialNumber());
+        assertEquals(
+                "legacy-1",
+                migratingDbService.listReverseCompatible("legacy-2", 10)[0]
+                        .getSerialNumber());
+    }
+
+    @Test
+    public void testChangeListener() throws Exception {
+        final CompatibilityGraph graph = new CompatibilityGraph();
+        dbService.addChangeListener(graph);
+        dbService.add(new RobotPart(
+                "BasicHead", "graph-1", "Manu", 1000,
+                new String[] {"graph-2"}));
+        final List<RobotPart> robotParts = new ArrayList<>();
+        robotParts.add(new RobotPart(
+                "BasicBody", "graph-2", "Manu", 5000,
+                new String[] {"graph-3"}));
+        robotParts.add(new RobotPart(
+                "BasicArm", "graph-3", "Manu", 1500, new String[] {}));
+        dbService.addAll(robotParts);
+        assertEquals(
+                Arrays.asList("graph-1", "graph-2", "graph-3"),
+                graph.shortestPath("graph-1", "graph-3", 2));
+        dbService.update(
+                "graph-1",
+                Constants.COMPATIBILITIES,
+                new String[] {"graph-3"});
+        assertEquals(
+                Arrays.asList("graph-3"), graph.reachable("graph-1", 2, 10));
+        dbService.update("graph-3", Constants.SERIAL_NUMBER, "graph-4");
+        assertEquals(
+                Collections.emptyList(), graph.reachable("graph-1", 2, 10));
+        dbService.delete("graph-4");
+        assertEquals(null, graph.reachable("graph-4", 2, 10));
+    }
+
+    @Test
+    public void testGraphLoadCatchesUpWithUnnotifiedWrites() throws Exception {
+        final CompatibilityGraph graph = new CompatibilityGraph();
+        dbService.addChangeListener(graph);
+        dbService.add(new RobotPart(
+                "BasicHead", "reload-1", "Manu", 1000,
+                new String[] {"reload-2"}));
+        dbService.add(new RobotPart(
+                "BasicBody", "reload-2", "Manu", 5000, new String[] {}));
+        // As if made by another server, or notified out of order.
+        final DbService otherDbService = new DbService(HSQLDB_URL);
+        otherDbService.update(
+                "reload-1",
+                Constants.COMPATIBILITIES,
+                new String[] {"reload-3"});
+        otherDbService.add(new RobotPart(
+                "BasicArm", "reload-3", "Manu", 1500, new String[] {}));
+        otherDbService.delete("reload-2");
+        assertEquals(
+                Arrays.asList("reload-2"), graph.reachable("reload-1", 1, 10));
+        graph.load(dbService);
+        assertEquals(
+                Arrays.asList("reload-3"), graph.reachable("reload-1", 1, 10));
+        assertEquals(null, graph.reachable("reload-2", 1, 10));
+        dbService.update(
+                "reload-1", Constants.COMPATIBILITIES, new String[] {});
+        assertEquals(
+                Collections.emptyList(), graph.reachable("reload-1", 1, 10));
+    }
+
+    @Test
+    public void testAddRejectsExistingSerialNumber() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "existing-1", "Manu", 1000, new String[] {}));
+        try {
+            dbService.add(new RobotPart(
+                    "OtherHead", "existing-1", "Manu", 500, new String[] {}));
+            fail("Adding an existing serial number should fail.");
+        } catch (final DbService.RessourceAlreadyExistsException e) {
+            // Expected.
+        }
+        assertEquals("BasicHead", dbService.read("existing-1").getName());
+    }
+
+    @Test
+    public void testEdgeWriteFailureIsNotReportedAsExisting()
+            throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "orphan-1", "Manu", 1000,
+                new String[] {"orphan-0"}));
+        // Leftover edges, e.g. from a legacy delete, collide with the ones
+        // renamed to the same serial number.
+        connection.createStatement().executeUpdate(
+                "INSERT INTO "
+                + CompatibilityTable.COMPATIBILITIES_TABLE_NAME
+                + " VALUES ('orphan-2', 'orphan-0', 0);");
+        try {
+            dbService.update("orphan-1", Constants.SERIAL_NUMBER, "orphan-2");
+            fail("Renaming onto conflicting edges should fail.");
+        } catch (final DbService.DbServiceException e) {
+            // Expected, the serial number does not exist.
+        }
+        assertEquals("BasicHead", dbService.read("orphan-1").getName());
+    }
+
+    @Test
+    public void testVersionedUpdate() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "versioned-1", "Manu", 1000, new String[] {}));
+        dbService.add(new RobotPart(
+                "BasicHead", "versioned-2", "Manu", 1000, new String[] {}));
+        assertEquals(0L, (long) dbService.read("versioned-1").getVersion());
+        dbService.update("versioned-1", Constants.NAME, "FancyHead", 0L);
+        assertEquals(1L, (long) dbService.read("versioned-1").getVersion());
+        try {
+            dbService.update("versioned-1", Constants.NAME, "OtherHead", 0L);
+            fail("Update with a stale version should fail.");
+        } catch (final DbService.VersionConflictException e) {
+            // Expected.
+        }
+        assertEquals("FancyHead", dbService.read("versioned-1").getName());
+        dbService.update("versioned-1", Constants.WEIGHT, 1200);
+        assertEquals(2L, (long) dbService.read("versioned-1").getVersion());
+        try {
+            dbService.update("versioned-3", Constants.NAME, "Head", 0L);
+            fail("Update of an unknown serial number should fail.");
+        } catch (final DbService.RessourceNotFoundException e) {
+            // Expected.
+        }
+        try {
+            dbService.update(
+                    "versioned-1", Constants.SERIAL_NUMBER, "versioned-2");
+            fail("Renaming to an existing serial number should fail.");
+        } catch (final DbService.UpdateDbException e) {
+            assertTrue(!(e instanceof DbService.VersionConflictException));
+        }
+    }
+
+    @Test
+    public void testPatch() throws Exception {
+        dbService.add(new RobotPart(
+                "BasicHead", "patched-1", "Manu", 1000,
+                new String[] {"patched-2"}));
+        dbService.add(new RobotPart(
+                "BasicBody", "patched-2", "Manu", 5000, new String[] {}));
+        final Map<String, Object> fields = new HashMap<>();
+        fields.put(Constants.WEIGHT, 900);
+        fields.put(Constants.NAME, "FancyHead");
+        fields.put(Constants.SERIAL_NUMBER, "patched-3");
+        fields.put(Constants.COMPATIBILITIES, Arrays.asList("patched-2"));
+        dbService.patch("patched-1", fields, 0L);
+        final RobotPart robotPart = dbService.read("patched-3");
+        assertEquals("FancyHead", robotPart.getName());
+        assertEquals(900, (int) robotPart.getWeight());
+        assertEquals(1L, (long) robotPart.getVersion());
+        assertEquals(
+                "patched-3",
+                dbService.listReverseCompatible("patched-2", 10)[0]
+                        .getSerialNumber());
+
+        final Map<String, Object> badFields = new HashMap<>();
+        badFields.put(Constants.NAME, "OtherHead");
+        badFields.put("color", "red");
+        try {
+            dbService.patch("patched-3", badFields, null);
+            fail("Patch with an unknown field should fail.");
+        } catch (final DbService.IllegalArgumentException e) {
+            // Expected.
+        }
+        badFields.remove("color");
+        badFields.put(Constants.SERIAL_NUMBER, "patched-2");
+        try {
+            dbService.patch("patched-3", badFields, null);
+            fail("Renaming to an existing serial number should fail.");
+        } catch (final DbService.UpdateDbException e) {
+            // Expected.
+        }
+        assertEquals("FancyHead", dbService.read("patched-3").getName());
+    }
+
+    @Test
+    public void testInListBucketSize() {
+        assertEquals(1, DbService.inListBucketSize(1));
+        assertEquals(2, DbService.inListBucketSize(2));
+        assertEquals(4, DbService.inListBucketSize(3));
+        assertEquals(8, DbService.inListBucketSize(5));
+        assertEquals(64, DbService.inListBucketSize(64));
+    }
 /*
     @Test
     public void testRead() throws Exception {
@@ -76,16 +625,6 @@ public class DbServiceTest {
         // TODO
     }
 
-    @Test
-    public void testListAll() throws Exception {
-        dbService.listAll();
-        // TODO
-    }
 
-    @Test
-    public void testListCompatible() throws Exception {
-        dbService.listCompatible();
-        // TODO
-    }
     */
 }
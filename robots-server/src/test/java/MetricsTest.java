@@ -0,0 +1,103 @@
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.MediaType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsTest {
+    @Test
+    public void testScrape() {
+        final Metrics metrics = new Metrics();
+        metrics.recordRequest("read", 200, TimeUnit.MICROSECONDS.toNanos(300));
+        metrics.recordRequest("read", 200, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordRequest("read", 404, TimeUnit.SECONDS.toNanos(20));
+        metrics.recordDbCall("read", TimeUnit.MILLISECONDS.toNanos(1));
+
+        final String text = metrics.scrape();
+        assertTrue(text.contains(
+                "# TYPE robots_http_requests_total counter\n"));
+        assertTrue(text.contains(
+                "robots_http_requests_total{endpoint=\"read\",status=\"200\"}"
+                        + " 2\n"));
+        assertTrue(text.contains(
+                "robots_http_requests_total{endpoint=\"read\",status=\"404\"}"
+                        + " 1\n"));
+        assertFalse(text.contains("status=\"500\""));
+        assertTrue(text.contains(
+                "robots_http_request_duration_seconds_bucket"
+                        + "{endpoint=\"read\",le=\"5.0E-4\"} 1\n"));
+        assertTrue(text.contains(
+                "robots_http_request_duration_seconds_bucket"
+                        + "{endpoint=\"read\",le=\"0.005\"} 2\n"));
+        assertTrue(text.contains(
+                "robots_http_request_duration_seconds_bucket"
+                        + "{endpoint=\"read\",le=\"10.0\"} 2\n"));
+        assertTrue(text.contains(
+                "robots_http_request_duration_seconds_bucket"
+                        + "{endpoint=\"read\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains(
+                "robots_http_request_duration_seconds_sum"
+                        + "{endpoint=\"read\"} 20.003300\n"));
+        assertTrue(text.contains(
+                "robots_http_request_duration_seconds_count"
+                        + "{endpoint=\"read\"} 3\n"));
+        // A bucket bound includes the latencies equal to it.
+        assertTrue(text.contains(
+                "robots_db_call_duration_seconds_bucket"
+                        + "{query=\"read\",le=\"0.001\"} 1\n"));
+    }
+
+    @Test
+    public void testFilterRecordsResourceMethod() throws Exception {
+        final Metrics metrics = mock(Metrics.class);
+        final ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        doReturn(RobotsResource.class.getMethod(
+                        "read", InputStream.class, MediaType.class))
+                .when(resourceInfo).getResourceMethod();
+        final ContainerRequestContext requestContext
+                = mock(ContainerRequestContext.class);
+        when(requestContext.getProperty(
+                MetricsFilter.START_NANOS_PROPERTY))
+                .thenReturn(System.nanoTime());
+        final ContainerResponseContext responseContext
+                = mock(ContainerResponseContext.class);
+        when(responseContext.getStatus()).thenReturn(200);
+
+        final MetricsFilter metricsFilter
+                = new MetricsFilter(metrics, resourceInfo);
+        metricsFilter.filter(requestContext);
+        verify(requestContext).setProperty(
+                eq(MetricsFilter.START_NANOS_PROPERTY), anyLong());
+        metricsFilter.filter(requestContext, responseContext);
+        verify(metrics).recordRequest(eq("read"), eq(200), anyLong());
+    }
+
+    @Test
+    public void testFilterRecordsUnmatchedRequest() {
+        final Metrics metrics = mock(Metrics.class);
+        final ContainerRequestContext requestContext
+                = mock(ContainerRequestContext.class);
+        when(requestContext.getProperty(
+                MetricsFilter.START_NANOS_PROPERTY))
+                .thenReturn(System.nanoTime());
+        final ContainerResponseContext responseContext
+                = mock(ContainerResponseContext.class);
+        when(responseContext.getStatus()).thenReturn(404);
+
+        new MetricsFilter(metrics, mock(ResourceInfo.class))
+                .filter(requestContext, responseContext);
+        verify(metrics).recordRequest(
+                eq(Metrics.UNMATCHED_ENDPOINT), eq(404), anyLong());
+    }
+}
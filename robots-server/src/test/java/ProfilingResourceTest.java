@@ -0,0 +1,75 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import models.RobotPart;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilingResourceTest {
+    private static final String HSQLDB_URL
+            = "jdbc:hsqldb:mem:profilingtests;sql.syntax_mys=true";
+
+    @Test
+    public void testStartAndStop() throws Exception {
+        final ProfilingResource profilingResource = new ProfilingResource();
+        assertEquals(404, profilingResource.stop().getStatus());
+        assertEquals(400, profilingResource.start(0).getStatus());
+        assertEquals(
+                400,
+                profilingResource.start(
+                        ProfilingResource.MAX_DURATION_SECONDS + 1)
+                        .getStatus());
+
+        assertEquals(200, profilingResource.start(60).getStatus());
+        assertEquals(409, profilingResource.start(60).getStatus());
+
+        final Response response = profilingResource.stop();
+        assertEquals(200, response.getStatus());
+        assertEquals(
+                MediaType.APPLICATION_OCTET_STREAM_TYPE,
+                response.getMediaType());
+        final ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(recording);
+        // Every JFR file starts with the "FLR" magic.
+        assertEquals("FLR", new String(recording.toByteArray(), 0, 3, "UTF-8"));
+        assertEquals(404, profilingResource.stop().getStatus());
+    }
+
+    @Test
+    public void testRecordsDbQueries() throws Exception {
+        final DbService dbService = new DbService(HSQLDB_URL);
+        final File file = File.createTempFile("robots-test-", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(RobotsEvents.DbQueryEvent.class);
+            recording.start();
+            dbService.add(new RobotPart(
+                    "BasicHead", "1", "Manu", 1000, new String[] {}));
+            dbService.read("1");
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(
+                file.toPath());
+        Files.delete(file.toPath());
+
+        boolean readRecorded = false;
+        for (final RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("robots.DbQuery")
+                    && "read".equals(event.getString("query"))) {
+                assertEquals(1, event.getInt("rowCount"));
+                assertTrue(event.getString("sql").startsWith("SELECT"));
+                readRecorded = true;
+            }
+        }
+        assertTrue(readRecorded);
+    }
+}
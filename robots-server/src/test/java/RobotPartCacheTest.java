@@ -0,0 +1,66 @@
+import models.RobotPart;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RobotPartCacheTest {
+    private static final RobotPart ROBOT_PART = new RobotPart(
+            "BasicHead", "1", "Manu", 1000, new String[] {"2", "3"});
+
+    @Test
+    public void testPutAndGet() {
+        final RobotPartCache cache = new RobotPartCache(10, 60000, 60000);
+        assertNull(cache.get("1"));
+        cache.put(ROBOT_PART, cache.currentVersion());
+        assertSame(ROBOT_PART, cache.get("1").getRobotPart());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+        assertEquals(0.5, cache.getStats().getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testMissingEntries() {
+        final RobotPartCache cache = new RobotPartCache(10, 60000, 60000);
+        cache.putMissing("2", cache.currentVersion());
+        assertTrue(cache.get("2").isMissing());
+        assertEquals(1, cache.getStats().getMissingHits());
+
+        final RobotPartCache noNegativeCache
+                = new RobotPartCache(10, 60000, 0);
+        noNegativeCache.putMissing("2", noNegativeCache.currentVersion());
+        assertNull(noNegativeCache.get("2"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        final RobotPartCache cache = new RobotPartCache(10, 1, 1);
+        cache.put(ROBOT_PART, cache.currentVersion());
+        Thread.sleep(5);
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        final RobotPartCache cache = new RobotPartCache(2, 60000, 60000);
+        cache.put(ROBOT_PART, cache.currentVersion());
+        cache.putMissing("2", cache.currentVersion());
+        cache.get("1");
+        cache.putMissing("3", cache.currentVersion());
+        assertSame(ROBOT_PART, cache.get("1").getRobotPart());
+        assertNull(cache.get("2"));
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void testReadStartedBeforeInvalidationIsNotCached() {
+        final RobotPartCache cache = new RobotPartCache(10, 60000, 60000);
+        final long readVersion = cache.currentVersion();
+        cache.invalidate("1");
+        cache.put(ROBOT_PART, readVersion);
+        assertNull(cache.get("1"));
+    }
+}
@@ -1,6 +1,21 @@
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import models.BulkAddResult;
+import models.ReadManyResponse;
 import models.RobotPart;
+import models.RobotPartPage;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
 
@@ -10,12 +25,19 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RobotsResourceTest {
+    private static final MediaType JSON = MediaType.APPLICATION_JSON_TYPE;
+    private static final MediaType SMILE
+            = MediaType.valueOf(SmileMediaTypes.APPLICATION_JACKSON_SMILE);
+
     private final ObjectMapper mapper;
     private final DbService dbService;
     private RobotsResource robotsResource;
@@ -35,12 +57,75 @@ public class RobotsResourceTest {
                 "Manu",
                 1000,
                 new String[] {"2", "3"});
-        final Response response = robotsResource.add(addRequest);
+        final Response response = robotsResource.add(json(addRequest), JSON);
         verify(dbService)
                 .add(argThat(new ObjectEqualityArgumentMatcher<>(robotPart)));
         assertEquals(response.getStatus(), 200);
     }
 
+    @Test
+    public void testBulkAdd() throws Exception {
+        final String bulkAddRequest = "[{\"name\":\"BasicHead\",\"serialNumber\":\"1\",\"manufacturer\":\"Manu\",\"weight\":1000,\"compatibilities\":[\"2\"]},{\"serialNumber\":\"2\"}]";
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead",
+                "1",
+                "Manu",
+                1000,
+                new String[] {"2"});
+        when(dbService.addAll(any())).thenReturn(new BulkAddResult[] {
+                new BulkAddResult("1", BulkAddResult.Status.CREATED, null)});
+        final Response response
+                = robotsResource.bulkAdd(json(bulkAddRequest), JSON);
+        verify(dbService).addAll(argThat(
+                new ObjectEqualityArgumentMatcher<>(
+                        Collections.singletonList(robotPart))));
+        assertEquals(response.getStatus(), 200);
+        final BulkAddResult[] results
+                = (BulkAddResult[]) response.getEntity();
+        assertEquals(BulkAddResult.Status.CREATED, results[0].getStatus());
+        assertEquals(BulkAddResult.Status.INVALID, results[1].getStatus());
+        assertEquals("2", results[1].getSerialNumber());
+
+        assertEquals(
+                422,
+                robotsResource
+                        .bulkAdd(json("{\"serialNumber\":\"1\"}"), JSON)
+                        .getStatus());
+    }
+
+    @Test
+    public void testSmileRequests() throws Exception {
+        final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead",
+                "1",
+                "Manu",
+                1000,
+                new String[] {"2"});
+        final Response response = robotsResource.add(
+                smile(smileMapper.writeValueAsBytes(robotPart)), SMILE);
+        verify(dbService)
+                .add(argThat(new ObjectEqualityArgumentMatcher<>(robotPart)));
+        assertEquals(200, response.getStatus());
+
+        when(dbService.addAll(any())).thenReturn(new BulkAddResult[] {
+                new BulkAddResult("1", BulkAddResult.Status.CREATED, null)});
+        final Response bulkAddResponse = robotsResource.bulkAdd(
+                smile(smileMapper.writeValueAsBytes(
+                        new RobotPart[] {robotPart})),
+                SMILE);
+        verify(dbService).addAll(argThat(
+                new ObjectEqualityArgumentMatcher<>(
+                        Collections.singletonList(robotPart))));
+        assertEquals(200, bulkAddResponse.getStatus());
+
+        assertEquals(
+                422,
+                robotsResource.add(
+                        json("{\"serialNumber\":\"1\"}"), SMILE)
+                        .getStatus());
+    }
+
     @Test
     public void testRead() throws Exception {
         final String readRequest = "{\"serialNumber\":\"1\"}";
@@ -52,27 +137,133 @@ public class RobotsResourceTest {
                 1000,
                 new String[] {"2", "3"});
         when(dbService.read(eq(serialNumber))).thenReturn(robotPart);
-        final Response response = robotsResource.read(readRequest);
+        final Response response = robotsResource.read(json(readRequest), JSON);
         verify(dbService).read(serialNumber);
         assertEquals(response.getStatus(), 200);
     }
 
+    @Test
+    public void testReadMany() throws Exception {
+        final String readManyRequest = "{\"serialNumbers\":[\"3\",\"1\",\"2\"]}";
+        final RobotPart robotPart1 = new RobotPart(
+                "BasicHead",
+                "1",
+                "Manu",
+                1000,
+                new String[] {"2", "3"});
+        final RobotPart robotPart3 = new RobotPart(
+                "BasicArm",
+                "3",
+                "Manu",
+                1500,
+                new String[] {"1", "2"});
+        final Map<String, RobotPart> foundRobotParts = new HashMap<>();
+        foundRobotParts.put("1", robotPart1);
+        foundRobotParts.put("3", robotPart3);
+        when(dbService.readMany(Arrays.asList("3", "1", "2")))
+                .thenReturn(foundRobotParts);
+        final Response response
+                = robotsResource.readMany(json(readManyRequest), JSON);
+        assertEquals(response.getStatus(), 200);
+        final ReadManyResponse readManyResponse
+                = (ReadManyResponse) response.getEntity();
+        assertEquals(2, readManyResponse.getRobotParts().length);
+        assertEquals(robotPart3, readManyResponse.getRobotParts()[0]);
+        assertEquals(robotPart1, readManyResponse.getRobotParts()[1]);
+        assertEquals(1, readManyResponse.getMissingSerialNumbers().length);
+        assertEquals("2", readManyResponse.getMissingSerialNumbers()[0]);
+    }
+
     @Test
     public void testUpdate() throws Exception {
         final String updateRequest = "{\"originalSerialNumber\":\"4\",\"fieldToUpdate\":\"name\",\"valueOfField\":\"SuperFancyHead\"}";
         final String serialNumber = "4";
         final String fieldToUpdate = "name";
         final Object valueToUpdate = "SuperFancyHead";
-        final Response response = robotsResource.update(updateRequest);
-        verify(dbService).update(serialNumber, fieldToUpdate, valueToUpdate);
+        final Response response
+                = robotsResource.update(json(updateRequest), JSON);
+        verify(dbService).update(
+                serialNumber, fieldToUpdate, valueToUpdate, null);
         assertEquals(response.getStatus(), 200);
     }
 
+    @Test
+    public void testPatch() throws Exception {
+        final String patchRequest = "{\"originalSerialNumber\":\"4\",\"fields\":{\"name\":\"SuperFancyHead\",\"weight\":900}}";
+        final Map<String, Object> fields = new HashMap<>();
+        fields.put("name", "SuperFancyHead");
+        fields.put("weight", 900);
+        final Response response
+                = robotsResource.patch(json(patchRequest), JSON);
+        verify(dbService).patch("4", fields, null);
+        assertEquals(200, response.getStatus());
+        assertEquals(
+                422,
+                robotsResource
+                        .patch(json("{\"originalSerialNumber\":\"4\"}"), JSON)
+                        .getStatus());
+    }
+
+    @Test
+    public void testGetRobotPartConditional() throws Exception {
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead", "1", "Manu", 1000, new String[] {"2"}, 3L);
+        when(dbService.read("1")).thenReturn(robotPart);
+        final Response response = robotsResource.getRobotPart("1", null);
+        assertEquals(200, response.getStatus());
+        assertEquals(robotPart, response.getEntity());
+        final String entityTag = response.getHeaderString("ETag");
+        assertTrue(entityTag.startsWith("W/\""));
+        assertTrue(response.getHeaderString("Cache-Control")
+                .contains("must-revalidate"));
+
+        final Response notModified
+                = robotsResource.getRobotPart("1", "\"other\", " + entityTag);
+        assertEquals(304, notModified.getStatus());
+        assertEquals(null, notModified.getEntity());
+
+        when(dbService.read("1")).thenReturn(new RobotPart(
+                "BasicHead", "1", "Manu", 1000, new String[] {"2"}, 4L));
+        assertEquals(
+                200, robotsResource.getRobotPart("1", entityTag).getStatus());
+    }
+
+    @Test
+    public void testGetCompatibleRobotParts() throws Exception {
+        when(dbService.listCompatible("1", 100)).thenReturn(new RobotPart[] {
+                new RobotPart("BasicBody", "2", "Manu", 5000, new String[] {})});
+        final Response response
+                = robotsResource.getCompatibleRobotParts("1", 100, null);
+        assertEquals(200, response.getStatus());
+        assertEquals(
+                304,
+                robotsResource
+                        .getCompatibleRobotParts(
+                                "1", 100, response.getHeaderString("ETag"))
+                        .getStatus());
+        assertEquals(
+                400,
+                robotsResource.getCompatibleRobotParts("1", 0, null)
+                        .getStatus());
+    }
+
+    @Test
+    public void testUpdateVersionConflict() throws Exception {
+        final String updateRequest = "{\"originalSerialNumber\":\"4\",\"fieldToUpdate\":\"name\",\"valueOfField\":\"SuperFancyHead\",\"expectedVersion\":3}";
+        doThrow(dbService.new VersionConflictException("Modified."))
+                .when(dbService)
+                .update("4", "name", "SuperFancyHead", 3L);
+        final Response response
+                = robotsResource.update(json(updateRequest), JSON);
+        assertEquals(409, response.getStatus());
+    }
+
     @Test
     public void testDelete() throws Exception {
         final String deleteRequest = "{\"serialNumber\":\"1\"}";
         final String serialNumber = "1";
-        final Response response = robotsResource.delete(deleteRequest);
+        final Response response
+                = robotsResource.delete(json(deleteRequest), JSON);
         verify(dbService).delete(serialNumber);
         assertEquals(response.getStatus(), 200);
     }
@@ -100,11 +291,115 @@ public class RobotsResourceTest {
         when(dbService.listAll())
                 .thenReturn(
                         new RobotPart[] {robotPart1, robotPart2, robotPart3});
-        final Response response = robotsResource.listAll();
+        final Response response = robotsResource.listAll(null);
         verify(dbService).listAll();
         assertEquals(response.getStatus(), 200);
     }
 
+    @Test
+    public void testListAllStreaming() throws Exception {
+        final RobotPart robotPart1 = new RobotPart(
+                "BasicHead",
+                "1",
+                "Manu",
+                1000,
+                new String[] {"2", "3"});
+        final RobotPart robotPart2 = new RobotPart(
+                "BasicBody",
+                "2",
+                "Manu",
+                5000,
+                new String[] {"1", "3"});
+        doAnswer(invocation -> {
+            final DbService.RobotPartHandler handler
+                    = invocation.getArgument(0);
+            handler.handle(robotPart1);
+            handler.handle(robotPart2);
+            return null;
+        }).when(dbService).streamAll(any());
+        final RobotsResource streamingResource
+                = new RobotsResource(dbService, mapper, true);
+        final Response response = streamingResource.listAll(null);
+        assertEquals(response.getStatus(), 200);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        final RobotPart[] robotParts
+                = mapper.readValue(output.toByteArray(), RobotPart[].class);
+        assertEquals(2, robotParts.length);
+        assertEquals(robotPart1, robotParts[0]);
+        assertEquals(robotPart2, robotParts[1]);
+        verify(dbService, never()).listAll();
+    }
+
+    @Test
+    public void testListAllStreamingSmile() throws Exception {
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead",
+                "1",
+                "Manu",
+                1000,
+                new String[] {"2", "3"});
+        doAnswer(invocation -> {
+            final DbService.RobotPartHandler handler
+                    = invocation.getArgument(0);
+            handler.handle(robotPart);
+            return null;
+        }).when(dbService).streamAll(any());
+        final RobotsResource streamingResource
+                = new RobotsResource(dbService, mapper, true);
+        assertEquals(
+                MediaType.APPLICATION_JSON_TYPE,
+                streamingResource
+                        .listAll("application/x-jackson-smile;q=0.5, */*")
+                        .getMediaType());
+        final Response response = streamingResource.listAll(
+                "application/json;q=0.5, application/x-jackson-smile");
+        assertEquals(
+                "application/x-jackson-smile",
+                response.getMediaType().toString());
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        final RobotPart[] robotParts
+                = new ObjectMapper(new SmileFactory())
+                        .readValue(output.toByteArray(), RobotPart[].class);
+        assertEquals(1, robotParts.length);
+        assertEquals(robotPart, robotParts[0]);
+    }
+
+    @Test
+    public void testListPage() throws Exception {
+        final RobotPart robotPart1 = new RobotPart(
+                "BasicHead",
+                "1",
+                "Manu",
+                1000,
+                new String[] {"2", "3"});
+        final RobotPart robotPart2 = new RobotPart(
+                "BasicBody",
+                "2",
+                "Manu",
+                5000,
+                new String[] {"1", "3"});
+        when(dbService.listPage(null, 2))
+                .thenReturn(new RobotPart[] {robotPart1, robotPart2});
+        Response response = robotsResource.listPage(null, 1);
+        assertEquals(response.getStatus(), 200);
+        final RobotPartPage firstPage = (RobotPartPage) response.getEntity();
+        assertEquals(1, firstPage.getRobotParts().length);
+        assertTrue(firstPage.getContinuationToken() != null);
+
+        when(dbService.listPage("1", 2))
+                .thenReturn(new RobotPart[] {robotPart2});
+        response = robotsResource.listPage(
+                firstPage.getContinuationToken(), 1);
+        final RobotPartPage lastPage = (RobotPartPage) response.getEntity();
+        assertEquals(robotPart2, lastPage.getRobotParts()[0]);
+        assertEquals(null, lastPage.getContinuationToken());
+
+        assertEquals(400, robotsResource.listPage(null, 0).getStatus());
+        assertEquals(400, robotsResource.listPage("%%%", 10).getStatus());
+    }
+
     @Test
     public void testListCompatible() throws Exception {
         final String listCompatibleRequest = "{\"serialNumber\":\"1\",\"number\":3}";
@@ -126,11 +421,97 @@ public class RobotsResourceTest {
                 .thenReturn(
                         new RobotPart[] {robotPart2, robotPart3});
         final Response response
-                = robotsResource.listCompatible(listCompatibleRequest);
+                = robotsResource.listCompatible(
+                        json(listCompatibleRequest), JSON);
         verify(dbService).listCompatible(serialNumber, number);
         assertEquals(response.getStatus(), 200);
     }
 
+    @Test
+    public void testListReverseCompatible() throws Exception {
+        final String listCompatibleRequest = "{\"serialNumber\":\"1\",\"number\":3}";
+        final RobotPart robotPart2 = new RobotPart(
+                "BasicBody",
+                "2",
+                "Manu",
+                5000,
+                new String[] {"1"});
+        when(dbService.listReverseCompatible("1", 3))
+                .thenReturn(new RobotPart[] {robotPart2});
+        assertEquals(
+                200,
+                robotsResource
+                        .listReverseCompatible(
+                                json(listCompatibleRequest), JSON)
+                        .getStatus());
+
+        when(dbService.listReverseCompatible("1", 3))
+                .thenThrow(dbService.new IndexNotReadyException("Not ready."));
+        final Response response
+                = robotsResource.listReverseCompatible(
+                        json(listCompatibleRequest), JSON);
+        assertEquals(503, response.getStatus());
+        assertEquals("30", response.getHeaderString("Retry-After"));
+        assertEquals(
+                422,
+                robotsResource
+                        .listReverseCompatible(json("{"), JSON)
+                        .getStatus());
+    }
+
+    @Test
+    public void testGraphQueries() throws Exception {
+        final CompatibilityGraph graph = new CompatibilityGraph();
+        graph.compatibilitiesChanged("1", new String[] {"2"});
+        graph.compatibilitiesChanged("2", new String[] {"3"});
+        graph.compatibilitiesChanged("3", new String[] {});
+        final RobotsResource graphResource
+                = new RobotsResource(dbService, mapper, false, graph);
+        final Map<String, RobotPart> robotParts = new HashMap<>();
+        robotParts.put("2", new RobotPart(
+                "BasicBody", "2", "Manu", 5000, new String[] {"3"}));
+        robotParts.put("3", new RobotPart(
+                "BasicArm", "3", "Manu", 1500, new String[] {}));
+        when(dbService.readMany(Arrays.asList("2", "3")))
+                .thenReturn(robotParts);
+        final Response response = graphResource.listReachable(
+                json("{\"serialNumber\":\"1\",\"maxDepth\":2,\"number\":10}"),
+                JSON);
+        assertEquals(200, response.getStatus());
+        final RobotPart[] reachable = (RobotPart[]) response.getEntity();
+        assertEquals(2, reachable.length);
+        assertEquals("3", reachable[1].getSerialNumber());
+        assertEquals(
+                400,
+                graphResource.listReachable(json(
+                        "{\"serialNumber\":\"1\",\"maxDepth\":11,"
+                                + "\"number\":10}"), JSON)
+                        .getStatus());
+        assertEquals(
+                404,
+                graphResource.shortestPath(json(
+                        "{\"fromSerialNumber\":\"1\","
+                                + "\"toSerialNumber\":\"4\","
+                                + "\"maxDepth\":2}"), JSON)
+                        .getStatus());
+        assertEquals(
+                501,
+                robotsResource.shortestPath(json(
+                        "{\"fromSerialNumber\":\"1\","
+                                + "\"toSerialNumber\":\"3\","
+                                + "\"maxDepth\":2}"), JSON)
+                        .getStatus());
+    }
+
+    private static InputStream json(final String request) {
+        return new ByteArrayInputStream(
+                request.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream smile(final byte[] request) {
+        return new ByteArrayInputStream(request);
+    }
+
     private class ObjectEqualityArgumentMatcher<T> implements ArgumentMatcher<T> {
         T thisObject;
 
@@ -0,0 +1,144 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.fasterxml.jackson.jaxrs.smile.SmileMediaTypes;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import models.ReadManyRequest;
+import models.ReadManyResponse;
+import models.RobotPart;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Smile request and response bodies, through Jetty and Jersey as the
+ * server runs them.
+ */
+public class SmileHttpTest {
+    private static final MediaType SMILE_TYPE
+            = MediaType.valueOf(SmileMediaTypes.APPLICATION_JACKSON_SMILE);
+
+    private final DbService dbService = mock(DbService.class);
+    private final Client client
+            = ClientBuilder.newClient().register(JacksonSmileProvider.class);
+    private Server server;
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSmileRequestAndResponse() throws Exception {
+        final WebTarget target = start(false);
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead", "1", "Manu", 1000, new String[] {"2", "3"});
+        final Response addResponse = target.path("add")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(robotPart, SMILE_TYPE));
+        addResponse.close();
+        assertEquals(200, addResponse.getStatus());
+        verify(dbService).add(argThat(robotPart::equals));
+
+        when(dbService.readMany(Arrays.asList("1", "2")))
+                .thenReturn(Collections.singletonMap("1", robotPart));
+        final Response readManyResponse = target.path("read-many")
+                .request(SMILE_TYPE)
+                .post(Entity.entity(
+                        new ReadManyRequest(new String[] {"1", "2"}),
+                        SMILE_TYPE));
+        assertEquals(SMILE_TYPE, readManyResponse.getMediaType());
+        final ReadManyResponse readMany
+                = readManyResponse.readEntity(ReadManyResponse.class);
+        assertEquals(robotPart, readMany.getRobotParts()[0]);
+        assertArrayEquals(
+                new String[] {"2"}, readMany.getMissingSerialNumbers());
+    }
+
+    @Test
+    public void testSmileRequestAsync() throws Exception {
+        final WebTarget target = start(true);
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead", "1", "Manu", 1000, new String[] {});
+        final Response response = target.path("add")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(robotPart, SMILE_TYPE));
+        response.close();
+        assertEquals(200, response.getStatus());
+        verify(dbService, timeout(1000)).add(argThat(robotPart::equals));
+    }
+
+    @Test
+    public void testMalformedSmile() throws Exception {
+        final Response response = start(false).path("add")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(
+                        new byte[] {':', ')', '\n', 0, (byte) 0xfa, 1},
+                        SMILE_TYPE));
+        response.close();
+        assertEquals(422, response.getStatus());
+        verify(dbService, timeout(1000).times(0)).add(any());
+    }
+
+    @Test
+    public void testJsonStillAccepted() throws Exception {
+        final RobotPart robotPart = new RobotPart(
+                "BasicHead", "1", "Manu", 1000, new String[] {});
+        final Response response = start(false).path("add")
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.entity(
+                        new ObjectMapper().writeValueAsString(robotPart),
+                        MediaType.APPLICATION_JSON_TYPE));
+        response.close();
+        assertEquals(200, response.getStatus());
+        verify(dbService).add(argThat(robotPart::equals));
+    }
+
+    private WebTarget start(final boolean async) throws Exception {
+        final ObjectMapper mapper = new ObjectMapper();
+        final RobotsResource robotsResource
+                = new RobotsResource(dbService, mapper);
+        final ResourceConfig resourceConfig = new ResourceConfig();
+        resourceConfig.register(new JsonMapperResolver(mapper));
+        resourceConfig.register(JacksonSmileProvider.class);
+        resourceConfig.register(async
+                ? new AsyncRobotsResource(
+                        robotsResource, new DbExecutor(1, 1))
+                : robotsResource);
+        final ServletHolder servlet
+                = new ServletHolder(new ServletContainer(resourceConfig));
+        servlet.setAsyncSupported(async);
+        server = new Server(0);
+        final ServletContextHandler context
+                = new ServletContextHandler(server, "/*");
+        context.addServlet(servlet, "/*");
+        server.start();
+        return client.target(URI.create("http://localhost:"
+                + ((ServerConnector) server.getConnectors()[0]).getLocalPort()
+                + "/"));
+    }
+}
@@ -0,0 +1,28 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualThreadsTest {
+    @Test
+    public void testNewThreadPerTaskExecutor() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        final ExecutorService executor
+                = VirtualThreads.newThreadPerTaskExecutor("test-");
+        final String threadName = executor
+                .submit(() -> Thread.currentThread().getName())
+                .get(1, TimeUnit.SECONDS);
+        assertEquals("test-0", threadName);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnsupported() {
+        assumeTrue(!VirtualThreads.isSupported());
+        VirtualThreads.newThreadPerTaskExecutor("test-");
+    }
+}